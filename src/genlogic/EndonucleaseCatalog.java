@@ -0,0 +1,690 @@
+/*
+ * Copyright (C) 2021 Luis Núñez Gómez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package genlogic;
+
+import genlogic.model.Endonuclease;
+import genlogic.model.RegexEndonuclease;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Binary endonucleases catalog. It is a List of endonucleases backed by a
+ * memory mapped file, opening it only reads its header and every endonuclease
+ * is decoded the first time it is used. Adding or deleting endonucleases
+ * writes only the changed records, not the whole file.
+ * <p>
+ * File layout (big endian), version 1:
+ * <ul>
+ * <li>header (40 bytes): magic number, version, record size, record capacity,
+ * used records, live records, string table offset and end of the data</li>
+ * <li>capacity fixed width records (40 bytes): flags (deleted, palindromic,
+ * regex, RegexEndonuclease), target length, sense and antisense cutting bp
+ * and the offsets of name, origin, target, sense target and antisense target
+ * in the string table</li>
+ * <li>string table: length prefixed UTF-8 strings, new strings are appended
+ * at the end of the file</li>
+ * </ul>
+ * Deleted records are only flagged, the file is compacted when they are more
+ * than the live ones, or when the records capacity is full. The file is
+ * always written in place (a mapped file cannot be replaced or truncated in
+ * some systems), so the header keeps the end of the data.
+ *
+ * @author Luis Núñez Gómez
+ */
+public class EndonucleaseCatalog extends AbstractList<Endonuclease> implements RandomAccess, Closeable {
+
+    /**
+     * Catalog file extension.
+     */
+    public static final String EXTENSION = ".glc";
+
+    /**
+     * Magic number at the beginning of the file ("GLEC").
+     */
+    private static final int MAGIC = 0x474C4543;
+
+    /**
+     * Format version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Header and record sizes.
+     */
+    private static final int HEADER_SIZE = 40, RECORD_SIZE = 40;
+
+    /**
+     * Minimum number of records in a new file.
+     */
+    private static final int MINIMUM_CAPACITY = 64;
+
+    /**
+     * Record flags.
+     */
+    private static final int DELETED = 1, PALINDROMIC = 2, REGEX = 4, REGEX_ENDONUCLEASE = 8;
+
+    /**
+     * Catalog file.
+     */
+    private final File file;
+
+    /**
+     * Mapped catalog file, null if it has to be mapped again.
+     */
+    private MappedByteBuffer mapped;
+
+    /**
+     * Number of records that fit before the string table.
+     */
+    private int capacity;
+
+    /**
+     * Number of used records, deleted ones included.
+     */
+    private int slots;
+
+    /**
+     * Number of live (not deleted) records.
+     */
+    private int live;
+
+    /**
+     * Position of the string table.
+     */
+    private long stringsOffset;
+
+    /**
+     * End of the data, the file can be longer.
+     */
+    private long end;
+
+    /**
+     * Decoded endonucleases by record.
+     */
+    private Endonuclease[] decoded;
+
+    /**
+     * Open catalog file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Record of every live endonuclease, null if it has to be built again.
+     */
+    private int[] liveSlots;
+
+    // Constructor
+    /**
+     * Opens a catalog file and reads its header.
+     *
+     * @param file catalog file
+     * @throws IOException if the file cannot be read or it is not a catalog
+     */
+    private EndonucleaseCatalog(File file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            readHeader();
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Opens the catalog of an endonucleases file. If the file is a legacy
+     * Java serialized dat file, its endonucleases are migrated once to a
+     * catalog with the same name and the .glc extension, and that catalog is
+     * used from then on, even if the dat file is modified later (the catalog
+     * may have endonucleases added since the migration). If there are no
+     * files an empty catalog is created.
+     *
+     * @param path String with the catalog or dat file path
+     * @return EndonucleaseCatalog object
+     * @throws IOException if the catalog cannot be read or created
+     */
+    public static EndonucleaseCatalog open(String path) throws IOException {
+        File source = new File(path);
+        if (isCatalog(source)) {
+            return new EndonucleaseCatalog(source);
+        }
+        File catalog = new File(catalogPath(path));
+        if (isCatalog(catalog)) {
+            return new EndonucleaseCatalog(catalog);
+        }
+        List<Endonuclease> legacy = new ArrayList<>();
+        if (source.isFile()) {
+            legacy = EndonucleaseSerializator.datToMemory(path);
+            if (legacy.isEmpty() && source.length() > 0) {
+                throw new IOException("Unable to migrate the endonucleases file " + path);
+            }
+        }
+        return create(catalog.getPath(), legacy);
+    }
+
+    /**
+     * Creates (or replaces) a catalog file with the provided endonucleases.
+     *
+     * @param path String with the catalog file path
+     * @param endonucleases List of endonucleases
+     * @return EndonucleaseCatalog object
+     * @throws IOException if the file cannot be written
+     */
+    public static EndonucleaseCatalog create(String path, List<Endonuclease> endonucleases) throws IOException {
+        File catalog = new File(path);
+        try (FileOutputStream out = new FileOutputStream(catalog)) {
+            out.write(image(endonucleases).array());
+        }
+        return new EndonucleaseCatalog(catalog);
+    }
+
+    /**
+     * Returns the catalog path for a dat file, the .dat extension is replaced
+     * by .glc.
+     *
+     * @param path String with the dat file path
+     * @return String with the catalog path
+     */
+    public static String catalogPath(String path) {
+        if (path.endsWith(EXTENSION)) {
+            return path;
+        }
+        return (path.endsWith(".dat") ? path.substring(0, path.length() - 4) : path) + EXTENSION;
+    }
+
+    /**
+     * Returns the catalog file.
+     *
+     * @return File object
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns an endonuclease, it is decoded the first time.
+     *
+     * @param index endonuclease index
+     * @return Endonuclease object
+     */
+    @Override
+    public Endonuclease get(int index) {
+        int slot = slot(index);
+        if (decoded[slot] == null) {
+            decoded[slot] = decode(slot);
+        }
+        return decoded[slot];
+    }
+
+    /**
+     * Returns the name of an endonuclease without decoding it.
+     *
+     * @param index endonuclease index
+     * @return String endonuclease name
+     */
+    public String getName(int index) {
+        int slot = slot(index);
+        if (decoded[slot] != null) {
+            return decoded[slot].getEndonucleaseName();
+        }
+        return string(map(), map().getInt(record(slot) + 16));
+    }
+
+    @Override
+    public int size() {
+        return live;
+    }
+
+    /**
+     * Adds an endonuclease at the end of the catalog and saves it.
+     *
+     * @param e Endonuclease object
+     * @return boolean true
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    @Override
+    public boolean add(Endonuclease e) {
+        return addAll(Collections.singletonList(e));
+    }
+
+    /**
+     * Adds an endonuclease, only at the end of the catalog.
+     *
+     * @param index it must be the catalog size
+     * @param e Endonuclease object
+     * @throws UnsupportedOperationException if index is not the catalog size
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    @Override
+    public void add(int index, Endonuclease e) {
+        if (index != live) {
+            throw new UnsupportedOperationException("Endonucleases can only be added at the end of the catalog");
+        }
+        add(e);
+    }
+
+    /**
+     * Adds endonucleases at the end of the catalog and saves them with one
+     * write for their strings and another one for their records. If they
+     * don't fit in the records capacity the file is written again.
+     *
+     * @param endonucleases Collection of endonucleases
+     * @return boolean true if the catalog has changed
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    @Override
+    public boolean addAll(Collection<? extends Endonuclease> endonucleases) {
+        if (endonucleases.isEmpty()) {
+            return false;
+        }
+        try {
+            if (slots + endonucleases.size() > capacity) {
+                List<Endonuclease> all = new ArrayList<>(this);
+                all.addAll(endonucleases);
+                rewrite(all);
+            } else {
+                ByteArrayOutputStream strings = new ByteArrayOutputStream();
+                ByteBuffer records = ByteBuffer.allocate(endonucleases.size() * RECORD_SIZE);
+                StringTable table = new StringTable(new DataOutputStream(strings), end - stringsOffset);
+                int slot = slots;
+                for (Endonuclease e : endonucleases) {
+                    writeRecord(records, e, table);
+                    decoded[slot++] = e;
+                }
+                write(ByteBuffer.wrap(strings.toByteArray()), end);
+                records.flip();
+                write(records, record(slots));
+                end += strings.size();
+                slots = slot;
+                live += endonucleases.size();
+                writeHeader();
+                liveSlots = null;
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Deletes an endonuclease, its record is flagged as deleted.
+     *
+     * @param index endonuclease index
+     * @return Endonuclease deleted
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    @Override
+    public Endonuclease remove(int index) {
+        Endonuclease removed = get(index);
+        int slot = slot(index);
+        try {
+            ByteBuffer flags = ByteBuffer.allocate(4);
+            flags.putInt(map().getInt(record(slot)) | DELETED).flip();
+            write(flags, record(slot));
+            decoded[slot] = null;
+            live--;
+            liveSlots = null;
+            writeHeader();
+            if (slots - live > Math.max(MINIMUM_CAPACITY, live)) {
+                rewrite(new ArrayList<>(this));
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        modCount++;
+        return removed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mapped = null;
+        channel.close();
+    }
+
+    /**
+     * Checks if a file is a catalog, reading its magic number.
+     *
+     * @param file File object
+     * @return boolean true for catalog files
+     */
+    private static boolean isCatalog(File file) {
+        if (!file.isFile() || file.length() < HEADER_SIZE) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads the header of the catalog file.
+     *
+     * @throws IOException if the file is not a catalog
+     */
+    private void readHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+        }
+        header.flip();
+        if (header.limit() < HEADER_SIZE || header.getInt(0) != MAGIC) {
+            throw new IOException("Not an endonucleases catalog: " + file);
+        }
+        if (header.getInt(4) != VERSION || header.getInt(8) != RECORD_SIZE) {
+            throw new IOException("Unsupported endonucleases catalog version: " + header.getInt(4));
+        }
+        capacity = header.getInt(12);
+        slots = header.getInt(16);
+        live = header.getInt(20);
+        stringsOffset = header.getLong(24);
+        end = header.getLong(32);
+        if (capacity < 0 || capacity > (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE
+                || slots < 0 || slots > capacity || live < 0 || live > slots
+                || stringsOffset != record(capacity) || end < stringsOffset || end > channel.size()) {
+            throw new IOException("Wrong endonucleases catalog header: " + file);
+        }
+        mapped = null;
+        decoded = new Endonuclease[capacity];
+        liveSlots = null;
+    }
+
+    /**
+     * Returns the mapped file, it is mapped again after writes.
+     *
+     * @return MappedByteBuffer object
+     * @throws UncheckedIOException if the file cannot be mapped
+     */
+    private MappedByteBuffer map() {
+        if (mapped == null) {
+            try {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, end);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        return mapped;
+    }
+
+    /**
+     * Returns the record of a live endonuclease.
+     *
+     * @param index endonuclease index
+     * @return int record number
+     */
+    private int slot(int index) {
+        if (index < 0 || index >= live) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + live);
+        }
+        if (live == slots) {
+            return index;
+        }
+        if (liveSlots == null) {
+            // Only the flags are read
+            liveSlots = new int[live];
+            MappedByteBuffer buffer = map();
+            for (int slot = 0, i = 0; slot < slots; slot++) {
+                if ((buffer.getInt(record(slot)) & DELETED) == 0) {
+                    liveSlots[i++] = slot;
+                }
+            }
+        }
+        return liveSlots[index];
+    }
+
+    /**
+     * Returns the position of a record.
+     *
+     * @param slot record number
+     * @return int position in the file
+     */
+    private static int record(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+
+    /**
+     * Decodes a record.
+     *
+     * @param slot record number
+     * @return Endonuclease object
+     */
+    private Endonuclease decode(int slot) {
+        MappedByteBuffer buffer = map();
+        int base = record(slot);
+        int flags = buffer.getInt(base);
+        String name = string(buffer, buffer.getInt(base + 16));
+        String origin = string(buffer, buffer.getInt(base + 20));
+        String target = string(buffer, buffer.getInt(base + 24));
+        String senseTarget = string(buffer, buffer.getInt(base + 28));
+        String antiSenseTarget = string(buffer, buffer.getInt(base + 32));
+        boolean palindromic = (flags & PALINDROMIC) != 0, regex = (flags & REGEX) != 0;
+        return (flags & REGEX_ENDONUCLEASE) != 0
+                ? new RegexEndonuclease(name, origin, target, senseTarget, antiSenseTarget, palindromic, regex)
+                : new Endonuclease(name, origin, target, senseTarget, antiSenseTarget, palindromic, regex);
+    }
+
+    /**
+     * Reads a string of the string table.
+     *
+     * @param buffer mapped file
+     * @param offset string position in the string table
+     * @return String read
+     */
+    private String string(MappedByteBuffer buffer, int offset) {
+        int position = (int) (stringsOffset + offset);
+        byte[] bytes = new byte[buffer.getInt(position)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(position + 4 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the header with the current counters.
+     *
+     * @throws IOException if the header cannot be written
+     */
+    private void writeHeader() throws IOException {
+        write(header(capacity, slots, live, end), 0);
+    }
+
+    /**
+     * Writes a buffer in a position of the file.
+     *
+     * @param buffer ByteBuffer ready to be read
+     * @param position position in the file
+     * @throws IOException if the buffer cannot be written
+     */
+    private void write(ByteBuffer buffer, long position) throws IOException {
+        mapped = null;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Writes the catalog again with the provided endonucleases. The data is
+     * written before the header, and the file is truncated if the system
+     * allows it.
+     *
+     * @param endonucleases List of endonucleases
+     * @throws IOException if the file cannot be written
+     */
+    private void rewrite(List<Endonuclease> endonucleases) throws IOException {
+        ByteBuffer image = image(endonucleases);
+        image.position(HEADER_SIZE);
+        write(image, HEADER_SIZE);
+        image.position(0).limit(HEADER_SIZE);
+        write(image, 0);
+        try {
+            channel.truncate(image.capacity());
+        } catch (IOException ex) {
+            // A mapped file cannot be truncated in some systems, the header keeps the end
+        }
+        readHeader();
+        for (int slot = 0; slot < endonucleases.size(); slot++) {
+            decoded[slot] = endonucleases.get(slot);
+        }
+    }
+
+    /**
+     * Builds a whole catalog file, with room for half as many endonucleases
+     * more.
+     *
+     * @param endonucleases List of endonucleases
+     * @return ByteBuffer with the file content
+     * @throws IOException if the strings cannot be encoded
+     */
+    private static ByteBuffer image(List<Endonuclease> endonucleases) throws IOException {
+        int count = endonucleases.size();
+        int fileCapacity = Math.max(MINIMUM_CAPACITY, count + count / 2);
+        ByteBuffer records = ByteBuffer.allocate(fileCapacity * RECORD_SIZE);
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        StringTable table = new StringTable(new DataOutputStream(strings), 0);
+        for (Endonuclease e : endonucleases) {
+            writeRecord(records, e, table);
+        }
+        int fileEnd = record(fileCapacity) + strings.size();
+        ByteBuffer image = ByteBuffer.allocate(fileEnd);
+        image.put(header(fileCapacity, count, count, fileEnd));
+        image.put(records.array());
+        image.put(strings.toByteArray());
+        image.flip();
+        return image;
+    }
+
+    /**
+     * Builds a header.
+     *
+     * @param capacity number of records that fit before the string table
+     * @param slots number of used records
+     * @param live number of live records
+     * @param end end of the data
+     * @return ByteBuffer ready to be read
+     */
+    private static ByteBuffer header(int capacity, int slots, int live, long end) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt(capacity)
+                .putInt(slots).putInt(live).putLong(record(capacity)).putLong(end);
+        header.flip();
+        return header;
+    }
+
+    /**
+     * Encodes an endonuclease record, its strings are added to the table.
+     *
+     * @param records ByteBuffer where the record is written
+     * @param e Endonuclease object
+     * @param table StringTable object
+     * @throws IOException if the strings cannot be written
+     */
+    private static void writeRecord(ByteBuffer records, Endonuclease e, StringTable table) throws IOException {
+        boolean isRegexEndonuclease = e instanceof RegexEndonuclease;
+        int flags = (e.getIsPalindromic() ? PALINDROMIC : 0) | (e.getIsRegex() ? REGEX : 0)
+                | (isRegexEndonuclease ? REGEX_ENDONUCLEASE : 0);
+        records.putInt(flags);
+        records.putInt(e.getEndonucleaseTargetLength());
+        records.putInt(e.getEndonucleasesSenseStrandCuttingBp());
+        records.putInt(e.getEndonucleasesAntiSenseStrandCuttingBp());
+        records.putInt(table.add(e.getEndonucleaseName()));
+        records.putInt(table.add(e.getEndonucleaseOrigin()));
+        records.putInt(table.add(isRegexEndonuclease ? ((RegexEndonuclease) e).getDegeneratedTarget() : e.getEndonucleaseSimpleSenseTarget()));
+        records.putInt(table.add(e.getSenseStrandStringTarget()));
+        records.putInt(table.add(e.getAntiSenseStrandStringTarget()));
+        records.putInt(0); // Reserved
+    }
+
+    /**
+     * String table being written, repeated strings (like origins) are stored
+     * once.
+     */
+    private static class StringTable {
+
+        /**
+         * Output where strings are written.
+         */
+        private final DataOutputStream out;
+
+        /**
+         * Position of the first string written, in the string table.
+         */
+        private final long start;
+
+        /**
+         * Position of every string written.
+         */
+        private final Map<String, Integer> offsets = new HashMap<>();
+
+        /**
+         * String table constructor.
+         *
+         * @param out output where strings are written
+         * @param start position of the first string in the string table
+         */
+        StringTable(DataOutputStream out, long start) {
+            this.out = out;
+            this.start = start;
+        }
+
+        /**
+         * Adds a string if it has not been written yet.
+         *
+         * @param text String to be added (null is stored as empty)
+         * @return int position of the string in the string table
+         * @throws IOException if the string cannot be written
+         */
+        int add(String text) throws IOException {
+            if (text == null) {
+                text = "";
+            }
+            Integer offset = offsets.get(text);
+            if (offset == null) {
+                long position = start + out.size();
+                if (position > Integer.MAX_VALUE) {
+                    throw new IOException("Endonucleases catalog string table is full");
+                }
+                offset = (int) position;
+                byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                offsets.put(text, offset);
+            }
+            return offset;
+        }
+    }
+}
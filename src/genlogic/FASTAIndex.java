@@ -0,0 +1,361 @@
+/*
+ * Copyright (C) 2021 Luis Núñez Gómez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package genlogic;
+
+import genlogic.model.DNASequence;
+import genlogic.model.MappedNucleotides;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class builds, saves and reads samtools compatible FASTA index (.fai)
+ * files. Every index line has the record name, its number of bases, the
+ * position of its first base and the number of bases and bytes of its lines,
+ * so records and regions can be read from the memory mapped FASTA file without
+ * reading the rest of it.
+ *
+ * @author Luis Núñez Gómez
+ */
+public class FASTAIndex {
+
+    /**
+     * Index file extension, added to the FASTA file name.
+     */
+    public static final String EXTENSION = ".fai";
+
+    /**
+     * Mapped FASTA file segments.
+     */
+    private final ByteBuffer[] file;
+
+    /**
+     * Indexed records, in file order.
+     */
+    private final List<Entry> entries;
+
+    /**
+     * Indexed records by name.
+     */
+    private final Map<String, Entry> names = new HashMap<>();
+
+    // Constructor
+    /**
+     * Index constructor.
+     *
+     * @param file mapped FASTA file segments
+     * @param entries indexed records
+     * @throws IOException if two records have the same name
+     */
+    private FASTAIndex(ByteBuffer[] file, List<Entry> entries) throws IOException {
+        this.file = file;
+        this.entries = entries;
+        for (Entry entry : entries) {
+            if (names.put(entry.name, entry) != null) {
+                throw new IOException("Duplicated sequence name: " + entry.name);
+            }
+        }
+    }
+
+    /**
+     * Opens the index of a FASTA file. The index file next to the FASTA file
+     * is used if it is up to date, otherwise the index is built reading the
+     * FASTA file once and saved (if the folder cannot be written the index is
+     * just kept in memory).
+     *
+     * @param fastaPath String with the FASTA file path
+     * @return FASTAIndex object
+     * @throws IOException if the FASTA file cannot be read or indexed (lines
+     * with different lengths inside a record, duplicated names...)
+     */
+    public static FASTAIndex open(String fastaPath) throws IOException {
+        ByteBuffer[] file = FASTASequenceReader.map(fastaPath);
+        File fasta = new File(fastaPath);
+        File index = new File(fastaPath + EXTENSION);
+        if (index.isFile() && index.lastModified() >= fasta.lastModified()) {
+            try {
+                return new FASTAIndex(file, load(file, fasta.length(), index));
+            } catch (IOException | RuntimeException ex) {
+                System.err.println("Warning, FASTA index will be rebuilt: " + ex);
+            }
+        }
+        FASTAIndex built = new FASTAIndex(file, build(file));
+        try {
+            built.save(index);
+        } catch (IOException ex) {
+            System.err.println("Warning, unable to save FASTA index: " + ex);
+        }
+        return built;
+    }
+
+    /**
+     * Returns all the records as DNASequence objects. Only the information
+     * lines are read, bases are read from the mapped file when they are used.
+     *
+     * @return List of DNASequence objects
+     */
+    public List<DNASequence> sequences() {
+        List<DNASequence> sequences = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            sequences.add(new DNASequence(entry.information, view(entry)));
+        }
+        return sequences;
+    }
+
+    /**
+     * Returns the record names, in file order.
+     *
+     * @return List of names
+     */
+    public List<String> getNames() {
+        List<String> recordNames = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            recordNames.add(entry.name);
+        }
+        return recordNames;
+    }
+
+    /**
+     * Returns a record or a region of it using samtools syntax: "name" for the
+     * whole record, "name:start" from start to the end and "name:start-end"
+     * for a region. Positions start at 1, end is included and thousands
+     * separators are allowed ("contig_12:100,000-250,000").
+     *
+     * @param query String with the region
+     * @return DNASequence object with the query as information
+     * @throws IllegalArgumentException if the record does not exist or the
+     * region is not valid
+     */
+    public DNASequence region(String query) {
+        Entry entry = names.get(query);
+        int start = 1, end;
+        if (entry != null) {
+            end = entry.length;
+        } else {
+            int colon = query.lastIndexOf(':');
+            entry = colon > 0 ? names.get(query.substring(0, colon)) : null;
+            if (entry == null) {
+                throw new IllegalArgumentException("Unknown sequence: " + query);
+            }
+            String[] limits = query.substring(colon + 1).replace(",", "").split("-", -1);
+            try {
+                start = Integer.parseInt(limits[0]);
+                end = limits.length > 1 && !limits[1].isEmpty() ? Integer.parseInt(limits[1]) : entry.length;
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Wrong region: " + query);
+            }
+            if (limits.length > 2 || start < 1 || start > end) {
+                throw new IllegalArgumentException("Wrong region: " + query);
+            }
+            end = Math.min(end, entry.length);
+            start = Math.min(start, end + 1);
+        }
+        return new DNASequence(query, view(entry).region(start - 1, end));
+    }
+
+    /**
+     * Creates the view of a record.
+     *
+     * @param entry indexed record
+     * @return MappedNucleotides view
+     */
+    private MappedNucleotides view(Entry entry) {
+        return new MappedNucleotides(file, entry.offset, entry.length, entry.lineBases, entry.lineBytes);
+    }
+
+    /**
+     * Builds the index reading the mapped FASTA file once.
+     *
+     * @param file mapped FASTA file segments
+     * @return List of indexed records
+     * @throws IOException if any record cannot be indexed
+     */
+    private static List<Entry> build(ByteBuffer[] file) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        IOException[] error = new IOException[1];
+        FASTASequenceReader.mappedRecordScan(file, record -> {
+            if (error[0] != null) {
+                return;
+            }
+            try {
+                if (!record.isRegular() || !record.isLineStartHeader() || record.getLength() > Integer.MAX_VALUE) {
+                    throw new IOException("Record " + (entries.size() + 1) + " cannot be indexed");
+                }
+                entries.add(new Entry(record.getInformation(file), (int) record.getLength(),
+                        record.getOffset(file), record.getLineBases(), record.getLineBytes()));
+            } catch (IOException ex) {
+                error[0] = ex;
+            }
+        });
+        if (error[0] != null) {
+            throw error[0];
+        }
+        return entries;
+    }
+
+    /**
+     * Reads an index file. Information lines are read from the FASTA file,
+     * they are the lines before the first base of every record.
+     *
+     * @param file mapped FASTA file segments
+     * @param fastaLength FASTA file size
+     * @param index index file
+     * @return List of indexed records
+     * @throws IOException if the index file cannot be read or it does not
+     * match the FASTA file
+     */
+    private static List<Entry> load(ByteBuffer[] file, long fastaLength, File index) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(index))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                if (fields.length < 5) {
+                    throw new IOException("Wrong index line: " + line);
+                }
+                int length = Integer.parseInt(fields[1]);
+                long offset = Long.parseLong(fields[2]);
+                int lineBases = Integer.parseInt(fields[3]);
+                int lineBytes = Integer.parseInt(fields[4]);
+                long lastBase = length == 0 ? offset - 1
+                        : offset + (long) ((length - 1) / lineBases) * lineBytes + (length - 1) % lineBases;
+                if (offset < 0 || lastBase >= fastaLength) {
+                    throw new IOException("Index line out of the FASTA file: " + line);
+                }
+                Entry entry = new Entry(information(file, offset), length, offset, lineBases, lineBytes);
+                if (!entry.name.equals(fields[0])) {
+                    throw new IOException("Index line does not match the FASTA file: " + line);
+                }
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the information line of a record backwards from its first base.
+     *
+     * @param file mapped FASTA file segments
+     * @param offset position of the first record base
+     * @return String with the information
+     * @throws IOException if there is no information line before the offset
+     */
+    private static String information(ByteBuffer[] file, long offset) throws IOException {
+        long p = offset - 1;
+        if (p >= 0 && MappedNucleotides.byteAt(file, p) == '\n') {
+            p--;
+        }
+        if (p >= 0 && MappedNucleotides.byteAt(file, p) == '\r') {
+            p--;
+        }
+        long end = p + 1;
+        while (p >= 0 && MappedNucleotides.byteAt(file, p) != '>') {
+            int b = MappedNucleotides.byteAt(file, p);
+            if (b == '\n' || b == '\r' || end - p > Integer.MAX_VALUE) {
+                break;
+            }
+            p--;
+        }
+        if (p < 0 || MappedNucleotides.byteAt(file, p) != '>'
+                || (p > 0 && MappedNucleotides.byteAt(file, p - 1) != '\n' && MappedNucleotides.byteAt(file, p - 1) != '\r')) {
+            throw new IOException("No information line before byte " + offset);
+        }
+        byte[] information = new byte[(int) (end - p - 1)];
+        for (int i = 0; i < information.length; i++) {
+            information[i] = (byte) MappedNucleotides.byteAt(file, p + 1 + i);
+        }
+        return new String(information, Charset.defaultCharset());
+    }
+
+    /**
+     * Saves the index file, one tab separated line per record.
+     *
+     * @param index index file
+     * @throws IOException if the file cannot be written
+     */
+    private void save(File index) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(index))) {
+            for (Entry entry : entries) {
+                writer.write(entry.name + "\t" + entry.length + "\t" + entry.offset + "\t"
+                        + entry.lineBases + "\t" + entry.lineBytes);
+                // samtools indexes end their lines with \n on every platform
+                writer.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Indexed record.
+     */
+    private static class Entry {
+
+        /**
+         * Record name, the information line until its first space.
+         */
+        final String name;
+
+        /**
+         * Whole information line.
+         */
+        final String information;
+
+        /**
+         * Number of bases.
+         */
+        final int length;
+
+        /**
+         * Position of the first base.
+         */
+        final long offset;
+
+        /**
+         * Number of bases and bytes in every full line.
+         */
+        final int lineBases, lineBytes;
+
+        /**
+         * Entry constructor.
+         *
+         * @param information whole information line
+         * @param length number of bases
+         * @param offset position of the first base
+         * @param lineBases number of bases in every full line
+         * @param lineBytes number of bytes in every full line
+         */
+        Entry(String information, int length, long offset, int lineBases, int lineBytes) {
+            this.information = information;
+            this.name = information.split("\\s", 2)[0];
+            this.length = length;
+            this.offset = offset;
+            this.lineBases = lineBases;
+            this.lineBytes = lineBytes;
+        }
+    }
+}
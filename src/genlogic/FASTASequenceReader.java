@@ -17,11 +17,18 @@
 package genlogic;
 
 import genlogic.model.DNASequence;
-import java.io.BufferedReader;
+import genlogic.model.PackedNucleotides;
+import genlogic.model.MappedNucleotides;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.function.Consumer;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 
@@ -33,71 +40,71 @@ import javafx.collections.ObservableList;
  */
 public class FASTASequenceReader {
 
+    /**
+     * Size of the buffer used to read the file.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Lookup table that turns every byte of a sequence line into its upper
+     * case symbol. Line breaks, spaces and other control bytes get 0 and are
+     * skipped.
+     */
+    private static final char[] SEQUENCE_SYMBOLS = new char[256];
+
+    /**
+     * Lookup table with the expected sequence symbols (IUPAC codes, gaps and
+     * stop symbols), any other symbol is still loaded but reported.
+     */
+    private static final boolean[] IUPAC_SYMBOLS = new boolean[256];
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            SEQUENCE_SYMBOLS[b] = b <= ' ' || b == 127 ? 0 : Character.toUpperCase((char) b);
+        }
+        for (char symbol : "ACGTURYSWKMBDHVN-*".toCharArray()) {
+            IUPAC_SYMBOLS[symbol] = true;
+            IUPAC_SYMBOLS[Character.toLowerCase(symbol)] = true;
+        }
+    }
+
     /**
      * Method to read standard FASTA or multiFASTA files and create DNAsequence
-     * objects.
+     * objects. The FASTA index (.fai) is used, or built, when possible, so
+     * only the information lines are read and bases are read from the memory
+     * mapped file when they are used. Files that cannot be indexed are loaded,
+     * or memory mapped if they are bigger than a quarter of the maximum heap
+     * size.
      * 
      * @param path String with the path where the FASTA file has been placed
      * @return DNASequence objets list
+     * @see FASTAIndex
      */
     public ObservableList<DNASequence> fileReader(String path) {
-        ObservableList<DNASequence> sequences = FXCollections.observableArrayList();
         try {
-            /**
-             * This block reads the file and save it as a buffered Reader
-             */
-            File fastaFile = new File(path);
-            BufferedReader buffer = new BufferedReader(new FileReader(fastaFile));
-            String text;
-            StringBuilder temporal = new StringBuilder();
-            String line = buffer.readLine();
-            /**
-             * The program merges all lines in a StringBuilder object (saving
-             * memory), adding "-&" characters set between merged lines
-             */
-            while (line != null) {
-                text = line;
-                line = buffer.readLine();
-                temporal = temporal.append(text).append("-&");
-            }
-            buffer.close();
-            /**
-             * The program turns the StringBuilder to string and saves every
-             * fasta sequence in a String array using the symbol ">"
-             */
-            String temporalString = temporal.toString();
-            String[] fastaSequences = temporalString.split(">");
-            /**
-             * The program splits every element of the first String array in a
-             * new String array, using the previously "-&" inserted symbols to
-             * split lines again
-             */
-            for (int i = 1; i < fastaSequences.length; i++) {
-                String information;
-                String sequence = "";
-                String[] parts2 = fastaSequences[i].split("-&");
-                /**
-                 * The first string is always the information atribute for a
-                 * DNASequence object, the program saves it in a string called
-                 * "information"
-                 */
-                information = parts2[0];
-                /**
-                 * The rest of the strings (j =1) are the DNA sequence, the
-                 * program concate all of them in a single string called
-                 * "sequence"
-                 */
-                for (int j = 1; j < parts2.length; j++) {
-                    sequence = sequence.concat(parts2[j].toUpperCase());
-                }
-                /**
-                 * For every element of the first array called "fastaSequence"
-                 * the program creates a new DNASequence object and saves it in
-                 * a list object.
-                 */
-                DNASequence test = new DNASequence(information, sequence);
-                sequences.add(test);
+            return FXCollections.observableArrayList(FASTAIndex.open(path).sequences());
+        } catch (IOException ex) {
+            System.err.println("FASTA file cannot be indexed: " + ex);
+        }
+        return fileReader(path, new File(path).length() > Runtime.getRuntime().maxMemory() / 4);
+    }
 
+    /**
+     * Method to read standard FASTA or multiFASTA files and create DNAsequence
+     * objects, choosing if the file has to be memory mapped.
+     * 
+     * @param path String with the path where the FASTA file has been placed
+     * @param memoryMapped true to read the bases from the mapped file
+     * @return DNASequence objets list
+     * @see #mappedRecordReader(String, Consumer)
+     */
+    public ObservableList<DNASequence> fileReader(String path, boolean memoryMapped) {
+        ObservableList<DNASequence> sequences = FXCollections.observableArrayList();
+        try {
+            if (memoryMapped) {
+                mappedRecordReader(path, sequences::add);
+            } else {
+                recordReader(path, sequences::add);
             }
         } catch (FileNotFoundException ex) {
             System.out.println("Error, unable to find FASTA file: " + ex);
@@ -106,4 +113,418 @@ public class FASTASequenceReader {
         }
         return sequences;
     }
+
+    /**
+     * Reads standard FASTA or multiFASTA files in a single pass and delivers
+     * every DNASequence object as soon as its record has been read. Only the
+     * current record (already packed) and a fixed size buffer are kept in
+     * memory. Every '>' symbol starts a new record whose information is the
+     * rest of its line, the following lines are the DNA sequence. Bases are
+     * turned to upper case, and line breaks and spaces are skipped.
+     * 
+     * @param path String with the path where the FASTA file has been placed
+     * @param recordConsumer Consumer that receives every DNASequence object
+     * @throws IOException if the file cannot be read
+     */
+    public void recordReader(String path, Consumer<DNASequence> recordConsumer) throws IOException {
+        try (InputStream fastaFile = new FileInputStream(path)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            byte[] information = new byte[256];
+            int informationLength = 0;
+            // Null until the first '>' symbol, text before it is not a record
+            PackedNucleotides.Builder sequence = null;
+            boolean inInformation = false;
+            int unexpectedSymbols = 0;
+            int read;
+            while ((read = fastaFile.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    int b = buffer[i] & 0xFF;
+                    if (b == '>') {
+                        if (sequence != null) {
+                            recordConsumer.accept(record(new String(information, 0, informationLength, Charset.defaultCharset()), sequence.build(), unexpectedSymbols));
+                        }
+                        sequence = new PackedNucleotides.Builder();
+                        informationLength = 0;
+                        unexpectedSymbols = 0;
+                        inInformation = true;
+                    } else if (inInformation) {
+                        if (b == '\n' || b == '\r') {
+                            inInformation = false;
+                        } else {
+                            if (informationLength == information.length) {
+                                information = Arrays.copyOf(information, informationLength * 2);
+                            }
+                            information[informationLength++] = (byte) b;
+                        }
+                    } else if (sequence != null && SEQUENCE_SYMBOLS[b] != 0) {
+                        sequence.append(SEQUENCE_SYMBOLS[b]);
+                        if (!IUPAC_SYMBOLS[b]) {
+                            ++unexpectedSymbols;
+                        }
+                    }
+                }
+            }
+            if (sequence != null) {
+                recordConsumer.accept(record(new String(information, 0, informationLength, Charset.defaultCharset()), sequence.build(), unexpectedSymbols));
+            }
+        }
+    }
+
+    /**
+     * Reads standard FASTA or multiFASTA files mapping them in memory, so files
+     * bigger than the heap can be analyzed. The file is read once to find the
+     * records and their line layout, and every record whose lines have the
+     * same length gets a MappedNucleotides sequence that reads the bases from
+     * the mapped file. Records with irregular lines (or spaces between bases)
+     * are packed in memory like recordReader does, so both methods return the
+     * same sequences.
+     * 
+     * @param path String with the path where the FASTA file has been placed
+     * @param recordConsumer Consumer that receives every DNASequence object
+     * @throws IOException if the file cannot be mapped
+     */
+    public void mappedRecordReader(String path, Consumer<DNASequence> recordConsumer) throws IOException {
+        ByteBuffer[] file = map(path);
+        IOException[] error = new IOException[1];
+        mappedRecordScan(file, record -> {
+            try {
+                if (error[0] == null) {
+                    recordConsumer.accept(record.toDNASequence(file));
+                }
+            } catch (IOException ex) {
+                error[0] = ex;
+            }
+        });
+        if (error[0] != null) {
+            throw error[0];
+        }
+    }
+
+    /**
+     * Maps a whole file in memory.
+     * 
+     * @param path String with the path of the file
+     * @return ByteBuffer[] mapped file segments
+     * @throws IOException if the file cannot be mapped
+     */
+    static ByteBuffer[] map(String path) throws IOException {
+        try (FileChannel channel = new FileInputStream(path).getChannel()) {
+            return MappedNucleotides.map(channel);
+        }
+    }
+
+    /**
+     * Reads a mapped file once, finding the layout of every record without
+     * loading any base.
+     * 
+     * @param file mapped file segments
+     * @param recordConsumer Consumer that receives every finished record
+     */
+    static void mappedRecordScan(ByteBuffer[] file, Consumer<MappedRecord> recordConsumer) {
+        MappedRecord record = null;
+        long position = 0;
+        int previous = '\n';
+        for (ByteBuffer segment : file) {
+            int limit = segment.limit();
+            for (int i = 0; i < limit; i++, position++) {
+                int b = segment.get(i) & 0xFF;
+                if (b == '>') {
+                    if (record != null) {
+                        record.finish(position);
+                        recordConsumer.accept(record);
+                    }
+                    record = new MappedRecord(position + 1, previous == '\n' || previous == '\r');
+                } else if (record != null) {
+                    record.add(b, position);
+                }
+                previous = b;
+            }
+        }
+        if (record != null) {
+            record.finish(position);
+            recordConsumer.accept(record);
+        }
+    }
+
+    /**
+     * Creates the DNASequence object for a record.
+     * 
+     * @param information String with the information line
+     * @param sequence record bases
+     * @param unexpectedSymbols number of non IUPAC symbols in the sequence
+     * @return DNASequence object
+     */
+    private static DNASequence record(String information, CharSequence sequence, int unexpectedSymbols) {
+        if (unexpectedSymbols > 0) {
+            System.err.println("Warning, " + unexpectedSymbols + " unexpected symbols found in sequence: " + information);
+        }
+        return new DNASequence(information, sequence);
+    }
+
+    /**
+     * Layout of a record found in a mapped file. It checks, line by line, if
+     * every line but the last one has the same number of bases and bytes.
+     */
+    static class MappedRecord {
+
+        /**
+         * First byte of the information line.
+         */
+        private final long informationStart;
+
+        /**
+         * True if the '>' symbol is the first one of its line.
+         */
+        private final boolean lineStartHeader;
+
+        /**
+         * Position after the last record byte, -1 while it is being read.
+         */
+        private long end = -1;
+
+        /**
+         * Position of the information line break, -1 while it is being read.
+         */
+        private long informationEnd = -1;
+
+        /**
+         * First byte after the information line.
+         */
+        private long sequenceStart;
+
+        /**
+         * Position of the first base, -1 until it is found.
+         */
+        private long firstBase = -1;
+
+        /**
+         * Number of bases and bytes of the first line with bases.
+         */
+        private int lineBases, lineBytes;
+
+        /**
+         * Total number of bases.
+         */
+        private long bases;
+
+        /**
+         * Number of non IUPAC symbols.
+         */
+        private int unexpectedSymbols;
+
+        /**
+         * False if the record lines cannot be read as a MappedNucleotides.
+         */
+        private boolean regular = true;
+
+        /**
+         * True once a line shorter than the first one has been found, no
+         * more bases are allowed after it.
+         */
+        private boolean lastLine;
+
+        /**
+         * State of the current line: first byte, bases, carriage return found
+         * and non base symbols found.
+         */
+        private long lineStart;
+        private int basesInLine;
+        private boolean lineBreak, skippedSymbols;
+
+        /**
+         * Record constructor.
+         *
+         * @param informationStart first byte of the information line
+         * @param lineStartHeader true if the '>' symbol starts its line
+         */
+        MappedRecord(long informationStart, boolean lineStartHeader) {
+            this.informationStart = informationStart;
+            this.lineStartHeader = lineStartHeader;
+        }
+
+        /**
+         * Adds the next byte of the record.
+         *
+         * @param b byte value (0 to 255)
+         * @param position position in the file
+         */
+        void add(int b, long position) {
+            if (informationEnd < 0) {
+                if (b == '\n' || b == '\r') {
+                    informationEnd = position;
+                    sequenceStart = position + 1;
+                    lineStart = position + 1;
+                }
+            } else if (b == '\n') {
+                endLine(position + 1);
+            } else if (b == '\r') {
+                skippedSymbols |= lineBreak;
+                lineBreak = true;
+            } else if (SEQUENCE_SYMBOLS[b] == 0) {
+                skippedSymbols = true;
+            } else {
+                skippedSymbols |= lineBreak;
+                ++basesInLine;
+                ++bases;
+                if (!IUPAC_SYMBOLS[b]) {
+                    ++unexpectedSymbols;
+                }
+            }
+        }
+
+        /**
+         * Checks the current line layout.
+         *
+         * @param next position of the first byte of the next line
+         */
+        private void endLine(long next) {
+            long bytes = next - lineStart;
+            if (skippedSymbols || bytes > Integer.MAX_VALUE) {
+                regular = false;
+            }
+            if (basesInLine > 0) {
+                if (firstBase < 0) {
+                    firstBase = lineStart;
+                    lineBases = basesInLine;
+                    lineBytes = (int) bytes;
+                } else if (lastLine || basesInLine > lineBases) {
+                    regular = false;
+                } else if (basesInLine < lineBases || bytes != lineBytes) {
+                    lastLine = true;
+                }
+            } else if (firstBase >= 0) {
+                lastLine = true;
+            }
+            lineStart = next;
+            basesInLine = 0;
+            lineBreak = false;
+            skippedSymbols = false;
+        }
+
+        /**
+         * Finishes the record layout once the whole record has been read.
+         *
+         * @param end position after the last record byte
+         */
+        void finish(long end) {
+            this.end = end;
+            if (informationEnd < 0) {
+                informationEnd = end;
+                sequenceStart = end;
+            } else {
+                endLine(end);
+            }
+        }
+
+        /**
+         * Checks if the record bases can be read from the mapped file.
+         *
+         * @return boolean true if every line but the last one has the same
+         * number of bases and bytes
+         */
+        boolean isRegular() {
+            return regular;
+        }
+
+        /**
+         * Checks if the record '>' symbol starts its line, like FASTA index
+         * files require.
+         *
+         * @return boolean true if the '>' symbol starts its line
+         */
+        boolean isLineStartHeader() {
+            return lineStartHeader;
+        }
+
+        /**
+         * Returns the number of bases.
+         *
+         * @return long number of bases
+         */
+        long getLength() {
+            return bases;
+        }
+
+        /**
+         * Returns the position of the first base. Records without bases start
+         * after their information line.
+         *
+         * @param file mapped file segments
+         * @return long position in the file
+         */
+        long getOffset(ByteBuffer[] file) {
+            if (firstBase >= 0) {
+                return firstBase;
+            }
+            if (sequenceStart < end && MappedNucleotides.byteAt(file, sequenceStart) == '\n'
+                    && MappedNucleotides.byteAt(file, sequenceStart - 1) == '\r') {
+                return sequenceStart + 1;
+            }
+            return sequenceStart;
+        }
+
+        /**
+         * Returns the number of bases in every full line.
+         *
+         * @return int number of bases
+         */
+        int getLineBases() {
+            return lineBases;
+        }
+
+        /**
+         * Returns the number of bytes in every full line.
+         *
+         * @return int number of bytes, line break included
+         */
+        int getLineBytes() {
+            return lineBytes;
+        }
+
+        /**
+         * Returns the record information line.
+         *
+         * @param file mapped file segments
+         * @return String with the information
+         * @throws IOException if the line is too long
+         */
+        String getInformation(ByteBuffer[] file) throws IOException {
+            if (informationEnd - informationStart > Integer.MAX_VALUE) {
+                throw new IOException("Record starting at byte " + informationStart + " is too long");
+            }
+            byte[] information = new byte[(int) (informationEnd - informationStart)];
+            for (int i = 0; i < information.length; i++) {
+                information[i] = (byte) MappedNucleotides.byteAt(file, informationStart + i);
+            }
+            return new String(information, Charset.defaultCharset());
+        }
+
+        /**
+         * Creates the DNASequence object, reading the bases from the mapped
+         * file if the record is regular or packing them otherwise.
+         *
+         * @param file mapped file segments
+         * @return DNASequence object
+         * @throws IOException if the record is too long
+         */
+        DNASequence toDNASequence(ByteBuffer[] file) throws IOException {
+            if (bases > Integer.MAX_VALUE) {
+                throw new IOException("Record starting at byte " + informationStart + " is too long");
+            }
+            CharSequence sequence;
+            if (regular) {
+                sequence = new MappedNucleotides(file, getOffset(file), (int) bases, lineBases, lineBytes);
+            } else {
+                PackedNucleotides.Builder packed = new PackedNucleotides.Builder((int) bases);
+                for (long p = sequenceStart; p < end; p++) {
+                    char symbol = SEQUENCE_SYMBOLS[MappedNucleotides.byteAt(file, p)];
+                    if (symbol != 0) {
+                        packed.append(symbol);
+                    }
+                }
+                sequence = packed.build();
+            }
+            return record(getInformation(file), sequence, unexpectedSymbols);
+        }
+    }
 }
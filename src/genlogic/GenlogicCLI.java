@@ -0,0 +1,627 @@
+/*
+ * Copyright (C) 2021 Luis Núñez Gómez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package genlogic;
+
+import genlogic.engine.AnalysisCache;
+import genlogic.engine.Digest;
+import genlogic.engine.DigestMatrix;
+import genlogic.engine.DigestOptimizer;
+import genlogic.engine.RestrictionSiteFinder;
+import genlogic.engine.ScanMonitor;
+import genlogic.model.DNASequence;
+import genlogic.model.Endonuclease;
+import genlogic.model.RestrictionSiteStore;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command line entry point, it runs the restriction analysis without any
+ * display server, so it can be used in pipelines and compute clusters. Every
+ * FASTA record is read, analyzed and written before the next one is read.
+ * <p>
+ * Usage: java -cp Genlogic.jar genlogic.GenlogicCLI -i file.fasta [options]
+ *
+ * @author Luis Núñez Gómez
+ */
+public class GenlogicCLI {
+
+    /**
+     * Default endonucleases catalog, the same one used by the GUI.
+     */
+    private static final String DEFAULT_CATALOG = "./ENDONUCLEASES.dat";
+
+    /**
+     * Virtual gel bands, from 100 bp to 50 kb.
+     */
+    private static final int GEL_BANDS = 20, GEL_MIN_LENGTH = 100, GEL_MAX_LENGTH = 50000;
+
+    /**
+     * Command line help.
+     */
+    private static final String USAGE = "Usage: java -cp Genlogic.jar genlogic.GenlogicCLI -i <fasta> [options]\n"
+            + "  -i, --input <file>      FASTA or multiFASTA file\n"
+            + "  -e, --enzymes <file>    endonucleases catalog (.glc) or dat file, a dat\n"
+            + "                          file is migrated once to a catalog next to it\n"
+            + "                          (default " + DEFAULT_CATALOG + ")\n"
+            + "  -n, --names <list>      comma separated endonuclease names (default all)\n"
+            + "  -c, --circular          circular sequences (default linear)\n"
+            + "  -m, --mode <mode>       sites, count (sites per endonuclease), cuts\n"
+            + "                          (endonucleases that cut or not), digest\n"
+            + "                          (fragments of all the endonucleases together\n"
+            + "                          and virtual gel), matrix (double digest of\n"
+            + "                          every pair of endonucleases) or optimize\n"
+            + "                          (smallest endonuclease sets whose fragments\n"
+            + "                          are all inside --window), default sites\n"
+            + "  -r, --region <region>   analyze only a record or region, name:start-end\n"
+            + "                          (only positions start-end with --query)\n"
+            + "  -a, --archive <dir>     also saves the sites of every sequence in an\n"
+            + "                          indexed binary results file in dir\n"
+            + "  -q, --query <file>      reads the sites from a binary results file\n"
+            + "                          instead of analyzing a FASTA file\n"
+            + "  -x, --fasta <file>      also writes the digest fragments in FASTA format\n"
+            + "  -w, --window <min-max>  fragment length window of the optimize mode\n"
+            + "  -s, --set-size <n>      maximum endonucleases per set in optimize mode\n"
+            + "                          (default " + DigestOptimizer.DEFAULT_MAX_ENDONUCLEASES + ")\n"
+            + "  -t, --top <n>           number of sets written in optimize mode\n"
+            + "                          (default " + DigestOptimizer.DEFAULT_RESULTS + ")\n"
+            + "  -d, --cache <dir>       reads the targets of already analyzed sequences\n"
+            + "                          from a cache folder and saves the new ones\n"
+            + "                          there, shared by every run (not in cuts mode)\n"
+            + "  -l, --cache-limit <MB>  size limit of the cache folder, the least\n"
+            + "                          recently used entries are deleted (default "
+            + AnalysisCache.DEFAULT_MAX_DISK_BYTES / (1024 * 1024) + ")\n"
+            + "  -f, --format <txt|csv>  output format (default txt, or the output extension)\n"
+            + "  -o, --output <file>     output file (default standard output), gzip\n"
+            + "                          compressed if it ends with .gz\n"
+            + "  -z, --gzip              gzip compressed output\n"
+            + "  -b, --rebase <file>     imports the enzymes of a REBASE file (withrefm\n"
+            + "                          or bairoch format) into the catalog\n"
+            + "  -k, --commercial        imports only commercially available enzymes\n"
+            + "  -h, --help              shows this help";
+
+    /**
+     * Command line options.
+     */
+    private String input, catalog = DEFAULT_CATALOG, names, region, format, output, mode = "sites", archive, query, rebase, fasta, cache;
+
+    /**
+     * True for circular sequences.
+     */
+    private boolean isCircular;
+
+    /**
+     * True for gzip compressed output.
+     */
+    private boolean gzip;
+
+    /**
+     * True to import only commercially available enzymes.
+     */
+    private boolean commercialOnly;
+
+    /**
+     * Fragment length window, maximum endonucleases per set and number of
+     * sets of the optimize mode.
+     */
+    private int minFragment, maxFragment, setSize = DigestOptimizer.DEFAULT_MAX_ENDONUCLEASES, top = DigestOptimizer.DEFAULT_RESULTS;
+
+    /**
+     * Size limit of the cache folder, in MB.
+     */
+    private long cacheLimit = AnalysisCache.DEFAULT_MAX_DISK_BYTES / (1024 * 1024);
+
+    /**
+     * Starts the command line analysis. Exit status is 0 on success, 1 for
+     * wrong options and 2 for I/O errors.
+     *
+     * @param args command line options
+     */
+    public static void main(String[] args) {
+        GenlogicCLI cli = new GenlogicCLI();
+        try {
+            if (!cli.parse(args)) {
+                System.out.println(USAGE);
+                return;
+            }
+            cli.run();
+        } catch (IllegalArgumentException ex) {
+            System.err.println("Error, " + ex.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        } catch (IOException | UncheckedIOException ex) {
+            System.err.println("Error I/O: " + ex.getMessage());
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Reads the command line options.
+     *
+     * @param args command line options
+     * @return boolean false if the help has been requested
+     * @throws IllegalArgumentException if any option is wrong
+     */
+    private boolean parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-i":
+                case "--input":
+                    input = value(args, ++i);
+                    break;
+                case "-e":
+                case "--enzymes":
+                    catalog = value(args, ++i);
+                    break;
+                case "-n":
+                case "--names":
+                    names = value(args, ++i);
+                    break;
+                case "-c":
+                case "--circular":
+                    isCircular = true;
+                    break;
+                case "-m":
+                case "--mode":
+                    mode = value(args, ++i).toLowerCase();
+                    break;
+                case "-r":
+                case "--region":
+                    region = value(args, ++i);
+                    break;
+                case "-f":
+                case "--format":
+                    format = value(args, ++i).toLowerCase();
+                    break;
+                case "-o":
+                case "--output":
+                    output = value(args, ++i);
+                    break;
+                case "-a":
+                case "--archive":
+                    archive = value(args, ++i);
+                    break;
+                case "-q":
+                case "--query":
+                    query = value(args, ++i);
+                    break;
+                case "-x":
+                case "--fasta":
+                    fasta = value(args, ++i);
+                    break;
+                case "-w":
+                case "--window":
+                    String[] window = value(args, ++i).split("-", 2);
+                    if (window.length < 2) {
+                        throw new IllegalArgumentException("wrong window " + args[i]);
+                    }
+                    minFragment = number(window[0]);
+                    maxFragment = number(window[1]);
+                    break;
+                case "-s":
+                case "--set-size":
+                    setSize = number(value(args, ++i));
+                    break;
+                case "-t":
+                case "--top":
+                    top = number(value(args, ++i));
+                    break;
+                case "-d":
+                case "--cache":
+                    cache = value(args, ++i);
+                    break;
+                case "-l":
+                case "--cache-limit":
+                    cacheLimit = number(value(args, ++i));
+                    break;
+                case "-z":
+                case "--gzip":
+                    gzip = true;
+                    break;
+                case "-b":
+                case "--rebase":
+                    rebase = value(args, ++i);
+                    break;
+                case "-k":
+                case "--commercial":
+                    commercialOnly = true;
+                    break;
+                case "-h":
+                case "--help":
+                    return false;
+                default:
+                    throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        if (input == null && query == null && rebase == null) {
+            throw new IllegalArgumentException("no FASTA file provided");
+        }
+        if (output != null && output.endsWith(RestrictionSiteWriter.GZIP_EXTENSION)) {
+            gzip = true;
+        }
+        if (format == null) {
+            String extension = output == null ? "" : output.toLowerCase();
+            if (gzip) {
+                extension = extension.substring(0, extension.length() - RestrictionSiteWriter.GZIP_EXTENSION.length());
+            }
+            format = extension.endsWith(".csv") ? "csv" : "txt";
+        }
+        if (!format.equals("txt") && !format.equals("csv")) {
+            throw new IllegalArgumentException("unknown format " + format);
+        }
+        if (!mode.equals("sites") && !mode.equals("count") && !mode.equals("cuts") && !mode.equals("digest")
+                && !mode.equals("matrix") && !mode.equals("optimize")) {
+            throw new IllegalArgumentException("unknown mode " + mode);
+        }
+        if (fasta != null && !mode.equals("digest")) {
+            throw new IllegalArgumentException("--fasta needs the digest mode");
+        }
+        if (mode.equals("optimize") && (minFragment < 1 || maxFragment < minFragment)) {
+            throw new IllegalArgumentException("the optimize mode needs a --window min-max");
+        }
+        if (setSize < 1 || top < 1) {
+            throw new IllegalArgumentException("--set-size and --top must be positive");
+        }
+        if (cacheLimit < 1) {
+            throw new IllegalArgumentException("--cache-limit must be positive");
+        }
+        return true;
+    }
+
+    /**
+     * Returns an option value.
+     *
+     * @param args command line options
+     * @param i value position
+     * @return String with the value
+     * @throws IllegalArgumentException if the value is missing
+     */
+    private static String value(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("missing value for " + args[i - 1]);
+        }
+        return args[i];
+    }
+
+    /**
+     * Parses a numeric option value.
+     *
+     * @param value String with the value
+     * @return int value
+     * @throws IllegalArgumentException if the value is not a number
+     */
+    private static int number(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("wrong number " + value);
+        }
+    }
+
+    /**
+     * Runs the analysis of every FASTA record (or the requested region) and
+     * writes the results.
+     *
+     * @throws IOException if any file cannot be read or written
+     */
+    private void run() throws IOException {
+        if (rebase != null) {
+            importRebase();
+            if (input == null && query == null) {
+                return;
+            }
+        }
+        RestrictionSiteFinder finder = query == null ? new RestrictionSiteFinder(endonucleases()) : null;
+        if (archive != null && !new File(archive).isDirectory() && !new File(archive).mkdirs()) {
+            throw new IOException("unable to create the archive folder " + archive);
+        }
+        if (finder != null && cache != null) {
+            if (!new File(cache).isDirectory() && !new File(cache).mkdirs()) {
+                throw new IOException("unable to create the cache folder " + cache);
+            }
+            finder.setCache(new AnalysisCache(AnalysisCache.DEFAULT_MAX_BYTES, new File(cache), cacheLimit * 1024 * 1024));
+        }
+        // Every file is closed even if the next one cannot be opened
+        try (OutputStream out = output != null ? new FileOutputStream(output) : System.out;
+                RestrictionSiteWriter writer = new RestrictionSiteWriter(RestrictionSiteWriter.bufferedWriter(out, gzip), format);
+                Writer fragments = fasta != null ? RestrictionSiteWriter.bufferedWriter(new FileOutputStream(fasta),
+                        fasta.endsWith(RestrictionSiteWriter.GZIP_EXTENSION)) : null) {
+            if (query != null) {
+                writeQuery(writer);
+            } else if (region != null) {
+                write(writer, fragments, FASTAIndex.open(input).region(region), finder);
+            } else {
+                new FASTASequenceReader().recordReader(input, sequence -> {
+                    try {
+                        write(writer, fragments, sequence, finder);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Analyzes a sequence and writes its results, preceded by the sequence
+     * information. Sites are written as soon as they are found, they are not
+     * kept in memory.
+     *
+     * @param writer RestrictionSiteWriter object where results are written
+     * @param fragments Writer of the digest fragments in FASTA format, null if
+     * they are not written
+     * @param sequence DNASequence object to be analyzed
+     * @param finder RestrictionSiteFinder with the selected endonucleases
+     * @throws IOException if the results cannot be written
+     */
+    private void write(RestrictionSiteWriter writer, Writer fragments, DNASequence sequence, RestrictionSiteFinder finder) throws IOException {
+        String sequenceName = sequence.getInformation().split("\\s", 2)[0];
+        if (format.equals("txt")) {
+            writer.writeLine("Sequence: " + sequence.getInformation());
+        }
+        if (mode.equals("digest")) {
+            writeDigest(writer, fragments, sequenceName, sequence, finder);
+        } else if (mode.equals("matrix")) {
+            writeMatrix(writer, sequenceName, sequence, finder);
+        } else if (mode.equals("optimize")) {
+            writeOptimize(writer, sequenceName, sequence, finder);
+        } else if (!mode.equals("sites")) {
+            writeSummary(writer, sequenceName, sequence, finder);
+        } else {
+            writer.startSequence(finder.getEndonucleases(), format.equals("csv") ? sequenceName : null);
+            if (archive == null) {
+                finder.find(sequence, isCircular, writer, ScanMonitor.NONE);
+            } else {
+                RestrictionSiteStore sites = new RestrictionSiteStore(finder.getEndonucleases());
+                finder.find(sequence, isCircular, (index, position, antisense) -> {
+                    writer.cleavageFound(index, position, antisense);
+                    sites.add(index, position, antisense);
+                }, ScanMonitor.NONE);
+                RestrictionSiteArchive.write(new File(archive, sequenceName.replaceAll("[^\\w.-]", "_")
+                        + RestrictionSiteArchive.EXTENSION).getPath(), sequence, isCircular, sites);
+            }
+            writer.writeTotal();
+        }
+        writer.writeLine("");
+    }
+
+    /**
+     * Writes the sites of a binary results file, only the positions of the
+     * region if there is one.
+     *
+     * @param writer RestrictionSiteWriter object where results are written
+     * @throws IOException if the file cannot be read or the results cannot be
+     * written
+     * @throws IllegalArgumentException if the region is not valid
+     */
+    private void writeQuery(RestrictionSiteWriter writer) throws IOException {
+        try (RestrictionSiteArchive results = RestrictionSiteArchive.open(query)) {
+            RestrictionSiteStore sites;
+            if (region == null) {
+                sites = results.readAll();
+            } else {
+                String[] limits = region.substring(region.lastIndexOf(':') + 1).replace(",", "").split("-", -1);
+                try {
+                    sites = results.query(Integer.parseInt(limits[0]),
+                            limits.length > 1 && !limits[1].isEmpty() ? Integer.parseInt(limits[1]) : Integer.MAX_VALUE);
+                } catch (NumberFormatException ex) {
+                    throw new IllegalArgumentException("wrong region " + region);
+                }
+            }
+            if (format.equals("txt")) {
+                writer.writeLine("Sequence: " + results.getSequenceInformation());
+            }
+            writer.startSequence(sites.getEndonucleases(),
+                    format.equals("csv") ? results.getSequenceInformation().split("\\s", 2)[0] : null);
+            writer.write(sites);
+            writer.writeTotal();
+            writer.writeLine("");
+        }
+    }
+
+    /**
+     * Writes one line per endonuclease with its number of cleavage sites
+     * (count mode) or whether it cuts the sequence (cuts mode). No site is
+     * stored in these modes.
+     *
+     * @param writer RestrictionSiteWriter object where results are written
+     * @param sequenceName String with the sequence name for csv files
+     * @param sequence DNASequence object to be analyzed
+     * @param finder RestrictionSiteFinder with the selected endonucleases
+     * @throws IOException if the results cannot be written
+     */
+    private void writeSummary(RestrictionSiteWriter writer, String sequenceName, DNASequence sequence, RestrictionSiteFinder finder) throws IOException {
+        List<Endonuclease> endonucleases = finder.getEndonucleases();
+        int[] counts = mode.equals("count") ? finder.count(sequence, isCircular) : null;
+        boolean[] cuts = counts == null ? finder.cuts(sequence, isCircular) : null;
+        for (int i = 0; i < endonucleases.size(); i++) {
+            String result = counts != null ? String.valueOf(counts[i]) : String.valueOf(cuts[i]);
+            if (format.equals("csv")) {
+                writer.writeLine(sequenceName + "," + endonucleases.get(i).getEndonucleaseName() + "," + result);
+            } else if (counts != null) {
+                writer.writeLine(endonucleases.get(i).getEndonucleaseName() + ": " + result + " cleavage sites");
+            } else {
+                writer.writeLine(endonucleases.get(i).getEndonucleaseName() + (cuts[i] ? ": cuts" : ": does not cut"));
+            }
+        }
+    }
+
+    /**
+     * Writes the fragments of the digest with all the endonucleases, and in
+     * txt format the virtual gel bands with fragments. The fragment sequences
+     * are also written if there is a FASTA output.
+     *
+     * @param writer RestrictionSiteWriter object where results are written
+     * @param fragments Writer of the fragments in FASTA format, null if they
+     * are not written
+     * @param sequenceName String with the sequence name
+     * @param sequence DNASequence object to be digested
+     * @param finder RestrictionSiteFinder with the selected endonucleases
+     * @throws IOException if the results cannot be written
+     */
+    private void writeDigest(RestrictionSiteWriter writer, Writer fragments, String sequenceName, DNASequence sequence, RestrictionSiteFinder finder) throws IOException {
+        Digest digest = finder.digest(sequence, isCircular);
+        boolean isCSV = format.equals("csv");
+        for (int f = 0; f < digest.getFragmentCount(); f++) {
+            int start = digest.getStart(f), end = digest.getEnd(f);
+            if (isCSV) {
+                writer.writeLine(sequenceName + "," + (f + 1) + "," + start + "," + end + "," + (end - start));
+            } else {
+                writer.writeLine("Fragment " + (f + 1) + ": " + start + "-" + end + ", " + (end - start) + " bp");
+            }
+        }
+        if (!isCSV) {
+            writer.writeLine("Total Fragments: " + digest.getFragmentCount());
+            int[] limits = Digest.gelBands(GEL_BANDS, GEL_MIN_LENGTH, GEL_MAX_LENGTH);
+            int[] bands = digest.gel(limits);
+            // Largest fragments first, as in a gel
+            if (bands[bands.length - 1] > 0) {
+                writer.writeLine("Above the gel, " + limits[limits.length - 1] + " bp or more: " + bands[bands.length - 1] + " fragments");
+            }
+            for (int b = limits.length - 2; b >= 0; b--) {
+                if (bands[b + 1] > 0) {
+                    writer.writeLine("Gel band " + limits[b] + "-" + limits[b + 1] + " bp: " + bands[b + 1] + " fragments");
+                }
+            }
+            if (bands[0] > 0) {
+                writer.writeLine("Below the gel, less than " + limits[0] + " bp: " + bands[0] + " fragments");
+            }
+        }
+        if (fragments != null) {
+            digest.writeFASTA(sequence.getBases(), sequenceName, fragments);
+        }
+    }
+
+    /**
+     * Writes the double digest of every pair of endonucleases: number of
+     * fragments, largest and smallest fragment and if both cut only once.
+     *
+     * @param writer RestrictionSiteWriter object where results are written
+     * @param sequenceName String with the sequence name for csv files
+     * @param sequence DNASequence object to be digested
+     * @param finder RestrictionSiteFinder with the selected endonucleases
+     * @throws IOException if the results cannot be written
+     */
+    private void writeMatrix(RestrictionSiteWriter writer, String sequenceName, DNASequence sequence, RestrictionSiteFinder finder) throws IOException {
+        DigestMatrix matrix = DigestMatrix.of(finder, sequence, isCircular);
+        List<Endonuclease> endonucleases = matrix.getEndonucleases();
+        for (int i = 0; i < matrix.size(); i++) {
+            String first = endonucleases.get(i).getEndonucleaseName();
+            for (int j = i + 1; j < matrix.size(); j++) {
+                String second = endonucleases.get(j).getEndonucleaseName();
+                if (format.equals("csv")) {
+                    writer.writeLine(sequenceName + "," + first + "," + second + "," + matrix.getFragments(i, j) + ","
+                            + matrix.getLargest(i, j) + "," + matrix.getSmallest(i, j) + "," + matrix.getBothCutOnce(i, j));
+                } else {
+                    writer.writeLine(first + " + " + second + ": " + matrix.getFragments(i, j) + " fragments, largest "
+                            + matrix.getLargest(i, j) + " bp, smallest " + matrix.getSmallest(i, j) + " bp"
+                            + (matrix.getBothCutOnce(i, j) ? ", both cut once" : ""));
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the smallest sets of endonucleases whose fragments are all
+     * inside the window, ranked. Endonucleases with the same cleavage
+     * positions are written together, separated by slashes.
+     *
+     * @param writer RestrictionSiteWriter object where results are written
+     * @param sequenceName String with the sequence name for csv files
+     * @param sequence DNASequence object to be digested
+     * @param finder RestrictionSiteFinder with the selected endonucleases
+     * @throws IOException if the results cannot be written
+     */
+    private void writeOptimize(RestrictionSiteWriter writer, String sequenceName, DNASequence sequence, RestrictionSiteFinder finder) throws IOException {
+        DigestOptimizer optimizer = DigestOptimizer.of(finder, sequence, isCircular);
+        List<DigestOptimizer.Solution> solutions = optimizer.optimize(minFragment, maxFragment, setSize, top);
+        if (solutions.isEmpty() && format.equals("txt")) {
+            writer.writeLine("No set of up to " + setSize + " endonucleases gives fragments of " + minFragment + "-" + maxFragment + " bp");
+        }
+        for (int rank = 0; rank < solutions.size(); rank++) {
+            DigestOptimizer.Solution solution = solutions.get(rank);
+            StringBuilder set = new StringBuilder();
+            for (int index : solution.getIndexes()) {
+                StringBuilder equivalents = new StringBuilder();
+                for (Endonuclease endonuclease : optimizer.getEquivalents(index)) {
+                    equivalents.append(equivalents.length() == 0 ? "" : "/").append(endonuclease.getEndonucleaseName());
+                }
+                set.append(set.length() == 0 ? "" : format.equals("csv") ? ";" : " + ").append(equivalents);
+            }
+            if (format.equals("csv")) {
+                writer.writeLine(sequenceName + "," + (rank + 1) + "," + set + "," + solution.getFragments() + ","
+                        + solution.getLargest() + "," + solution.getSmallest());
+            } else {
+                writer.writeLine((rank + 1) + ". " + set + ": " + solution.getFragments() + " fragments, largest "
+                        + solution.getLargest() + " bp, smallest " + solution.getSmallest() + " bp");
+            }
+        }
+    }
+
+    /**
+     * Imports the enzymes of a REBASE file into the catalog.
+     *
+     * @throws IOException if the files cannot be read or written
+     */
+    private void importRebase() throws IOException {
+        RebaseImporter importer = new RebaseImporter(commercialOnly);
+        try (EndonucleaseCatalog endonucleases = EndonucleaseCatalog.open(catalog)) {
+            importer.importTo(endonucleases, rebase);
+        }
+        System.err.println(importer.getImported() + " endonucleases imported, " + importer.getDuplicated()
+                + " already in the catalog, " + importer.getSkipped() + " skipped");
+    }
+
+    /**
+     * Loads the endonucleases catalog and selects the requested ones. Only
+     * the names are read to select them, the rest of the catalog is not
+     * decoded.
+     *
+     * @return List of endonucleases
+     * @throws IOException if the catalog cannot be read
+     * @throws IllegalArgumentException if any name is not in the catalog
+     */
+    private List<Endonuclease> endonucleases() throws IOException {
+        EndonucleaseCatalog all = EndonucleaseCatalog.open(catalog);
+        if (all.isEmpty()) {
+            throw new IOException("no endonucleases found in " + catalog);
+        }
+        if (names == null) {
+            return all;
+        }
+        Map<String, Integer> byName = new LinkedHashMap<>();
+        for (int i = 0; i < all.size(); i++) {
+            byName.put(all.getName(i).toLowerCase(), i);
+        }
+        List<Endonuclease> selected = new ArrayList<>();
+        for (String name : names.split(",")) {
+            Integer index = byName.get(name.trim().toLowerCase());
+            if (index == null) {
+                throw new IllegalArgumentException("unknown endonuclease " + name.trim());
+            }
+            selected.add(all.get(index));
+        }
+        return selected;
+    }
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright (C) 2021 Luis Núñez Gómez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package genlogic;
+
+import genlogic.model.Endonuclease;
+import genlogic.model.RegexEndonuclease;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Importer for REBASE flat files, in withrefm (&lt;1&gt; name, &lt;3&gt; site,
+ * &lt;5&gt; organism, &lt;7&gt; suppliers) and bairoch (ID, OS, RS, CR lines)
+ * formats, both are detected line by line. The file is read once, line by
+ * line, and the targets are validated and complemented with lookup tables
+ * instead of regular expressions.
+ * <p>
+ * Enzymes without a known cleavage position, with cleavage only upstream of
+ * the target or with wrong targets are skipped. For enzymes that cut at both
+ * sides of the target only the downstream cleavage is kept.
+ *
+ * @author Luis Núñez Gómez
+ */
+public class RebaseImporter {
+
+    /**
+     * Complement of every valid IUPAC base (upper or lower case), 0 for
+     * invalid chars.
+     */
+    private static final char[] COMPLEMENT = new char[128];
+
+    static {
+        String bases = "ACGTNRYWSKMBDHV", complements = "TGCANYRWSMKVHDB";
+        for (int i = 0; i < bases.length(); i++) {
+            COMPLEMENT[bases.charAt(i)] = complements.charAt(i);
+            COMPLEMENT[Character.toLowerCase(bases.charAt(i))] = complements.charAt(i);
+        }
+    }
+
+    /**
+     * Origin used when the file has none.
+     */
+    private static final String NO_ORIGIN = "No origin info provided";
+
+    /**
+     * True to import only commercially available enzymes.
+     */
+    private final boolean commercialOnly;
+
+    /**
+     * Import counters.
+     */
+    private int imported, skipped, duplicated;
+
+    /**
+     * Fields of the record being read.
+     */
+    private String name, origin, site;
+
+    /**
+     * Cleavage positions of the record being read, from the first base of the
+     * target, -1 if unknown.
+     */
+    private int senseCut, antiSenseCut;
+
+    /**
+     * Number of bairoch RS entries of the record being read.
+     */
+    private int rsEntries;
+
+    /**
+     * True if the record being read is commercially available.
+     */
+    private boolean commercial;
+
+    /**
+     * True if the record being read has a wrong site.
+     */
+    private boolean invalid;
+
+    // Constructor
+    /**
+     * Creates an importer.
+     *
+     * @param commercialOnly true to import only commercially available enzymes
+     */
+    public RebaseImporter(boolean commercialOnly) {
+        this.commercialOnly = commercialOnly;
+    }
+
+    /**
+     * Imports a REBASE file into a catalog. Enzymes already in the catalog
+     * (by name, ignoring case) are not imported again, and all the new ones are added with a
+     * single catalog write.
+     *
+     * @param catalog EndonucleaseCatalog object
+     * @param path String with the REBASE file path, gzip compressed if it ends
+     * with .gz
+     * @return int number of imported enzymes
+     * @throws IOException if the file cannot be read or the catalog written
+     */
+    public int importTo(EndonucleaseCatalog catalog, String path) throws IOException {
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < catalog.size(); i++) {
+            names.add(catalog.getName(i).toLowerCase());
+        }
+        List<Endonuclease> endonucleases = read(path, names);
+        try {
+            catalog.addAll(endonucleases);
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        return endonucleases.size();
+    }
+
+    /**
+     * Reads the enzymes of a REBASE file. Counters are reset.
+     *
+     * @param path String with the REBASE file path, gzip compressed if it ends
+     * with .gz
+     * @param names Set with the lower case names already known, enzymes with
+     * those names are skipped and the new names are added
+     * @return List of endonucleases in the file order
+     * @throws IOException if the file cannot be read
+     */
+    public List<Endonuclease> read(String path, Set<String> names) throws IOException {
+        InputStream in = new FileInputStream(path);
+        if (path.endsWith(RestrictionSiteWriter.GZIP_EXTENSION)) {
+            in = new GZIPInputStream(in, 64 * 1024);
+        }
+        List<Endonuclease> endonucleases = new ArrayList<>();
+        imported = skipped = duplicated = 0;
+        reset();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.ISO_8859_1), 64 * 1024)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("<")) {
+                    withrefmLine(line, endonucleases, names);
+                } else if (line.startsWith("//")) {
+                    flush(endonucleases, names);
+                } else if (line.length() > 5 && line.startsWith("   ", 2)) {
+                    bairochLine(line, endonucleases, names);
+                }
+            }
+            flush(endonucleases, names);
+        }
+        return endonucleases;
+    }
+
+    /**
+     * Returns the number of enzymes imported by the last read.
+     *
+     * @return int imported enzymes
+     */
+    public int getImported() {
+        return imported;
+    }
+
+    /**
+     * Returns the number of enzymes skipped by the last read, because of their
+     * targets or because they are not commercially available.
+     *
+     * @return int skipped enzymes
+     */
+    public int getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Returns the number of enzymes skipped by the last read because their
+     * names were already known.
+     *
+     * @return int duplicated enzymes
+     */
+    public int getDuplicated() {
+        return duplicated;
+    }
+
+    /**
+     * Reads a withrefm line, a new record starts with the &lt;1&gt; tag.
+     *
+     * @param line line read
+     * @param endonucleases List where the previous record is added
+     * @param names Set with the names already known
+     */
+    private void withrefmLine(String line, List<Endonuclease> endonucleases, Set<String> names) {
+        int close = line.indexOf('>');
+        if (close < 2) {
+            return;
+        }
+        String value = line.substring(close + 1).trim();
+        switch (line.substring(1, close)) {
+            case "1":
+                flush(endonucleases, names);
+                name = value;
+                break;
+            case "3":
+                withrefmSite(value);
+                break;
+            case "5":
+                origin = value;
+                break;
+            case "7":
+                commercial = !value.isEmpty();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Reads a bairoch line, a new record starts with the ID tag.
+     *
+     * @param line line read
+     * @param endonucleases List where the previous record is added
+     * @param names Set with the names already known
+     */
+    private void bairochLine(String line, List<Endonuclease> endonucleases, Set<String> names) {
+        String value = line.substring(5).trim();
+        switch (line.substring(0, 2)) {
+            case "ID":
+                flush(endonucleases, names);
+                name = value;
+                break;
+            case "OS":
+                origin = value;
+                break;
+            case "RS":
+                // "site, cut;" entries, the second one is the other strand
+                for (String entry : value.split(";")) {
+                    int comma = entry.indexOf(',');
+                    if (comma < 0) {
+                        continue;
+                    }
+                    int cut = number(entry.substring(comma + 1).trim());
+                    if (rsEntries++ == 0) {
+                        site = entry.substring(0, comma).trim();
+                        senseCut = cut;
+                    } else if (site != null && cut != Integer.MIN_VALUE) {
+                        antiSenseCut = site.length() - cut;
+                    }
+                }
+                break;
+            case "CR":
+                commercial = value.length() > 0 && !value.equals(".");
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Reads a withrefm site: G^AATTC, GAAGAC(2/6) or (8/13)GACNNNNNNTGG(12/7).
+     *
+     * @param value site with the cleavage positions
+     */
+    private void withrefmSite(String value) {
+        int caret = value.indexOf('^');
+        int open = value.lastIndexOf('(');
+        if (open > 0 && value.endsWith(")")) {
+            int start = value.startsWith("(") ? value.indexOf(')') + 1 : 0;
+            site = value.substring(start, open);
+            int slash = value.indexOf('/', open);
+            int top = slash < 0 ? Integer.MIN_VALUE : number(value.substring(open + 1, slash));
+            int bottom = slash < 0 ? Integer.MIN_VALUE : number(value.substring(slash + 1, value.length() - 1));
+            if (top == Integer.MIN_VALUE || bottom == Integer.MIN_VALUE) {
+                invalid = true;
+            } else {
+                senseCut = site.length() + top;
+                antiSenseCut = site.length() + bottom;
+            }
+        } else if (caret >= 0) {
+            site = value.substring(0, caret) + value.substring(caret + 1);
+            senseCut = caret;
+            antiSenseCut = site.length() - caret;
+        } else {
+            // Unknown cleavage position
+            invalid = true;
+        }
+    }
+
+    /**
+     * Adds the record read (if it is right and new) and starts a new one.
+     *
+     * @param endonucleases List where the record is added
+     * @param names Set with the names already known
+     */
+    private void flush(List<Endonuclease> endonucleases, Set<String> names) {
+        if (name != null) {
+            Endonuclease e = invalid || (commercialOnly && !commercial) ? null : endonuclease();
+            if (e == null) {
+                skipped++;
+            } else if (!names.add(name.toLowerCase())) {
+                duplicated++;
+            } else {
+                endonucleases.add(e);
+                imported++;
+            }
+        }
+        reset();
+    }
+
+    /**
+     * Starts a new record.
+     */
+    private void reset() {
+        name = origin = site = null;
+        senseCut = antiSenseCut = -1;
+        rsEntries = 0;
+        commercial = invalid = false;
+    }
+
+    /**
+     * Builds the endonuclease of the record read, the same way the add
+     * endonuclease window does.
+     *
+     * @return Endonuclease object, null if the site is wrong
+     */
+    private Endonuclease endonuclease() {
+        int length = site == null ? 0 : site.length();
+        if (rsEntries == 1) {
+            // Only one strand, the cleavage is symmetric
+            antiSenseCut = length - senseCut;
+        }
+        if (length == 0 || name.isEmpty() || senseCut < 0 || antiSenseCut < 0) {
+            return null;
+        }
+        char[] target = new char[length], antiTarget = new char[length];
+        boolean isRegex = false;
+        for (int i = 0; i < length; i++) {
+            char c = site.charAt(i);
+            char complement = c < 128 ? COMPLEMENT[c] : 0;
+            if (complement == 0) {
+                return null;
+            }
+            target[i] = COMPLEMENT[complement];
+            antiTarget[i] = complement;
+            isRegex |= complement != 'A' && complement != 'C' && complement != 'G' && complement != 'T';
+        }
+        boolean isPalindromic = true;
+        for (int i = 0; i < length && isPalindromic; i++) {
+            isPalindromic = target[i] == antiTarget[length - 1 - i];
+        }
+        String simpleTarget = new String(target);
+        String senseSequence = cleavage(target, senseCut);
+        String antiSenseSequence = cleavage(antiTarget, antiSenseCut);
+        // Targets shorter than the cleavage position are filled with N
+        isRegex |= senseCut > length;
+        if (origin == null || origin.isEmpty()) {
+            origin = NO_ORIGIN;
+        }
+        return isRegex
+                ? new RegexEndonuclease(name, origin, simpleTarget, senseSequence, antiSenseSequence, isPalindromic, true)
+                : new Endonuclease(name, origin, simpleTarget, senseSequence, antiSenseSequence, isPalindromic, false);
+    }
+
+    /**
+     * Writes a target with its cleavage position (^), filled with N up to it.
+     *
+     * @param target target bases
+     * @param cut cleavage position from the first base
+     * @return String with the target and the cleavage position
+     */
+    private static String cleavage(char[] target, int cut) {
+        StringBuilder sequence = new StringBuilder(Math.max(target.length, cut) + 1);
+        sequence.append(target);
+        while (sequence.length() < cut) {
+            sequence.append('N');
+        }
+        return sequence.insert(cut, '^').toString();
+    }
+
+    /**
+     * Parses a cleavage position.
+     *
+     * @param text String with the number
+     * @return int number, Integer.MIN_VALUE if it is unknown (?) or wrong
+     */
+    private static int number(String text) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException ex) {
+            return Integer.MIN_VALUE;
+        }
+    }
+}
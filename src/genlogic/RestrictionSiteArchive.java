@@ -0,0 +1,478 @@
+/*
+ * Copyright (C) 2021 Luis Núñez Gómez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package genlogic;
+
+import genlogic.model.DNASequence;
+import genlogic.model.Endonuclease;
+import genlogic.model.RegexEndonuclease;
+import genlogic.model.RestrictionSiteStore;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binary results file, an archive of the analysis of a sequence that can be
+ * reloaded and queried without scanning the sequence again. The file has:
+ * <ul>
+ * <li>a header with the sequence information, length and topology</li>
+ * <li>the endonucleases dictionary, sites refer to it by index</li>
+ * <li>the sites sorted by cleavage position in blocks of BLOCK_SIZE sites,
+ * every position is stored as a varint delta from the previous one, followed
+ * by the endonuclease index and the strand in another varint</li>
+ * <li>the block index, with the first and last position of every block, so a
+ * region query only reads the blocks that overlap it</li>
+ * <li>a fixed size footer with the block index offset</li>
+ * </ul>
+ * All the numbers are big endian.
+ *
+ * @author Luis Núñez Gómez
+ */
+public class RestrictionSiteArchive implements Closeable {
+
+    /**
+     * Archive file extension.
+     */
+    public static final String EXTENSION = ".glr";
+
+    /**
+     * Magic number at the beginning and the end of the file ("GLRS").
+     */
+    private static final int MAGIC = 0x474C5253;
+
+    /**
+     * Format version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Maximum number of sites per block.
+     */
+    private static final int BLOCK_SIZE = 4096;
+
+    /**
+     * Footer size: index offset, number of blocks and magic number.
+     */
+    private static final int FOOTER_SIZE = 8 + 4 + 4;
+
+    /**
+     * Block index entry size: first and last position, number of sites,
+     * offset and size in bytes.
+     */
+    private static final int INDEX_ENTRY_SIZE = 4 + 4 + 4 + 8 + 4;
+
+    /**
+     * Open archive file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Information of the analyzed sequence.
+     */
+    private final String sequenceInformation;
+
+    /**
+     * Length of the analyzed sequence.
+     */
+    private final int sequenceLength;
+
+    /**
+     * True if the sequence was analyzed as circular.
+     */
+    private final boolean isCircular;
+
+    /**
+     * Total number of sites.
+     */
+    private final int size;
+
+    /**
+     * Endonucleases dictionary.
+     */
+    private final List<Endonuclease> endonucleases;
+
+    /**
+     * Block index columns.
+     */
+    private final int[] firstPositions, lastPositions, blockSizes, blockLengths;
+
+    /**
+     * Offset of every block.
+     */
+    private final long[] blockOffsets;
+
+    // Constructor
+    /**
+     * Reads the header, the dictionary and the block index of an archive.
+     *
+     * @param channel open archive file
+     * @throws IOException if the file is not a valid archive
+     */
+    private RestrictionSiteArchive(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long fileSize = channel.size();
+        if (fileSize < 8 + FOOTER_SIZE) {
+            throw new IOException("Not a results archive");
+        }
+        ByteBuffer footer = read(fileSize - FOOTER_SIZE, FOOTER_SIZE);
+        long indexOffset = footer.getLong();
+        int blocks = footer.getInt();
+        if (footer.getInt() != MAGIC || indexOffset < 0 || blocks < 0
+                || indexOffset + (long) blocks * INDEX_ENTRY_SIZE != fileSize - FOOTER_SIZE) {
+            throw new IOException("Wrong results archive footer");
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0))));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a results archive");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported results archive version: " + version);
+        }
+        sequenceInformation = readString(in);
+        sequenceLength = in.readInt();
+        isCircular = in.readBoolean();
+        size = in.readInt();
+        int endonucleasesCount = in.readInt();
+        endonucleases = new ArrayList<>(endonucleasesCount);
+        for (int i = 0; i < endonucleasesCount; i++) {
+            endonucleases.add(readEndonuclease(in));
+        }
+        ByteBuffer index = read(indexOffset, blocks * INDEX_ENTRY_SIZE);
+        firstPositions = new int[blocks];
+        lastPositions = new int[blocks];
+        blockSizes = new int[blocks];
+        blockOffsets = new long[blocks];
+        blockLengths = new int[blocks];
+        for (int b = 0; b < blocks; b++) {
+            firstPositions[b] = index.getInt();
+            lastPositions[b] = index.getInt();
+            blockSizes[b] = index.getInt();
+            blockOffsets[b] = index.getLong();
+            blockLengths[b] = index.getInt();
+        }
+    }
+
+    /**
+     * Opens an archive, only its header, dictionary and block index are read.
+     *
+     * @param path String with the archive file path
+     * @return RestrictionSiteArchive object, it must be closed
+     * @throws IOException if the file cannot be read or it is not a valid
+     * archive
+     */
+    public static RestrictionSiteArchive open(String path) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        try {
+            return new RestrictionSiteArchive(channel);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Saves the results of an analysis.
+     *
+     * @param path String that contains the file destination
+     * @param sequence analyzed DNASequence object
+     * @param isCircular true if the sequence was analyzed as circular
+     * @param sites RestrictionSiteStore with the analysis results
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(String path, DNASequence sequence, boolean isCircular, RestrictionSiteStore sites) throws IOException {
+        // Sorts the sites by position, then by endonuclease and strand
+        long[] sorted = new long[sites.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = ((long) sites.getPosition(i) << 32)
+                    | (((long) sites.getEndonucleaseIndex(i) << 1) | (sites.isAntisense(i) ? 1 : 0));
+        }
+        Arrays.sort(sorted);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 64 * 1024))) {
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream headerOut = new DataOutputStream(header);
+            headerOut.writeInt(MAGIC);
+            headerOut.writeInt(VERSION);
+            writeString(headerOut, sequence.getInformation() == null ? "" : sequence.getInformation());
+            headerOut.writeInt(sequence.getIntLength());
+            headerOut.writeBoolean(isCircular);
+            headerOut.writeInt(sorted.length);
+            headerOut.writeInt(sites.getEndonucleases().size());
+            for (Endonuclease e : sites.getEndonucleases()) {
+                writeEndonuclease(headerOut, e);
+            }
+            header.writeTo(out);
+            long offset = header.size();
+
+            int blocks = (sorted.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            ByteArrayOutputStream index = new ByteArrayOutputStream(blocks * INDEX_ENTRY_SIZE);
+            DataOutputStream indexOut = new DataOutputStream(index);
+            ByteArrayOutputStream block = new ByteArrayOutputStream();
+            for (int start = 0; start < sorted.length; start += BLOCK_SIZE) {
+                int end = Math.min(sorted.length, start + BLOCK_SIZE);
+                block.reset();
+                int previous = (int) (sorted[start] >> 32);
+                for (int i = start; i < end; i++) {
+                    int position = (int) (sorted[i] >> 32);
+                    writeVarInt(block, position - previous);
+                    writeVarInt(block, (int) sorted[i]);
+                    previous = position;
+                }
+                block.writeTo(out);
+                indexOut.writeInt((int) (sorted[start] >> 32));
+                indexOut.writeInt(previous);
+                indexOut.writeInt(end - start);
+                indexOut.writeLong(offset);
+                indexOut.writeInt(block.size());
+                offset += block.size();
+            }
+            index.writeTo(out);
+            out.writeLong(offset);
+            out.writeInt(blocks);
+            out.writeInt(MAGIC);
+        }
+    }
+
+    /**
+     * Returns the sites whose cleavage position is inside a region. Only the
+     * blocks that overlap the region are read.
+     *
+     * @param from first position (included)
+     * @param to last position (included)
+     * @return RestrictionSiteStore with the sites sorted by position
+     * @throws IOException if the blocks cannot be read
+     */
+    public RestrictionSiteStore query(int from, int to) throws IOException {
+        RestrictionSiteStore sites = new RestrictionSiteStore(endonucleases);
+        // First block whose last position reaches the region
+        int low = 0, high = lastPositions.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (lastPositions[middle] < from) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int b = low; b < firstPositions.length && firstPositions[b] <= to; b++) {
+            ByteBuffer block = read(blockOffsets[b], blockLengths[b]);
+            int position = firstPositions[b];
+            for (int i = 0; i < blockSizes[b]; i++) {
+                position += readVarInt(block);
+                int site = readVarInt(block);
+                if (position >= from && position <= to) {
+                    sites.add(site >>> 1, position, (site & 1) != 0);
+                }
+            }
+        }
+        sites.trimToSize();
+        return sites;
+    }
+
+    /**
+     * Returns all the sites.
+     *
+     * @return RestrictionSiteStore with the sites sorted by position
+     * @throws IOException if the blocks cannot be read
+     */
+    public RestrictionSiteStore readAll() throws IOException {
+        return query(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the information of the analyzed sequence.
+     *
+     * @return String sequence information
+     */
+    public String getSequenceInformation() {
+        return sequenceInformation;
+    }
+
+    /**
+     * Returns the length of the analyzed sequence.
+     *
+     * @return int sequence length
+     */
+    public int getSequenceLength() {
+        return sequenceLength;
+    }
+
+    /**
+     * Returns if the sequence was analyzed as circular.
+     *
+     * @return boolean true for circular sequences
+     */
+    public boolean isCircular() {
+        return isCircular;
+    }
+
+    /**
+     * Returns the endonucleases dictionary.
+     *
+     * @return List of endonucleases
+     */
+    public List<Endonuclease> getEndonucleases() {
+        return endonucleases;
+    }
+
+    /**
+     * Returns the total number of sites.
+     *
+     * @return int number of sites
+     */
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads a region of the file.
+     *
+     * @param offset first byte
+     * @param length number of bytes
+     * @return ByteBuffer ready to be read
+     * @throws IOException if the region cannot be read
+     */
+    private ByteBuffer read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Truncated results archive");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Writes an endonuclease of the dictionary.
+     *
+     * @param out DataOutputStream object
+     * @param e Endonuclease object
+     * @throws IOException if it cannot be written
+     */
+    private static void writeEndonuclease(DataOutputStream out, Endonuclease e) throws IOException {
+        boolean isRegexEndonuclease = e instanceof RegexEndonuclease;
+        out.writeBoolean(isRegexEndonuclease);
+        writeString(out, e.getEndonucleaseName());
+        writeString(out, e.getEndonucleaseOrigin());
+        writeString(out, isRegexEndonuclease ? ((RegexEndonuclease) e).getDegeneratedTarget() : e.getEndonucleaseSimpleSenseTarget());
+        writeString(out, e.getSenseStrandStringTarget());
+        writeString(out, e.getAntiSenseStrandStringTarget());
+        out.writeBoolean(e.getIsPalindromic());
+        out.writeBoolean(e.getIsRegex());
+    }
+
+    /**
+     * Reads an endonuclease of the dictionary.
+     *
+     * @param in DataInputStream object
+     * @return Endonuclease object
+     * @throws IOException if it cannot be read
+     */
+    private static Endonuclease readEndonuclease(DataInputStream in) throws IOException {
+        boolean isRegexEndonuclease = in.readBoolean();
+        String name = readString(in), origin = readString(in), target = readString(in),
+                senseTarget = readString(in), antiSenseTarget = readString(in);
+        boolean palindromic = in.readBoolean(), regex = in.readBoolean();
+        return isRegexEndonuclease
+                ? new RegexEndonuclease(name, origin, target, senseTarget, antiSenseTarget, palindromic, regex)
+                : new Endonuclease(name, origin, target, senseTarget, antiSenseTarget, palindromic, regex);
+    }
+
+    /**
+     * Writes a UTF-8 String preceded by its length in bytes.
+     *
+     * @param out DataOutputStream object
+     * @param text String to be written
+     * @throws IOException if it cannot be written
+     */
+    private static void writeString(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a String written by writeString.
+     *
+     * @param in DataInputStream object
+     * @return String read
+     * @throws IOException if it cannot be read
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Wrong string length in results archive");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes an unsigned varint, 7 bits per byte with the highest bit set in
+     * every byte but the last one.
+     *
+     * @param out ByteArrayOutputStream object
+     * @param value int value, read as unsigned
+     */
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Reads an unsigned varint.
+     *
+     * @param in ByteBuffer object
+     * @return int value
+     * @throws IOException if the varint is longer than 5 bytes
+     */
+    private static int readVarInt(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Wrong varint in results archive");
+    }
+}
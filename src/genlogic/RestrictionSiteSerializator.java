@@ -18,19 +18,14 @@
 package genlogic;
 
 import genlogic.model.RestrictionSite;
-import java.io.BufferedWriter;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.util.List;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 /**
- * This class contains all the logic necessary to save results in txt and csv files.
+ * This class contains all the logic necessary to save results in txt and csv
+ * files. Files are written through a RestrictionSiteWriter, buffered and gzip
+ * compressed if their name ends with .gz.
  *
  * @author Luis Núñez Gómez
  */
@@ -42,27 +37,24 @@ public class RestrictionSiteSerializator {
      * 
      * @param path String that contains the file destination
      * @param matchingRestrictionSites Observable list that contains results
+     * @throws IOException if the file cannot be written
      */
-    public static void saveFile(String path, List<RestrictionSite> matchingRestrictionSites) {
-        try {
-            // Creates the file
-            FileWriter fileWriter = new FileWriter(path);
-            // Populate the file with RestrictionSite result objects
-            for (RestrictionSite site : matchingRestrictionSites){
-            fileWriter.write(site.toString());
-            fileWriter.write(System.getProperty("line.separator")); // new line
-        }
-            fileWriter.write("Total Cleavage Sites: "+matchingRestrictionSites.size());
-            fileWriter.close();
-        } catch (IOException ex) {
-            Logger.getLogger(RestrictionSiteSerializator.class.getName()).log(Level.SEVERE, null, ex);
+    public static void saveFile(String path, List<RestrictionSite> matchingRestrictionSites) throws IOException {
+        try (RestrictionSiteWriter writer = RestrictionSiteWriter.open(path, RestrictionSiteWriter.TXT)) {
+            write(writer, null, matchingRestrictionSites);
         }
     }
-    
+
     /**
-     * Comma symbol used as separator.
+     * Writes the results in txt format, the same used by saveFile.
+     * 
+     * @param writer Writer object where results are written
+     * @param matchingRestrictionSites List that contains results
+     * @throws IOException if the results cannot be written
      */
-    private static final String CSV_SEPARATOR = ",";
+    public static void writeTXT(Writer writer, List<RestrictionSite> matchingRestrictionSites) throws IOException {
+        write(new RestrictionSiteWriter(writer, RestrictionSiteWriter.TXT), null, matchingRestrictionSites);
+    }
     
     /**
      * Creates a csv file in the specified path and populates it using the provided
@@ -70,28 +62,40 @@ public class RestrictionSiteSerializator {
      * 
      * @param path String that contains the file destination
      * @param matchingRestrictionSites Observable list that contains results
+     * @throws IOException if the file cannot be written
      */
-    public static void writeToCSV (String path, List<RestrictionSite> matchingRestrictionSites)
-    {
-        try {
-            BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path), "UTF-8"));
-            for (RestrictionSite site : matchingRestrictionSites){
-                // Populate the file with RestrictionSite result objects
-                StringBuffer oneLine = new StringBuffer();
-                oneLine.append(site.getEndonucleaseName());
-                oneLine.append(CSV_SEPARATOR);
-                oneLine.append(site.getRestrictionSitePosition());
-                oneLine.append(CSV_SEPARATOR);
-                oneLine.append(site.getStrand());
-                bw.write(oneLine.toString());
-                bw.newLine();
-            }
-            bw.write("Total Cleavage Sites: "+matchingRestrictionSites.size());
-            bw.flush();
-            bw.close();
+    public static void writeToCSV(String path, List<RestrictionSite> matchingRestrictionSites) throws IOException {
+        try (RestrictionSiteWriter writer = RestrictionSiteWriter.open(path, RestrictionSiteWriter.CSV)) {
+            write(writer, null, matchingRestrictionSites);
         }
-        catch (UnsupportedEncodingException e) {}
-        catch (FileNotFoundException e){}
-        catch (IOException e){}
+    }
+
+    /**
+     * Writes the results in csv format, the same used by writeToCSV. If a
+     * sequence name is provided it is added as first column, so results of
+     * several sequences can be written in the same file.
+     * 
+     * @param writer Writer object where results are written
+     * @param sequenceName String with the sequence name, null to skip the column
+     * @param matchingRestrictionSites List that contains results
+     * @throws IOException if the results cannot be written
+     */
+    public static void writeCSV(Writer writer, String sequenceName, List<RestrictionSite> matchingRestrictionSites) throws IOException {
+        write(new RestrictionSiteWriter(writer, RestrictionSiteWriter.CSV), sequenceName, matchingRestrictionSites);
+    }
+
+    /**
+     * Writes the results followed by the "Total Cleavage Sites" line.
+     * 
+     * @param writer RestrictionSiteWriter object
+     * @param sequenceName String with the sequence name, null to skip the column
+     * @param matchingRestrictionSites List that contains results
+     * @throws IOException if the results cannot be written
+     */
+    private static void write(RestrictionSiteWriter writer, String sequenceName, List<RestrictionSite> matchingRestrictionSites) throws IOException {
+        writer.startSequence(null, sequenceName);
+        writer.write(matchingRestrictionSites);
+        writer.writeTotal();
+        writer.flush();
     }
 }
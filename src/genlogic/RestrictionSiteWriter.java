@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2021 Luis Núñez Gómez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package genlogic;
+
+import genlogic.engine.CleavageListener;
+import genlogic.model.Endonuclease;
+import genlogic.model.RestrictionSite;
+import genlogic.model.RestrictionSiteStore;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streaming writer for the results in txt and csv formats. Sites can be
+ * written straight from the analysis (it is a CleavageListener), so the
+ * results don't need to be in memory. Every line is built in a reusable char
+ * buffer, numbers included, and written to a buffered (optionally gzip
+ * compressed) output.
+ *
+ * @author Luis Núñez Gómez
+ */
+public class RestrictionSiteWriter implements CleavageListener, Closeable {
+
+    /**
+     * Output formats.
+     */
+    public static final String TXT = "txt", CSV = "csv";
+
+    /**
+     * Gzip files extension.
+     */
+    public static final String GZIP_EXTENSION = ".gz";
+
+    /**
+     * Output buffers size.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Output where the lines are written.
+     */
+    private final Writer writer;
+
+    /**
+     * True for csv format.
+     */
+    private final boolean isCSV;
+
+    /**
+     * Line separator.
+     */
+    private final String lineSeparator = System.getProperty("line.separator");
+
+    /**
+     * Buffer where the current line is built.
+     */
+    private char[] line = new char[128];
+
+    /**
+     * Length of the current line.
+     */
+    private int lineLength;
+
+    /**
+     * Endonucleases of the current sequence results.
+     */
+    private List<Endonuclease> endonucleases;
+
+    /**
+     * Sequence name for the first csv column, null to skip it.
+     */
+    private String sequenceName;
+
+    /**
+     * Sites written since the last total.
+     */
+    private long total;
+
+    // Constructor
+    /**
+     * Creates a writer over any output, it is not buffered here.
+     *
+     * @param writer Writer object where results are written
+     * @param format txt or csv
+     * @throws IllegalArgumentException if the format is unknown
+     */
+    public RestrictionSiteWriter(Writer writer, String format) {
+        if (!TXT.equals(format) && !CSV.equals(format)) {
+            throw new IllegalArgumentException("Unknown format: " + format);
+        }
+        this.writer = writer;
+        this.isCSV = CSV.equals(format);
+    }
+
+    /**
+     * Creates a writer for a file, the file is gzip compressed if its name
+     * ends with .gz.
+     *
+     * @param path String that contains the file destination
+     * @param format txt or csv
+     * @return RestrictionSiteWriter object
+     * @throws IOException if the file cannot be created
+     */
+    public static RestrictionSiteWriter open(String path, String format) throws IOException {
+        return new RestrictionSiteWriter(bufferedWriter(new FileOutputStream(path), path.endsWith(GZIP_EXTENSION)), format);
+    }
+
+    /**
+     * Creates a buffered UTF-8 writer over a stream.
+     *
+     * @param out OutputStream object
+     * @param gzip true to compress the output
+     * @return Writer object
+     * @throws IOException if the gzip header cannot be written
+     */
+    public static Writer bufferedWriter(OutputStream out, boolean gzip) throws IOException {
+        if (gzip) {
+            out = new GZIPOutputStream(out, BUFFER_SIZE);
+        }
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * Starts the results of a sequence. The total counter is reset.
+     *
+     * @param endonucleases List of endonucleases, site indexes refer to it
+     * @param sequenceName String with the sequence name for the first csv
+     * column, null to skip the column
+     */
+    public void startSequence(List<Endonuclease> endonucleases, String sequenceName) {
+        this.endonucleases = endonucleases;
+        this.sequenceName = sequenceName;
+        this.total = 0;
+    }
+
+    /**
+     * Writes a site.
+     *
+     * @param endonucleaseIndex index in the endonucleases list
+     * @param position numeric position of the cleavage bp
+     * @param antisense true if the target is in the antisense strand
+     * @throws IOException if the site cannot be written
+     */
+    public void write(int endonucleaseIndex, int position, boolean antisense) throws IOException {
+        write(endonucleases.get(endonucleaseIndex).getEndonucleaseName(), position,
+                antisense ? RestrictionSite.ANTISENSE : RestrictionSite.SENSE);
+    }
+
+    /**
+     * Writes a site found by the analysis. I/O errors are thrown as
+     * UncheckedIOException, so they stop the analysis.
+     *
+     * @param endonucleaseIndex index in the endonucleases list
+     * @param position numeric position of the cleavage bp
+     * @param antisense true if the target is in the antisense strand
+     */
+    @Override
+    public void cleavageFound(int endonucleaseIndex, int position, boolean antisense) {
+        try {
+            write(endonucleaseIndex, position, antisense);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Writes all the sites of a store, without creating RestrictionSite
+     * views.
+     *
+     * @param sites RestrictionSiteStore object
+     * @throws IOException if the sites cannot be written
+     */
+    public void write(RestrictionSiteStore sites) throws IOException {
+        List<Endonuclease> storeEndonucleases = sites.getEndonucleases();
+        for (int i = 0; i < sites.size(); i++) {
+            write(storeEndonucleases.get(sites.getEndonucleaseIndex(i)).getEndonucleaseName(),
+                    sites.getPosition(i), sites.getStrand(i));
+        }
+    }
+
+    /**
+     * Writes a list of sites.
+     *
+     * @param sites List of RestrictionSite objects
+     * @throws IOException if the sites cannot be written
+     */
+    public void write(List<RestrictionSite> sites) throws IOException {
+        if (sites instanceof RestrictionSiteStore) {
+            write((RestrictionSiteStore) sites);
+            return;
+        }
+        for (RestrictionSite site : sites) {
+            write(site.getEndonucleaseName(), site.getRestrictionSitePosition(), site.getStrand());
+        }
+    }
+
+    /**
+     * Writes the "Total Cleavage Sites" line with the sites written since the
+     * sequence was started, without line separator.
+     *
+     * @throws IOException if the line cannot be written
+     */
+    public void writeTotal() throws IOException {
+        lineLength = 0;
+        append("Total Cleavage Sites: ");
+        append(total);
+        writer.write(line, 0, lineLength);
+    }
+
+    /**
+     * Writes a text line.
+     *
+     * @param text String to be written, the line separator is added
+     * @throws IOException if the line cannot be written
+     */
+    public void writeLine(String text) throws IOException {
+        writer.write(text);
+        writer.write(lineSeparator);
+    }
+
+    /**
+     * Returns the number of sites written since the sequence was started.
+     *
+     * @return long number of sites
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Writes the buffered output.
+     *
+     * @throws IOException if the output cannot be written
+     */
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     * Builds and writes a site line, the same text used by
+     * RestrictionSite.toString() for txt files.
+     *
+     * @param name endonuclease name
+     * @param position numeric position of the cleavage bp
+     * @param strand sense or antisense
+     * @throws IOException if the line cannot be written
+     */
+    private void write(String name, int position, String strand) throws IOException {
+        lineLength = 0;
+        if (isCSV) {
+            if (sequenceName != null) {
+                append(sequenceName);
+                append(',');
+            }
+            append(name);
+            append(',');
+            append(position);
+            append(',');
+            append(strand);
+        } else {
+            append("Restriction enzyme: ");
+            append(name);
+            append("; \nExact cleavage position in the sequence 5'->3': ");
+            append(position);
+            append("; \nSense or antisense strand: ");
+            append(strand);
+        }
+        append(lineSeparator);
+        writer.write(line, 0, lineLength);
+        total++;
+    }
+
+    /**
+     * Appends a String to the line.
+     *
+     * @param text String to be appended
+     */
+    private void append(String text) {
+        ensureCapacity(text.length());
+        text.getChars(0, text.length(), line, lineLength);
+        lineLength += text.length();
+    }
+
+    /**
+     * Appends a char to the line.
+     *
+     * @param c char to be appended
+     */
+    private void append(char c) {
+        ensureCapacity(1);
+        line[lineLength++] = c;
+    }
+
+    /**
+     * Appends the decimal representation of a number to the line, digits are
+     * written backwards in place.
+     *
+     * @param number number to be appended
+     */
+    private void append(long number) {
+        ensureCapacity(20);
+        if (number < 0) {
+            line[lineLength++] = '-';
+        } else {
+            number = -number; // Negative values reach Long.MIN_VALUE
+        }
+        int start = lineLength;
+        do {
+            line[lineLength++] = (char) ('0' - (number % 10));
+            number /= 10;
+        } while (number != 0);
+        for (int i = start, j = lineLength - 1; i < j; i++, j--) {
+            char digit = line[i];
+            line[i] = line[j];
+            line[j] = digit;
+        }
+    }
+
+    /**
+     * Grows the line buffer if needed.
+     *
+     * @param extra number of chars to be appended
+     */
+    private void ensureCapacity(int extra) {
+        if (lineLength + extra > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + extra));
+        }
+    }
+}
@@ -0,0 +1,645 @@
+/*
+ * Copyright (C) 2021 Luis Núñez Gómez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package genlogic.engine;
+
+import genlogic.model.Endonuclease;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache of the targets found for every endonuclease, shared by the finders
+ * that use it. Entries are keyed by the content hash of the sequence, its
+ * topology and everything the targets of the endonuclease depend on (target,
+ * cleavage positions and flags), so isoschizomers share their entries and
+ * edited sequences never read stale results. Every entry holds the sorted
+ * positions and strands of the targets, encoded in longs.
+ * <p>
+ * The cache is bounded by the memory taken by its entries, the least
+ * recently used ones are evicted first. It can be used by several analyses
+ * at the same time.
+ * <p>
+ * The cache can also keep its entries in a directory, so they are shared by
+ * every session and command line run that uses it: entries missing in memory
+ * are read from it and new entries are written to it. Every endonuclease has
+ * its own subdirectory, with a file per sequence and topology that holds the
+ * number of targets and, for every target, the varint delta from the
+ * previous position shifted left once and ORed with the strand. Files are
+ * written to a temporary file and renamed, so concurrent runs never read a
+ * partial entry. The directory is bounded by the size of its files, the
+ * least recently used ones (reading a file touches it) are deleted first.
+ *
+ * @author Luis Núñez Gómez
+ */
+public class AnalysisCache {
+
+    /**
+     * Default memory limit, in bytes.
+     */
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * Default size limit of the cache directory, in bytes.
+     */
+    public static final long DEFAULT_MAX_DISK_BYTES = 1024L * 1024 * 1024;
+
+    /**
+     * Extension of the entry files of the cache directory.
+     */
+    public static final String EXTENSION = ".glt";
+
+    /**
+     * Approximate memory taken by an entry besides its targets and key.
+     */
+    private static final int ENTRY_BYTES = 96;
+
+    /**
+     * Magic number at the beginning of the entry files ("GLTC").
+     */
+    private static final int MAGIC = 0x474C5443;
+
+    /**
+     * Entry files format version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Entries in access order, the least recently used first.
+     */
+    private final LinkedHashMap<String, long[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Memory limit, in bytes.
+     */
+    private final long maxBytes;
+
+    /**
+     * Cache directory, null if the entries are only kept in memory.
+     */
+    private final File directory;
+
+    /**
+     * Size limit of the cache directory, in bytes.
+     */
+    private final long maxDiskBytes;
+
+    /**
+     * Memory taken by the entries, in bytes.
+     */
+    private long bytes;
+
+    /**
+     * Size of the entry files, -1 until it is measured. Other runs can write
+     * to the same directory, so it is measured again before deleting files.
+     */
+    private long diskBytes = -1;
+
+    /**
+     * Lookups that found their entry, lookups that found it in the cache
+     * directory, lookups that didn't find it and evicted entries (and files).
+     */
+    private long hits, diskHits, misses, evictions;
+
+    // Constructors
+    /**
+     * Creates a cache in memory with the default memory limit.
+     */
+    public AnalysisCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Creates a cache in memory with a memory limit.
+     *
+     * @param maxBytes memory limit, in bytes
+     * @throws IllegalArgumentException if the limit is not positive
+     */
+    public AnalysisCache(long maxBytes) {
+        this(maxBytes, null, 0);
+    }
+
+    /**
+     * Creates a cache with the default limits that also keeps its entries in
+     * a directory.
+     *
+     * @param directory cache directory, created with the first entry if it
+     * doesn't exist
+     */
+    public AnalysisCache(File directory) {
+        this(DEFAULT_MAX_BYTES, directory, DEFAULT_MAX_DISK_BYTES);
+    }
+
+    /**
+     * Creates a cache with a memory limit that also keeps its entries in a
+     * directory with a size limit.
+     *
+     * @param maxBytes memory limit, in bytes
+     * @param directory cache directory, created with the first entry if it
+     * doesn't exist, null to keep the entries only in memory
+     * @param maxDiskBytes size limit of the directory, in bytes
+     * @throws IllegalArgumentException if a limit is not positive
+     */
+    public AnalysisCache(long maxBytes, File directory, long maxDiskBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Wrong cache size: " + maxBytes);
+        }
+        if (directory != null && maxDiskBytes <= 0) {
+            throw new IllegalArgumentException("Wrong cache folder size: " + maxDiskBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.directory = directory;
+        this.maxDiskBytes = maxDiskBytes;
+    }
+
+    /**
+     * Returns the cached targets of an endonuclease in a sequence, and counts
+     * the hit or the miss. Entries missing in memory are read from the cache
+     * directory.
+     *
+     * @param contentHash content hash of the sequence
+     * @param isCircular true if the sequence is circular
+     * @param endonucleaseKey key with everything the targets depend on
+     * @return long[] encoded targets sorted by position, null if they are not
+     * cached
+     */
+    synchronized long[] get(String contentHash, boolean isCircular, String endonucleaseKey) {
+        String key = key(contentHash, isCircular, endonucleaseKey);
+        long[] targets = entries.get(key);
+        if (targets == null && directory != null) {
+            targets = read(file(contentHash, isCircular, endonucleaseKey), endonucleaseKey);
+            if (targets != null) {
+                diskHits++;
+                store(key, targets);
+            }
+        }
+        if (targets != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return targets;
+    }
+
+    /**
+     * Stores the targets of an endonuclease in a sequence, in memory and in
+     * the cache directory.
+     *
+     * @param contentHash content hash of the sequence
+     * @param isCircular true if the sequence is circular
+     * @param endonucleaseKey key with everything the targets depend on
+     * @param targets encoded targets sorted by position, they must not be
+     * modified
+     */
+    synchronized void put(String contentHash, boolean isCircular, String endonucleaseKey, long[] targets) {
+        store(key(contentHash, isCircular, endonucleaseKey), targets);
+        if (directory != null) {
+            write(file(contentHash, isCircular, endonucleaseKey), endonucleaseKey, targets);
+        }
+    }
+
+    /**
+     * Removes the entries of an endonuclease definition, in memory and in the
+     * cache directory. Entries are keyed by the target and the cleavage
+     * positions, so adding or deleting endonucleases never leaves stale
+     * entries; this is only needed if the results of a definition must be
+     * found again (isoschizomers share their entries, so theirs are removed
+     * too).
+     *
+     * @param e Endonuclease object with the definition to be removed
+     */
+    public synchronized void invalidate(Endonuclease e) {
+        String endonucleaseKey = RestrictionSiteFinder.groupKey(e);
+        Iterator<Map.Entry<String, long[]>> entry = entries.entrySet().iterator();
+        while (entry.hasNext()) {
+            Map.Entry<String, long[]> next = entry.next();
+            String key = next.getKey();
+            // The endonuclease key follows the hash and the topology
+            if (key.substring(key.indexOf('|', key.indexOf('|') + 1) + 1).equals(endonucleaseKey)) {
+                bytes -= entryBytes(key, next.getValue());
+                entry.remove();
+            }
+        }
+        if (directory != null) {
+            deleteFolder(new File(directory, folderName(endonucleaseKey)));
+        }
+    }
+
+    /**
+     * Removes all the entries, in memory and in the cache directory.
+     * Statistics are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+        if (directory != null) {
+            File[] folders = directory.listFiles(File::isDirectory);
+            for (File folder : folders != null ? folders : new File[0]) {
+                deleteFolder(folder);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of entries in memory.
+     *
+     * @return int number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the memory taken by the entries.
+     *
+     * @return long approximate number of bytes
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the memory limit.
+     *
+     * @return long number of bytes
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Returns the cache directory.
+     *
+     * @return File directory, null if the entries are only kept in memory
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the size limit of the cache directory.
+     *
+     * @return long number of bytes
+     */
+    public long getMaxDiskBytes() {
+        return maxDiskBytes;
+    }
+
+    /**
+     * Returns the number of lookups that found their entry.
+     *
+     * @return long number of hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of hits read from the cache directory.
+     *
+     * @return long number of hits in the directory
+     */
+    public synchronized long getDiskHits() {
+        return diskHits;
+    }
+
+    /**
+     * Returns the number of lookups that didn't find their entry, so the
+     * endonuclease was scanned.
+     *
+     * @return long number of misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of entries and files evicted to respect the limits.
+     *
+     * @return long number of evictions
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the statistics of the cache.
+     *
+     * @return String with the hits, misses, entries and memory
+     */
+    @Override
+    public synchronized String toString() {
+        long lookups = hits + misses;
+        return String.format("Analysis cache: %d hits (%d from disk), %d misses (%.1f%% hit rate), %d entries, %d of %d bytes, %d evictions",
+                hits, diskHits, misses, lookups == 0 ? 0.0 : 100.0 * hits / lookups, entries.size(), bytes, maxBytes, evictions);
+    }
+
+    /**
+     * Returns the memory key of the targets of an endonuclease in a
+     * sequence.
+     *
+     * @param contentHash content hash of the sequence
+     * @param isCircular true if the sequence is circular
+     * @param endonucleaseKey key with everything the targets depend on
+     * @return String key
+     */
+    private static String key(String contentHash, boolean isCircular, String endonucleaseKey) {
+        return contentHash + (isCircular ? "|circular|" : "|linear|") + endonucleaseKey;
+    }
+
+    /**
+     * Stores an entry in memory, evicting the least recently used entries if
+     * the memory limit is exceeded. Entries bigger than the whole cache are
+     * not stored.
+     *
+     * @param key entry key
+     * @param targets encoded targets
+     */
+    private void store(String key, long[] targets) {
+        long entryBytes = entryBytes(key, targets);
+        if (entryBytes > maxBytes) {
+            return;
+        }
+        long[] previous = entries.put(key, targets);
+        if (previous != null) {
+            bytes -= entryBytes(key, previous);
+        }
+        bytes += entryBytes;
+        Iterator<Map.Entry<String, long[]>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes) {
+            Map.Entry<String, long[]> entry = eldest.next();
+            bytes -= entryBytes(entry.getKey(), entry.getValue());
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Returns the approximate memory taken by an entry.
+     *
+     * @param key entry key
+     * @param targets encoded targets
+     * @return long number of bytes
+     */
+    private static long entryBytes(String key, long[] targets) {
+        return ENTRY_BYTES + 2L * key.length() + 8L * targets.length;
+    }
+
+    /**
+     * Returns the entry file of the targets of an endonuclease in a sequence.
+     *
+     * @param contentHash content hash of the sequence
+     * @param isCircular true if the sequence is circular
+     * @param endonucleaseKey key with everything the targets depend on
+     * @return File in the subdirectory of the endonuclease
+     */
+    private File file(String contentHash, boolean isCircular, String endonucleaseKey) {
+        return new File(new File(directory, folderName(endonucleaseKey)),
+                contentHash + (isCircular ? "-circular" : "-linear") + EXTENSION);
+    }
+
+    /**
+     * Returns the subdirectory name of an endonuclease key, keys can have
+     * any character (regex targets).
+     *
+     * @param endonucleaseKey key with everything the targets depend on
+     * @return String with the first 128 bits of the key SHA-256, in
+     * hexadecimal
+     */
+    private static String folderName(String endonucleaseKey) {
+        byte[] hash;
+        try {
+            hash = MessageDigest.getInstance("SHA-256").digest(endonucleaseKey.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException ex) {
+            // Every Java platform has SHA-256
+            throw new IllegalStateException(ex);
+        }
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 16; i++) {
+            name.append(String.format("%02x", hash[i]));
+        }
+        return name.toString();
+    }
+
+    /**
+     * Reads an entry file and touches it, so it is evicted later.
+     *
+     * @param file entry file
+     * @param endonucleaseKey key the file must have
+     * @return long[] encoded targets sorted by position, null if there is no
+     * valid entry file
+     */
+    private long[] read(File file, String endonucleaseKey) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                // Other format, it is replaced when the targets are cached
+                return null;
+            }
+            int keyLength = in.getInt();
+            if (keyLength < 0 || keyLength > in.remaining()) {
+                throw new IOException("Wrong key in " + file);
+            }
+            byte[] key = new byte[keyLength];
+            in.get(key);
+            if (!new String(key, StandardCharsets.UTF_8).equals(endonucleaseKey)) {
+                return null;
+            }
+            int count = in.getInt();
+            if (count < 0 || count > in.remaining()) {
+                throw new IOException("Wrong number of targets in " + file);
+            }
+            long[] targets = new long[count];
+            int position = 0;
+            for (int t = 0; t < count; t++) {
+                int value = readVarInt(in);
+                position += value >>> 1;
+                targets[t] = TargetScanner.encodeTarget(0, position, (value & 1) != 0);
+            }
+            file.setLastModified(System.currentTimeMillis());
+            return targets;
+        } catch (IOException | BufferUnderflowException ex) {
+            // Damaged or deleted by another run, the targets are scanned again
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Writes an entry file, through a temporary file, and deletes the least
+     * recently used files if the size limit is exceeded. The cache is
+     * optional, so I/O errors are only logged.
+     *
+     * @param file entry file
+     * @param endonucleaseKey key with everything the targets depend on
+     * @param targets encoded targets sorted by position
+     */
+    private void write(File file, String endonucleaseKey, long[] targets) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + 2 * targets.length);
+            DataOutputStream out = new DataOutputStream(bytes);
+            byte[] key = endonucleaseKey.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(key.length);
+            out.write(key);
+            out.writeInt(targets.length);
+            int previous = 0;
+            for (long target : targets) {
+                int position = TargetScanner.targetPosition(target);
+                writeVarInt(bytes, (position - previous) << 1 | (TargetScanner.targetIsAntisense(target) ? 1 : 0));
+                previous = position;
+            }
+            if (bytes.size() > maxDiskBytes) {
+                return;
+            }
+            File folder = file.getParentFile();
+            if (!folder.isDirectory() && !folder.mkdirs()) {
+                throw new IOException("unable to create the cache folder " + folder);
+            }
+            Path temporary = Files.createTempFile(folder.toPath(), "entry", ".tmp");
+            try {
+                Files.write(temporary, bytes.toByteArray());
+                try {
+                    Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException ex) {
+                    Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+            diskBytes = diskBytes < 0 ? entryFiles(null) : diskBytes + bytes.size();
+            if (diskBytes > maxDiskBytes) {
+                evictFiles();
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(AnalysisCache.class.getName()).log(Level.WARNING, "Unable to write the analysis cache entry " + file, ex);
+        }
+    }
+
+    /**
+     * Deletes the least recently used entry files until the directory is
+     * under its size limit. The files are listed again, other runs can have
+     * written or deleted some of them.
+     */
+    private void evictFiles() {
+        List<File> files = new ArrayList<>();
+        long size = entryFiles(files);
+        files.sort(Comparator.comparingLong(File::lastModified));
+        for (Iterator<File> eldest = files.iterator(); size > maxDiskBytes && eldest.hasNext(); ) {
+            File file = eldest.next();
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+                evictions++;
+            }
+        }
+        diskBytes = size;
+    }
+
+    /**
+     * Measures the entry files of the cache directory.
+     *
+     * @param files List where the files are added, null if they are not
+     * needed
+     * @return long size of the files, in bytes
+     */
+    private long entryFiles(List<File> files) {
+        long size = 0;
+        File[] folders = directory.listFiles(File::isDirectory);
+        for (File folder : folders != null ? folders : new File[0]) {
+            File[] entryFiles = folder.listFiles((dir, name) -> name.endsWith(EXTENSION));
+            for (File file : entryFiles != null ? entryFiles : new File[0]) {
+                size += file.length();
+                if (files != null) {
+                    files.add(file);
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Deletes the entry files of a subdirectory and the subdirectory.
+     *
+     * @param folder subdirectory of an endonuclease
+     */
+    private void deleteFolder(File folder) {
+        File[] files = folder.listFiles();
+        for (File file : files != null ? files : new File[0]) {
+            long length = file.length();
+            if (file.delete() && diskBytes >= 0) {
+                diskBytes -= length;
+            }
+        }
+        folder.delete();
+    }
+
+    /**
+     * Writes an unsigned varint, 7 bits per byte with the highest bit set in
+     * every byte but the last one.
+     *
+     * @param out ByteArrayOutputStream object
+     * @param value int value, read as unsigned
+     */
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Reads an unsigned varint.
+     *
+     * @param in ByteBuffer object
+     * @return int value
+     * @throws IOException if the varint is longer than 5 bytes
+     */
+    private static int readVarInt(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Wrong varint in analysis cache entry");
+    }
+}
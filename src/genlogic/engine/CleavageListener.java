@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2021 Luis Núñez Gómez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package genlogic.engine;
+
+/**
+ * Listener notified every time a cleavage site is found, it receives the
+ * same values stored in a RestrictionSite without creating the object.
+ *
+ * @author Luis Núñez Gómez
+ */
+public interface CleavageListener {
+
+    /**
+     * Called once for every cleavage site found.
+     *
+     * @param endonucleaseIndex index of the endonuclease in the list used to
+     * build the finder
+     * @param position numeric position of the cleavage bp in the sequence
+     * (5'->3')
+     * @param antisense true if the target is in the antisense strand
+     */
+    void cleavageFound(int endonucleaseIndex, int position, boolean antisense);
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2021 Luis Núñez Gómez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package genlogic.engine;
+
+import genlogic.model.Endonuclease;
+import genlogic.model.RegexEndonuclease;
+
+/**
+ * Bit parallel (Shift-And) matcher for endonucleases that need a regex
+ * analysis. Every target position accepts a set of bases, stored as one bit
+ * per position in a mask for every base, so each new base of the sequence
+ * updates all the partial matches at once without using regular expressions.
+ * The antisense strand is matched in the same pass using the reverse
+ * complemented masks.
+ *
+ * @author Luis Núñez Gómez
+ */
+public class DegenerateTargetMatcher {
+
+    /**
+     * Number of target positions stored in every mask word.
+     */
+    private static final int POSITIONS_PER_WORD = 64;
+
+    /**
+     * Number of characters with their own mask.
+     */
+    private static final int CHARACTERS = 128;
+
+    /**
+     * Target length.
+     */
+    private final int targetLength;
+
+    /**
+     * Number of words needed to store one bit per target position.
+     */
+    private final int words;
+
+    /**
+     * Sense strand masks, words entries per character.
+     */
+    private final long[] senseMasks;
+
+    /**
+     * Antisense strand masks (reverse complemented target), words entries per
+     * character. It is null for palindromic endonucleases.
+     */
+    private final long[] antiSenseMasks;
+
+    // Constructor
+    /**
+     * Builds the masks for the endonuclease target. Degenerated bases of
+     * RegexEndonuclease objects accept all their possible bases, any other
+     * endonuclease target is matched literally, like its regex did (ignoring
+     * case if the endonuclease does not need a regex analysis).
+     *
+     * @param endonuclease Endonuclease that needs a regex analysis
+     */
+    public DegenerateTargetMatcher(Endonuclease endonuclease) {
+        String target;
+        boolean degenerated = endonuclease instanceof RegexEndonuclease;
+        boolean ignoreCase = !endonuclease.getIsRegex();
+        if (degenerated) {
+            target = ((RegexEndonuclease) endonuclease).getDegeneratedTarget();
+        } else {
+            target = endonuclease.getEndonucleaseSimpleSenseTarget();
+        }
+        this.targetLength = target.length();
+        this.words = Math.max(1, (targetLength + POSITIONS_PER_WORD - 1) / POSITIONS_PER_WORD);
+        this.senseMasks = new long[CHARACTERS * words];
+        this.antiSenseMasks = endonuclease.getIsPalindromic() ? null : new long[CHARACTERS * words];
+        for (int p = 0; p < targetLength; p++) {
+            String bases;
+            if (degenerated) {
+                bases = iupacBases(target.charAt(p));
+            } else if (ignoreCase) {
+                bases = target.substring(p, p + 1).toUpperCase() + target.substring(p, p + 1).toLowerCase();
+            } else {
+                bases = target.substring(p, p + 1);
+            }
+            for (int b = 0; b < bases.length(); b++) {
+                char base = bases.charAt(b);
+                setBit(senseMasks, base, p);
+                if (antiSenseMasks != null) {
+                    setBit(antiSenseMasks, complement(base), targetLength - 1 - p);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the target length.
+     *
+     * @return int target length
+     */
+    public int getTargetLength() {
+        return targetLength;
+    }
+
+    /**
+     * Scans the whole sequence once, notifying every sense strand target and,
+     * for non palindromic endonucleases, every antisense strand target. The
+     * listener always receives 0 as endonuclease index.
+     *
+     * @param sequence DNA sequence to be analyzed
+     * @param listener TargetListener notified for every match
+     */
+    public void scan(CharSequence sequence, TargetListener listener) {
+        scan(sequence, 0, sequence.length(), listener);
+    }
+
+    /**
+     * Scans a region of the sequence, notifying every target that starts in
+     * it. Bases after the region are read only to complete targets starting
+     * inside it.
+     *
+     * @param sequence DNA sequence to be analyzed
+     * @param from first target position to be reported (included)
+     * @param to last target position to be reported (excluded)
+     * @param listener TargetListener notified for every match
+     */
+    public void scan(CharSequence sequence, int from, int to, TargetListener listener) {
+        if (targetLength == 0) {
+            return;
+        }
+        int end = (int) Math.min(sequence.length(), (long) to + targetLength - 1);
+        long[] senseState = new long[words];
+        long[] antiSenseState = antiSenseMasks != null ? new long[words] : null;
+        for (int i = from; i < end; i++) {
+            char base = sequence.charAt(i);
+            int position = i - targetLength + 1;
+            if (shift(senseState, senseMasks, base) && position < to) {
+                listener.targetFound(0, position, false);
+            }
+            if (antiSenseState != null && shift(antiSenseState, antiSenseMasks, base) && position < to) {
+                listener.targetFound(0, position, true);
+            }
+        }
+    }
+
+    /**
+     * Checks if a single fragment of the target length matches the sense
+     * strand target.
+     *
+     * @param fragment DNA fragment
+     * @return boolean true if the fragment matches
+     */
+    public boolean matches(CharSequence fragment) {
+        if (fragment.length() != targetLength) {
+            return false;
+        }
+        for (int p = 0; p < targetLength; p++) {
+            char base = fragment.charAt(p);
+            if (base >= CHARACTERS
+                    || (senseMasks[base * words + p / POSITIONS_PER_WORD] & (1L << (p % POSITIONS_PER_WORD))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Shift-And step, it adds a base to every partial match.
+     *
+     * @param state partial matches, one bit per target position
+     * @param masks masks to be used
+     * @param base new base of the sequence
+     * @return boolean true if a whole target has been matched
+     */
+    private boolean shift(long[] state, long[] masks, char base) {
+        int offset = base < CHARACTERS ? base * words : -1;
+        // From the highest word to the lowest one, so the carry is the old value
+        for (int w = words - 1; w >= 0; w--) {
+            long carry = w == 0 ? 1L : state[w - 1] >>> (POSITIONS_PER_WORD - 1);
+            state[w] = offset < 0 ? 0L : ((state[w] << 1) | carry) & masks[offset + w];
+        }
+        return (state[(targetLength - 1) / POSITIONS_PER_WORD] & (1L << ((targetLength - 1) % POSITIONS_PER_WORD))) != 0;
+    }
+
+    /**
+     * Marks a base as accepted in a target position.
+     *
+     * @param masks masks to be modified
+     * @param base accepted base
+     * @param position target position
+     */
+    private void setBit(long[] masks, char base, int position) {
+        if (base < CHARACTERS) {
+            masks[base * words + position / POSITIONS_PER_WORD] |= 1L << (position % POSITIONS_PER_WORD);
+        }
+    }
+
+    /**
+     * Returns the bases represented by a IUPAC code, the same ones used to
+     * build the RegexEndonuclease regex.
+     *
+     * @param code char with the IUPAC code
+     * @return String with all the possible bases, empty if the code is unknown
+     */
+    private static String iupacBases(char code) {
+        switch (code) {
+            case 'A':
+            case 'C':
+            case 'G':
+            case 'T':
+                return String.valueOf(code);
+            case 'N':
+                return "ACGT";
+            case 'M':
+                return "AC";
+            case 'R':
+                return "AG";
+            case 'W':
+                return "AT";
+            case 'Y':
+                return "CT";
+            case 'S':
+                return "CG";
+            case 'K':
+                return "GT";
+            case 'H':
+                return "ACT";
+            case 'B':
+                return "CGT";
+            case 'V':
+                return "ACG";
+            case 'D':
+                return "AGT";
+            default:
+                return "";
+        }
+    }
+
+    /**
+     * Returns the complementary base, used to build antisense fragments. Any
+     * other character is kept.
+     *
+     * @param base char with the base
+     * @return char with the complementary base
+     */
+    private static char complement(char base) {
+        switch (base) {
+            case 'A':
+                return 'T';
+            case 'T':
+                return 'A';
+            case 'C':
+                return 'G';
+            case 'G':
+                return 'C';
+            default:
+                return base;
+        }
+    }
+}
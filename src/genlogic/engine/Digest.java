@@ -0,0 +1,462 @@
+/*
+ * Copyright (C) 2021 Luis Núñez Gómez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package genlogic.engine;
+
+import genlogic.model.RestrictionSiteStore;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Fragments produced by a single or multiple endonucleases digest. It works
+ * on sorted int arrays of cleavage positions: the positions of every
+ * endonuclease are merged in linear time and every fragment is defined by two
+ * consecutive cleavage positions, so no object is created per fragment.
+ * <p>
+ * Fragments are numbered from the beginning of the sequence. A fragment
+ * starts at a cleavage position (0 for the first fragment of linear
+ * sequences) and ends before the next one. In circular sequences the last
+ * fragment crosses the origin, so its end is greater than the sequence
+ * length, and a sequence without cleavage sites is a single circular
+ * fragment.
+ *
+ * @author Luis Núñez Gómez
+ */
+public class Digest {
+
+    /**
+     * Bases per line of the FASTA fragments.
+     */
+    private static final int FASTA_LINE_LENGTH = 60;
+
+    /**
+     * Sorted and distinct cleavage positions inside the sequence.
+     */
+    private final int[] cuts;
+
+    /**
+     * Digested sequence length.
+     */
+    private final int sequenceLength;
+
+    /**
+     * True if the sequence is circular.
+     */
+    private final boolean isCircular;
+
+    // Constructor
+    /**
+     * Creates the digest of a sequence.
+     *
+     * @param cuts sorted and distinct cleavage positions, as returned by
+     * cutPositions() and merge()
+     * @param sequenceLength DNA sequence length
+     * @param isCircular true if the sequence is circular
+     */
+    public Digest(int[] cuts, int sequenceLength, boolean isCircular) {
+        this.cuts = cuts;
+        this.sequenceLength = sequenceLength;
+        this.isCircular = isCircular;
+    }
+
+    /**
+     * Creates the digest of a sequence with all the endonucleases of an
+     * analysis.
+     *
+     * @param sites RestrictionSiteStore with the cleavage sites
+     * @param sequenceLength DNA sequence length
+     * @param isCircular true if the sequence is circular
+     * @return Digest object
+     */
+    public static Digest of(RestrictionSiteStore sites, int sequenceLength, boolean isCircular) {
+        return new Digest(merge(cutPositions(sites, sequenceLength, isCircular)), sequenceLength, isCircular);
+    }
+
+    /**
+     * Splits the cleavage sites of an analysis by endonuclease. Positions are
+     * sorted and distinct (both strands of a site can cut at the same bp),
+     * positions that don't split linear sequences (0 or the sequence length)
+     * are removed and circular positions are taken modulo the sequence length.
+     *
+     * @param sites RestrictionSiteStore with the cleavage sites
+     * @param sequenceLength DNA sequence length
+     * @param isCircular true if the sequence is circular
+     * @return int[][] with the cleavage positions of every endonuclease, in
+     * the store endonucleases order
+     */
+    public static int[][] cutPositions(RestrictionSiteStore sites, int sequenceLength, boolean isCircular) {
+        int endonucleases = sites.getEndonucleases().size();
+        int[] sizes = new int[endonucleases];
+        for (int i = 0; i < sites.size(); i++) {
+            sizes[sites.getEndonucleaseIndex(i)]++;
+        }
+        int[][] cuts = new int[endonucleases][];
+        for (int e = 0; e < endonucleases; e++) {
+            cuts[e] = new int[sizes[e]];
+            sizes[e] = 0;
+        }
+        for (int i = 0; i < sites.size(); i++) {
+            int e = sites.getEndonucleaseIndex(i);
+            int position = sites.getPosition(i);
+            if (isCircular && sequenceLength > 0) {
+                position = Math.floorMod(position, sequenceLength);
+            } else if (position <= 0 || position >= sequenceLength) {
+                continue;
+            }
+            cuts[e][sizes[e]++] = position;
+        }
+        for (int e = 0; e < endonucleases; e++) {
+            // Sites are sorted by target position, cleavage positions are almost sorted
+            Arrays.sort(cuts[e], 0, sizes[e]);
+            cuts[e] = distinct(cuts[e], sizes[e]);
+        }
+        return cuts;
+    }
+
+    /**
+     * Merges two sorted arrays of cleavage positions in linear time, repeated
+     * positions are kept once.
+     *
+     * @param a sorted cleavage positions
+     * @param b sorted cleavage positions
+     * @return int[] sorted and distinct positions of both arrays
+     */
+    public static int[] merge(int[] a, int[] b) {
+        int[] merged = new int[a.length + b.length];
+        int i = 0, j = 0, size = 0;
+        while (i < a.length && j < b.length) {
+            int next = a[i] <= b[j] ? a[i] : b[j];
+            if (a[i] == next) {
+                i++;
+            }
+            if (b[j] == next) {
+                j++;
+            }
+            if (size == 0 || merged[size - 1] != next) {
+                merged[size++] = next;
+            }
+        }
+        for (; i < a.length; i++) {
+            if (size == 0 || merged[size - 1] != a[i]) {
+                merged[size++] = a[i];
+            }
+        }
+        for (; j < b.length; j++) {
+            if (size == 0 || merged[size - 1] != b[j]) {
+                merged[size++] = b[j];
+            }
+        }
+        return size == merged.length ? merged : Arrays.copyOf(merged, size);
+    }
+
+    /**
+     * Merges any number of sorted arrays of cleavage positions, in pairs, so
+     * every position is copied log2(arrays) times.
+     *
+     * @param arrays sorted cleavage positions
+     * @return int[] sorted and distinct positions of all the arrays
+     */
+    public static int[] merge(int[]... arrays) {
+        if (arrays.length == 0) {
+            return new int[0];
+        }
+        int[][] level = arrays;
+        while (level.length > 1) {
+            int[][] next = new int[(level.length + 1) / 2][];
+            for (int i = 0; i < next.length; i++) {
+                next[i] = 2 * i + 1 < level.length ? merge(level[2 * i], level[2 * i + 1]) : level[2 * i];
+            }
+            level = next;
+        }
+        return level[0];
+    }
+
+    /**
+     * Returns the number of fragments of a digest without creating it.
+     *
+     * @param cuts number of distinct cleavage positions
+     * @param isCircular true if the sequence is circular
+     * @return int number of fragments
+     */
+    public static int fragmentCount(int cuts, boolean isCircular) {
+        return isCircular ? Math.max(1, cuts) : cuts + 1;
+    }
+
+    /**
+     * Computes the fragments of the digest with the cleavage positions of two
+     * arrays, merging them without creating any array.
+     *
+     * @param a sorted cleavage positions
+     * @param b sorted cleavage positions (it can be the same array)
+     * @param sequenceLength DNA sequence length
+     * @param isCircular true if the sequence is circular
+     * @param sizes int[3] where the number of fragments, the largest and the
+     * smallest fragment length are stored
+     */
+    static void fragmentSizes(int[] a, int[] b, int sequenceLength, boolean isCircular, int[] sizes) {
+        int count = 0, first = 0, previous = 0;
+        int min = Integer.MAX_VALUE, max = 0;
+        for (int i = 0, j = 0; i < a.length || j < b.length; count++) {
+            int next;
+            if (j >= b.length || (i < a.length && a[i] < b[j])) {
+                next = a[i++];
+            } else if (i >= a.length || b[j] < a[i]) {
+                next = b[j++];
+            } else {
+                // Both cut at the same position
+                next = a[i++];
+                j++;
+            }
+            if (count == 0) {
+                first = next;
+            } else {
+                min = Math.min(min, next - previous);
+                max = Math.max(max, next - previous);
+            }
+            previous = next;
+        }
+        if (count == 0) {
+            min = max = sequenceLength;
+        } else if (isCircular) {
+            // The last fragment crosses the origin
+            int last = sequenceLength - previous + first;
+            min = Math.min(min, last);
+            max = Math.max(max, last);
+        } else {
+            min = Math.min(min, Math.min(first, sequenceLength - previous));
+            max = Math.max(max, Math.max(first, sequenceLength - previous));
+        }
+        sizes[0] = fragmentCount(count, isCircular);
+        sizes[1] = max;
+        sizes[2] = min;
+    }
+
+    /**
+     * Returns the cleavage positions of the digest.
+     *
+     * @return int[] sorted and distinct cleavage positions
+     */
+    public int[] getCuts() {
+        return cuts;
+    }
+
+    /**
+     * Returns the digested sequence length.
+     *
+     * @return int sequence length
+     */
+    public int getSequenceLength() {
+        return sequenceLength;
+    }
+
+    /**
+     * Returns true if the digested sequence is circular.
+     *
+     * @return boolean true for circular sequences
+     */
+    public boolean getIsCircular() {
+        return isCircular;
+    }
+
+    /**
+     * Returns the number of fragments.
+     *
+     * @return int number of fragments
+     */
+    public int getFragmentCount() {
+        return fragmentCount(cuts.length, isCircular);
+    }
+
+    /**
+     * Returns the first bp of a fragment.
+     *
+     * @param fragment fragment index
+     * @return int fragment start (included)
+     */
+    public int getStart(int fragment) {
+        checkFragment(fragment);
+        if (isCircular) {
+            return cuts.length == 0 ? 0 : cuts[fragment];
+        }
+        return fragment == 0 ? 0 : cuts[fragment - 1];
+    }
+
+    /**
+     * Returns the end of a fragment. The last fragment of a circular sequence
+     * ends after the sequence length, because it crosses the origin.
+     *
+     * @param fragment fragment index
+     * @return int fragment end (excluded)
+     */
+    public int getEnd(int fragment) {
+        checkFragment(fragment);
+        if (isCircular) {
+            return fragment + 1 < cuts.length ? cuts[fragment + 1] : (cuts.length == 0 ? 0 : cuts[0]) + sequenceLength;
+        }
+        return fragment < cuts.length ? cuts[fragment] : sequenceLength;
+    }
+
+    /**
+     * Returns the length of a fragment.
+     *
+     * @param fragment fragment index
+     * @return int fragment length in bp
+     */
+    public int getLength(int fragment) {
+        return getEnd(fragment) - getStart(fragment);
+    }
+
+    /**
+     * Returns the length of every fragment.
+     *
+     * @return int[] fragment lengths, in fragment order
+     */
+    public int[] getLengths() {
+        int[] lengths = new int[getFragmentCount()];
+        for (int f = 0; f < lengths.length; f++) {
+            lengths[f] = getLength(f);
+        }
+        return lengths;
+    }
+
+    /**
+     * Returns the length of the largest fragment.
+     *
+     * @return int largest fragment length
+     */
+    public int getLargest() {
+        int largest = 0;
+        for (int f = 0; f < getFragmentCount(); f++) {
+            largest = Math.max(largest, getLength(f));
+        }
+        return largest;
+    }
+
+    /**
+     * Returns the length of the smallest fragment.
+     *
+     * @return int smallest fragment length
+     */
+    public int getSmallest() {
+        int smallest = Integer.MAX_VALUE;
+        for (int f = 0; f < getFragmentCount(); f++) {
+            smallest = Math.min(smallest, getLength(f));
+        }
+        return smallest;
+    }
+
+    /**
+     * Returns the limits of a virtual gel with logarithmic bands, the way
+     * fragments migrate in an agarose gel.
+     *
+     * @param bands number of bands
+     * @param minLength shortest fragment length of the first band
+     * @param maxLength longest fragment length of the last band
+     * @return int[] with bands + 1 increasing limits, band b has the fragments
+     * from limit b (included) to limit b + 1 (excluded)
+     * @throws IllegalArgumentException if the limits are wrong
+     */
+    public static int[] gelBands(int bands, int minLength, int maxLength) {
+        if (bands < 1 || minLength < 1 || maxLength <= minLength) {
+            throw new IllegalArgumentException("Wrong gel bands: " + bands + ", " + minLength + "-" + maxLength);
+        }
+        int[] limits = new int[bands + 1];
+        double ratio = Math.log((double) maxLength / minLength) / bands;
+        for (int b = 0; b <= bands; b++) {
+            limits[b] = Math.max(b == 0 ? minLength : limits[b - 1] + 1, (int) Math.round(minLength * Math.exp(ratio * b)));
+        }
+        return limits;
+    }
+
+    /**
+     * Builds the virtual gel band table: the number of fragments in every
+     * band. Fragments out of the gel are counted apart, the ones shorter than
+     * the first limit in the first value and the ones at least as long as the
+     * last limit in the last value.
+     *
+     * @param limits band limits, as returned by gelBands()
+     * @return int[] number of fragments shorter than the gel, then of every
+     * band (band b in value b + 1), then of fragments longer than the gel
+     */
+    public int[] gel(int[] limits) {
+        int[] bands = new int[limits.length + 1];
+        for (int f = 0; f < getFragmentCount(); f++) {
+            int band = Arrays.binarySearch(limits, getLength(f));
+            // Not found: the band is the one before the insertion point
+            band = band >= 0 ? band : -band - 2;
+            bands[band + 1]++;
+        }
+        return bands;
+    }
+
+    /**
+     * Writes the sequence of every fragment in FASTA format. Headers contain
+     * the name, the fragment number, its first and last bp (from 1) and its
+     * length.
+     *
+     * @param bases DNA sequence bases
+     * @param name String with the sequence name
+     * @param out Writer where fragments are written
+     * @throws IOException if the fragments cannot be written
+     */
+    public void writeFASTA(CharSequence bases, String name, Writer out) throws IOException {
+        String lineSeparator = System.getProperty("line.separator");
+        char[] line = new char[FASTA_LINE_LENGTH];
+        for (int f = 0; f < getFragmentCount(); f++) {
+            int start = getStart(f), end = getEnd(f);
+            out.write(">" + name + "_" + (f + 1) + " " + (start + 1) + "-" + (end > sequenceLength ? end - sequenceLength : end)
+                    + " " + (end - start) + " bp" + lineSeparator);
+            for (int position = start; position < end; ) {
+                int size = Math.min(FASTA_LINE_LENGTH, end - position);
+                for (int i = 0; i < size; i++, position++) {
+                    line[i] = bases.charAt(position < sequenceLength ? position : position - sequenceLength);
+                }
+                out.write(line, 0, size);
+                out.write(lineSeparator);
+            }
+        }
+    }
+
+    /**
+     * Removes the repeated values of a sorted array.
+     *
+     * @param sorted sorted values
+     * @param size number of values used
+     * @return int[] with the distinct values, the same array if possible
+     */
+    private static int[] distinct(int[] sorted, int size) {
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (distinct == 0 || sorted[distinct - 1] != sorted[i]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        return distinct == sorted.length ? sorted : Arrays.copyOf(sorted, distinct);
+    }
+
+    /**
+     * Checks a fragment index.
+     *
+     * @param fragment fragment index
+     * @throws IndexOutOfBoundsException if there is no fragment with that index
+     */
+    private void checkFragment(int fragment) {
+        if (fragment < 0 || fragment >= getFragmentCount()) {
+            throw new IndexOutOfBoundsException("Fragment: " + fragment + ", Fragments: " + getFragmentCount());
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2021 Luis Núñez Gómez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package genlogic.engine;
+
+import genlogic.model.DNASequence;
+import genlogic.model.Endonuclease;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Double digest matrix: the fragments produced by every pair of
+ * endonucleases, and by every endonuclease alone in the diagonal. The
+ * sequence is analyzed once, and every pair is computed with a linear merge
+ * of the sorted cleavage positions of both endonucleases, without creating
+ * any array. Rows are computed in parallel.
+ * <p>
+ * Only the upper triangle (diagonal included) is stored, so pairs can be
+ * requested in any order.
+ *
+ * @author Luis Núñez Gómez
+ */
+public class DigestMatrix {
+
+    /**
+     * Endonucleases of the matrix.
+     */
+    private final List<Endonuclease> endonucleases;
+
+    /**
+     * Number of distinct cleavage positions of every endonuclease.
+     */
+    private final int[] cutCounts;
+
+    /**
+     * Number of fragments, largest and smallest fragment length of every
+     * pair.
+     */
+    private final int[] fragments, largest, smallest;
+
+    // Constructor
+    /**
+     * Computes the matrix from the cleavage positions of every endonuclease.
+     *
+     * @param endonucleases List of endonucleases
+     * @param cuts sorted and distinct cleavage positions of every
+     * endonuclease, as returned by RestrictionSiteFinder.cutPositions()
+     * @param sequenceLength DNA sequence length
+     * @param isCircular true if the sequence is circular
+     * @throws IllegalArgumentException if there are too many endonucleases
+     */
+    public DigestMatrix(List<Endonuclease> endonucleases, int[][] cuts, int sequenceLength, boolean isCircular) {
+        int n = cuts.length;
+        long pairs = (long) n * (n + 1) / 2;
+        if (pairs > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many endonucleases for a digest matrix: " + n);
+        }
+        this.endonucleases = endonucleases;
+        this.cutCounts = new int[n];
+        for (int i = 0; i < n; i++) {
+            cutCounts[i] = cuts[i].length;
+        }
+        this.fragments = new int[(int) pairs];
+        this.largest = new int[(int) pairs];
+        this.smallest = new int[(int) pairs];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            int[] sizes = new int[3];
+            for (int j = i; j < n; j++) {
+                pair(cuts[i], cuts[j], sequenceLength, isCircular, index(i, j), sizes);
+            }
+        });
+    }
+
+    /**
+     * Analyzes a sequence and computes the matrix of the finder
+     * endonucleases.
+     *
+     * @param finder RestrictionSiteFinder with the selected endonucleases
+     * @param sequence DNASequence object to be digested
+     * @param isCircular true if the sequence is circular
+     * @return DigestMatrix object
+     */
+    public static DigestMatrix of(RestrictionSiteFinder finder, DNASequence sequence, boolean isCircular) {
+        return new DigestMatrix(finder.getEndonucleases(), finder.cutPositions(sequence, isCircular),
+                sequence.getIntLength(), isCircular);
+    }
+
+    /**
+     * Returns the endonucleases of the matrix.
+     *
+     * @return List of endonucleases
+     */
+    public List<Endonuclease> getEndonucleases() {
+        return endonucleases;
+    }
+
+    /**
+     * Returns the number of endonucleases of the matrix.
+     *
+     * @return int number of rows and columns
+     */
+    public int size() {
+        return cutCounts.length;
+    }
+
+    /**
+     * Returns the number of distinct cleavage positions of an endonuclease.
+     *
+     * @param i endonuclease index
+     * @return int number of cleavage positions
+     */
+    public int getCutCount(int i) {
+        return cutCounts[i];
+    }
+
+    /**
+     * Returns the number of fragments of a double digest.
+     *
+     * @param i first endonuclease index
+     * @param j second endonuclease index (the same one for single digests)
+     * @return int number of fragments
+     */
+    public int getFragments(int i, int j) {
+        return fragments[index(i, j)];
+    }
+
+    /**
+     * Returns the largest fragment length of a double digest.
+     *
+     * @param i first endonuclease index
+     * @param j second endonuclease index (the same one for single digests)
+     * @return int largest fragment length
+     */
+    public int getLargest(int i, int j) {
+        return largest[index(i, j)];
+    }
+
+    /**
+     * Returns the smallest fragment length of a double digest.
+     *
+     * @param i first endonuclease index
+     * @param j second endonuclease index (the same one for single digests)
+     * @return int smallest fragment length
+     */
+    public int getSmallest(int i, int j) {
+        return smallest[index(i, j)];
+    }
+
+    /**
+     * Returns true if both endonucleases cut the sequence exactly once, the
+     * usual requirement to clone a fragment.
+     *
+     * @param i first endonuclease index
+     * @param j second endonuclease index
+     * @return boolean true if both cut once
+     */
+    public boolean getBothCutOnce(int i, int j) {
+        return cutCounts[i] == 1 && cutCounts[j] == 1;
+    }
+
+    /**
+     * Returns the position of a pair in the upper triangle.
+     *
+     * @param i first endonuclease index
+     * @param j second endonuclease index
+     * @return int pair position
+     * @throws IndexOutOfBoundsException if any index is wrong
+     */
+    private int index(int i, int j) {
+        int n = cutCounts.length;
+        if (i < 0 || j < 0 || i >= n || j >= n) {
+            throw new IndexOutOfBoundsException("Pair: " + i + ", " + j + ", Size: " + n);
+        }
+        if (i > j) {
+            int swap = i;
+            i = j;
+            j = swap;
+        }
+        // Rows before i have n, n - 1, ... n - i + 1 pairs
+        return (int) ((long) i * n - (long) i * (i - 1) / 2) + (j - i);
+    }
+
+    /**
+     * Merges the cleavage positions of two endonucleases and stores the
+     * fragments of the double digest.
+     *
+     * @param a sorted cleavage positions of the first endonuclease
+     * @param b sorted cleavage positions of the second endonuclease
+     * @param sequenceLength DNA sequence length
+     * @param isCircular true if the sequence is circular
+     * @param index pair position
+     * @param sizes int[3] reused for the fragment sizes
+     */
+    private void pair(int[] a, int[] b, int sequenceLength, boolean isCircular, int index, int[] sizes) {
+        Digest.fragmentSizes(a, b, sequenceLength, isCircular, sizes);
+        fragments[index] = sizes[0];
+        largest[index] = sizes[1];
+        smallest[index] = sizes[2];
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2021 Luis Núñez Gómez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package genlogic.engine;
+
+import genlogic.model.DNASequence;
+import genlogic.model.Endonuclease;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Finds the smallest sets of endonucleases whose digest only produces
+ * fragments inside a size window. The sequence is analyzed once, and the
+ * sets are explored by size with branch and bound:
+ * <ul>
+ * <li>adding endonucleases can only split fragments, so a set with a fragment
+ * shorter than the window is discarded with all the sets that contain it (an
+ * endonuclease alone too)</li>
+ * <li>a digest needs at least sequence length / longest fragment fragments,
+ * so a set is discarded if it can't reach them with the endonucleases that
+ * can still be added, even if all of them cut as many times as the most
+ * cutting candidate</li>
+ * <li>the merged cleavage positions of every valid set are kept and reused by
+ * all the sets that extend it, so every set costs one linear merge</li>
+ * <li>the sets of every size are extended in parallel, and bigger sets are
+ * not explored once there are enough results</li>
+ * </ul>
+ * Endonucleases with the same cleavage positions (like isoschizomers) are
+ * explored once, their equivalents can be requested.
+ *
+ * @author Luis Núñez Gómez
+ */
+public class DigestOptimizer {
+
+    /**
+     * Default maximum number of endonucleases per set and number of results.
+     */
+    public static final int DEFAULT_MAX_ENDONUCLEASES = 3, DEFAULT_RESULTS = 20;
+
+    /**
+     * Endonucleases that can be combined.
+     */
+    private final List<Endonuclease> endonucleases;
+
+    /**
+     * Cleavage positions of every endonuclease.
+     */
+    private final int[][] cuts;
+
+    /**
+     * Digested sequence length.
+     */
+    private final int sequenceLength;
+
+    /**
+     * True if the sequence is circular.
+     */
+    private final boolean isCircular;
+
+    /**
+     * Index of the first endonuclease with the same cleavage positions, for
+     * every endonuclease.
+     */
+    private final int[] representatives;
+
+    // Constructor
+    /**
+     * Creates an optimizer from the cleavage positions of every endonuclease.
+     *
+     * @param endonucleases List of endonucleases
+     * @param cuts sorted and distinct cleavage positions of every
+     * endonuclease, as returned by RestrictionSiteFinder.cutPositions()
+     * @param sequenceLength DNA sequence length
+     * @param isCircular true if the sequence is circular
+     */
+    public DigestOptimizer(List<Endonuclease> endonucleases, int[][] cuts, int sequenceLength, boolean isCircular) {
+        this.endonucleases = endonucleases;
+        this.cuts = cuts;
+        this.sequenceLength = sequenceLength;
+        this.isCircular = isCircular;
+        this.representatives = new int[cuts.length];
+        Map<CutsKey, Integer> first = new HashMap<>();
+        for (int i = 0; i < cuts.length; i++) {
+            Integer representative = first.putIfAbsent(new CutsKey(cuts[i]), i);
+            representatives[i] = representative == null ? i : representative;
+        }
+    }
+
+    /**
+     * Analyzes a sequence and creates an optimizer with the finder
+     * endonucleases.
+     *
+     * @param finder RestrictionSiteFinder with the candidate endonucleases
+     * @param sequence DNASequence object to be digested
+     * @param isCircular true if the sequence is circular
+     * @return DigestOptimizer object
+     */
+    public static DigestOptimizer of(RestrictionSiteFinder finder, DNASequence sequence, boolean isCircular) {
+        return new DigestOptimizer(finder.getEndonucleases(), finder.cutPositions(sequence, isCircular),
+                sequence.getIntLength(), isCircular);
+    }
+
+    /**
+     * Finds the sets of endonucleases whose fragments are all inside the size
+     * window. Results are ranked by number of endonucleases, then by the
+     * difference between the largest and the smallest fragment (the most
+     * even digests first).
+     *
+     * @param minLength shortest fragment length allowed
+     * @param maxLength longest fragment length allowed
+     * @param maxEndonucleases maximum number of endonucleases per set
+     * @param maxResults maximum number of results
+     * @return List of solutions, ranked
+     * @throws IllegalArgumentException if the window or the limits are wrong
+     */
+    public List<Solution> optimize(int minLength, int maxLength, int maxEndonucleases, int maxResults) {
+        if (minLength < 1 || maxLength < minLength || maxEndonucleases < 1 || maxResults < 1) {
+            throw new IllegalArgumentException("Wrong fragment window or limits");
+        }
+        // Candidates: endonucleases that cut without fragments shorter than the window
+        int[] sizes = new int[3];
+        List<Solution> level = new ArrayList<>();
+        for (int i = 0; i < cuts.length; i++) {
+            if (representatives[i] == i && cuts[i].length > 0) {
+                Digest.fragmentSizes(cuts[i], cuts[i], sequenceLength, isCircular, sizes);
+                if (sizes[2] >= minLength) {
+                    level.add(new Solution(new int[]{i}, cuts[i], sizes));
+                }
+            }
+        }
+        int[] candidates = level.stream().mapToInt(solution -> solution.indexes[0]).toArray();
+        int mostCuts = Arrays.stream(candidates).map(candidate -> cuts[candidate].length).max().orElse(0);
+        int fewestFragments = (int) ((sequenceLength + (long) maxLength - 1) / maxLength);
+        List<Solution> results = new ArrayList<>();
+        for (int size = 1; !level.isEmpty(); size++) {
+            List<Solution> found = level.stream().filter(solution -> solution.largest <= maxLength)
+                    .sorted(RANKING).limit(maxResults - results.size()).collect(Collectors.toList());
+            results.addAll(found);
+            if (size == maxEndonucleases || results.size() == maxResults) {
+                break;
+            }
+            // Cuts that the endonucleases added after the next one can contribute at most
+            long reachable = (long) (maxEndonucleases - size - 1) * mostCuts;
+            boolean isLast = size + 1 == maxEndonucleases;
+            List<Solution> current = level;
+            level = IntStream.range(0, current.size()).parallel()
+                    .mapToObj(s -> extend(current.get(s), candidates, minLength, maxLength,
+                    (int) Math.max(0, fewestFragments - reachable), isLast))
+                    .flatMap(List::stream).collect(Collectors.toList());
+        }
+        return results;
+    }
+
+    /**
+     * Returns the endonucleases with the same cleavage positions as one of
+     * them, itself included.
+     *
+     * @param index endonuclease index
+     * @return List of equivalent endonucleases
+     */
+    public List<Endonuclease> getEquivalents(int index) {
+        List<Endonuclease> equivalents = new ArrayList<>();
+        for (int i = 0; i < representatives.length; i++) {
+            if (representatives[i] == representatives[index]) {
+                equivalents.add(endonucleases.get(i));
+            }
+        }
+        return equivalents;
+    }
+
+    /**
+     * Returns the endonucleases that can be combined.
+     *
+     * @return List of endonucleases
+     */
+    public List<Endonuclease> getEndonucleases() {
+        return endonucleases;
+    }
+
+    /**
+     * Extends a set with every candidate after its last endonuclease. Sets
+     * with fragments shorter than the window, or with too few cleavage
+     * positions to reach the fragments needed, are discarded.
+     *
+     * @param set valid set
+     * @param candidates candidate endonuclease indexes, increasing
+     * @param minLength shortest fragment length allowed
+     * @param maxLength longest fragment length allowed
+     * @param fewestFragments fragments needed by the new sets (an upper bound
+     * of their cleavage positions is used before merging them)
+     * @param isLast true if the new sets won't be extended, so only the ones
+     * inside the window are kept and their positions are not merged
+     * @return List of new sets
+     */
+    private List<Solution> extend(Solution set, int[] candidates, int minLength, int maxLength, int fewestFragments, boolean isLast) {
+        List<Solution> extended = new ArrayList<>();
+        int[] sizes = new int[3];
+        int last = set.indexes[set.indexes.length - 1];
+        for (int candidate : candidates) {
+            if (candidate <= last || Digest.fragmentCount(set.merged.length + cuts[candidate].length, isCircular) < fewestFragments) {
+                continue;
+            }
+            Digest.fragmentSizes(set.merged, cuts[candidate], sequenceLength, isCircular, sizes);
+            if (sizes[2] < minLength || (isLast && sizes[1] > maxLength)) {
+                continue;
+            }
+            int[] indexes = Arrays.copyOf(set.indexes, set.indexes.length + 1);
+            indexes[set.indexes.length] = candidate;
+            extended.add(new Solution(indexes, isLast ? null : Digest.merge(set.merged, cuts[candidate]), sizes));
+        }
+        return extended;
+    }
+
+    /**
+     * Solutions ranking.
+     */
+    private static final Comparator<Solution> RANKING = Comparator.<Solution>comparingInt(solution -> solution.indexes.length)
+            .thenComparingInt(solution -> solution.largest - solution.smallest)
+            .thenComparing(solution -> solution.indexes, DigestOptimizer::compareIndexes);
+
+    /**
+     * Compares two sets of indexes of the same size.
+     *
+     * @param a first indexes
+     * @param b second indexes
+     * @return int comparison result
+     */
+    private static int compareIndexes(int[] a, int[] b) {
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            if (a[i] != b[i]) {
+                return Integer.compare(a[i], b[i]);
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+
+    /**
+     * A set of endonucleases and its digest.
+     */
+    public class Solution {
+
+        /**
+         * Endonuclease indexes, increasing.
+         */
+        private final int[] indexes;
+
+        /**
+         * Merged cleavage positions, null once they are not needed.
+         */
+        private final int[] merged;
+
+        /**
+         * Number of fragments, largest and smallest fragment length.
+         */
+        private final int fragments, largest, smallest;
+
+        /**
+         * Solution constructor.
+         *
+         * @param indexes endonuclease indexes
+         * @param merged merged cleavage positions
+         * @param sizes number of fragments, largest and smallest fragment
+         * length
+         */
+        Solution(int[] indexes, int[] merged, int[] sizes) {
+            this.indexes = indexes;
+            this.merged = merged;
+            this.fragments = sizes[0];
+            this.largest = sizes[1];
+            this.smallest = sizes[2];
+        }
+
+        /**
+         * Returns the endonuclease indexes of the set.
+         *
+         * @return int[] endonuclease indexes
+         */
+        public int[] getIndexes() {
+            return indexes.clone();
+        }
+
+        /**
+         * Returns the endonucleases of the set.
+         *
+         * @return List of endonucleases
+         */
+        public List<Endonuclease> getEndonucleases() {
+            List<Endonuclease> set = new ArrayList<>(indexes.length);
+            for (int index : indexes) {
+                set.add(endonucleases.get(index));
+            }
+            return Collections.unmodifiableList(set);
+        }
+
+        /**
+         * Returns the number of fragments of the digest.
+         *
+         * @return int number of fragments
+         */
+        public int getFragments() {
+            return fragments;
+        }
+
+        /**
+         * Returns the largest fragment length of the digest.
+         *
+         * @return int largest fragment length
+         */
+        public int getLargest() {
+            return largest;
+        }
+
+        /**
+         * Returns the smallest fragment length of the digest.
+         *
+         * @return int smallest fragment length
+         */
+        public int getSmallest() {
+            return smallest;
+        }
+    }
+
+    /**
+     * Cleavage positions used as a map key.
+     */
+    private static class CutsKey {
+
+        /**
+         * Cleavage positions.
+         */
+        private final int[] cuts;
+
+        /**
+         * Key constructor.
+         *
+         * @param cuts cleavage positions
+         */
+        CutsKey(int[] cuts) {
+            this.cuts = cuts;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CutsKey && Arrays.equals(cuts, ((CutsKey) o).cuts);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(cuts);
+        }
+    }
+}
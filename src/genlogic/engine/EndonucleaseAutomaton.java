@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2021 Luis Núñez Gómez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package genlogic.engine;
+
+import genlogic.model.Endonuclease;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton built with the target sequences of several
+ * endonucleases. It finds every target of every endonuclease in a single pass
+ * over the DNA sequence, instead of walking the sequence once per endonuclease.
+ * Non palindromic endonucleases also add their reverse complemented target, so
+ * antisense strand targets are found in the same forward pass. Only non
+ * degenerated targets (A, C, G and T bases) can be compiled, degenerated ones
+ * still need the regex analysis.
+ *
+ * @author Luis Núñez Gómez
+ */
+public class EndonucleaseAutomaton {
+
+    /**
+     * Number of different bases the automaton works with (A, C, G and T).
+     */
+    private static final int ALPHABET_SIZE = 4;
+
+    /**
+     * Lookup table that turns a character into its base code (A=0, C=1, G=2,
+     * T=3). Any other character gets -1.
+     */
+    private static final byte[] BASE_CODES = new byte[128];
+
+    static {
+        Arrays.fill(BASE_CODES, (byte) -1);
+        BASE_CODES['A'] = 0;
+        BASE_CODES['a'] = 0;
+        BASE_CODES['C'] = 1;
+        BASE_CODES['c'] = 1;
+        BASE_CODES['G'] = 2;
+        BASE_CODES['g'] = 2;
+        BASE_CODES['T'] = 3;
+        BASE_CODES['t'] = 3;
+    }
+
+    /**
+     * Goto function of the automaton, ALPHABET_SIZE entries per state. Once the
+     * automaton is built it is a complete transition table.
+     */
+    private final int[] transitions;
+
+    /**
+     * First pattern that ends in every state (-1 if no pattern ends there).
+     */
+    private final int[] terminalPattern;
+
+    /**
+     * Nearest state, following failure links, where at least one pattern ends
+     * (-1 if there is none).
+     */
+    private final int[] dictionaryLink;
+
+    /**
+     * Next pattern ending in the same state (-1 at the end of the chain).
+     */
+    private final int[] nextPattern;
+
+    /**
+     * Length of every pattern.
+     */
+    private final int[] patternLength;
+
+    /**
+     * Index, in the provided endonucleases list, of the endonuclease that owns
+     * every pattern.
+     */
+    private final int[] patternEndonuclease;
+
+    /**
+     * True for reverse complemented (antisense strand) patterns.
+     */
+    private final boolean[] patternAntisense;
+
+    // Constructor
+    /**
+     * Builds the automaton using the sense strand target of every provided
+     * endonuclease, and the reverse complemented target of the non palindromic
+     * ones. All of them must be compilable.
+     *
+     * @param endonucleases List of non regex endonucleases
+     * @see #isCompilable(Endonuclease)
+     */
+    public EndonucleaseAutomaton(List<Endonuclease> endonucleases) {
+        int patterns = 0;
+        int maxStates = 1;
+        for (Endonuclease e : endonucleases) {
+            if (!isCompilable(e)) {
+                throw new IllegalArgumentException("Endonuclease " + e.getEndonucleaseName()
+                        + " has a degenerated or empty target sequence");
+            }
+            int strands = e.getIsPalindromic() ? 1 : 2;
+            patterns += strands;
+            maxStates += strands * e.getEndonucleaseSimpleSenseTarget().length();
+        }
+        transitions = new int[maxStates * ALPHABET_SIZE];
+        terminalPattern = new int[maxStates];
+        dictionaryLink = new int[maxStates];
+        nextPattern = new int[patterns];
+        patternLength = new int[patterns];
+        patternEndonuclease = new int[patterns];
+        patternAntisense = new boolean[patterns];
+        Arrays.fill(transitions, -1);
+        Arrays.fill(terminalPattern, -1);
+        Arrays.fill(dictionaryLink, -1);
+
+        // Builds the trie with all the targets
+        int states = 1;
+        int p = 0;
+        for (int e = 0; e < endonucleases.size(); e++) {
+            String target = endonucleases.get(e).getEndonucleaseSimpleSenseTarget();
+            states = addPattern(target, p++, e, false, states);
+            if (!endonucleases.get(e).getIsPalindromic()) {
+                states = addPattern(reverseComplement(target), p++, e, true, states);
+            }
+        }
+        buildFailureLinks(states);
+    }
+
+    /**
+     * Checks if the endonuclease target can be compiled in the automaton, only
+     * non empty targets built with A, C, G and T bases can be compiled.
+     *
+     * @param endonuclease Endonuclease to check
+     * @return boolean true if the target can be compiled
+     */
+    public static boolean isCompilable(Endonuclease endonuclease) {
+        String target = endonuclease.getEndonucleaseSimpleSenseTarget();
+        if (endonuclease.getIsRegex() || target.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < target.length(); i++) {
+            if (baseCode(target.charAt(i)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the longest compiled target length.
+     *
+     * @return int longest target length
+     */
+    public int getMaxTargetLength() {
+        int max = 0;
+        for (int length : patternLength) {
+            max = Math.max(max, length);
+        }
+        return max;
+    }
+
+    /**
+     * Scans the whole sequence once, notifying every target found for every
+     * endonuclease.
+     *
+     * @param sequence DNA sequence to be analyzed
+     * @param listener TargetListener notified for every match
+     */
+    public void scan(CharSequence sequence, TargetListener listener) {
+        scan(sequence, 0, sequence.length(), listener);
+    }
+
+    /**
+     * Scans a region of the sequence, notifying every target that starts in
+     * it. Bases after the region are read only to complete targets starting
+     * inside it, so contiguous regions can be scanned separately without
+     * losing or repeating any target. Any base different from A, C, G or T
+     * breaks the current match, like it happens when fragments are compared
+     * one by one.
+     *
+     * @param sequence DNA sequence to be analyzed
+     * @param from first target position to be reported (included)
+     * @param to last target position to be reported (excluded)
+     * @param listener TargetListener notified for every match
+     */
+    public void scan(CharSequence sequence, int from, int to, TargetListener listener) {
+        int end = (int) Math.min(sequence.length(), (long) to + getMaxTargetLength() - 1);
+        int state = 0;
+        for (int i = from; i < end; i++) {
+            int code = baseCode(sequence.charAt(i));
+            if (code < 0) {
+                state = 0;
+                continue;
+            }
+            state = transitions[state * ALPHABET_SIZE + code];
+            int output = terminalPattern[state] != -1 ? state : dictionaryLink[state];
+            while (output != -1) {
+                for (int p = terminalPattern[output]; p != -1; p = nextPattern[p]) {
+                    int position = i - patternLength[p] + 1;
+                    if (position < to) {
+                        listener.targetFound(patternEndonuclease[p], position, patternAntisense[p]);
+                    }
+                }
+                output = dictionaryLink[output];
+            }
+        }
+    }
+
+    /**
+     * Adds a pattern to the trie.
+     *
+     * @param target pattern bases
+     * @param pattern pattern index
+     * @param endonuclease index of the endonuclease that owns the pattern
+     * @param antisense true for reverse complemented patterns
+     * @param states number of states in the trie
+     * @return int number of states after adding the pattern
+     */
+    private int addPattern(String target, int pattern, int endonuclease, boolean antisense, int states) {
+        int state = 0;
+        for (int i = 0; i < target.length(); i++) {
+            int slot = state * ALPHABET_SIZE + baseCode(target.charAt(i));
+            if (transitions[slot] == -1) {
+                transitions[slot] = states++;
+            }
+            state = transitions[slot];
+        }
+        nextPattern[pattern] = terminalPattern[state];
+        terminalPattern[state] = pattern;
+        patternLength[pattern] = target.length();
+        patternEndonuclease[pattern] = endonuclease;
+        patternAntisense[pattern] = antisense;
+        return states;
+    }
+
+    /**
+     * Returns the reverse complemented target, the antisense strand target
+     * read in the sense strand direction.
+     *
+     * @param target String with A, C, G and T bases (any case)
+     * @return String with the reverse complemented target
+     */
+    private static String reverseComplement(String target) {
+        char[] complement = new char[target.length()];
+        for (int i = 0; i < complement.length; i++) {
+            complement[complement.length - 1 - i] = "TGCA".charAt(baseCode(target.charAt(i)));
+        }
+        return new String(complement);
+    }
+
+    /**
+     * Completes the goto function and calculates failure and dictionary links
+     * using a breadth first traversal of the trie.
+     *
+     * @param states number of states in the trie
+     */
+    private void buildFailureLinks(int states) {
+        int[] failure = new int[states];
+        int[] queue = new int[states];
+        int head = 0, tail = 0;
+        for (int code = 0; code < ALPHABET_SIZE; code++) {
+            int next = transitions[code];
+            if (next == -1) {
+                transitions[code] = 0;
+            } else {
+                failure[next] = 0;
+                queue[tail++] = next;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            for (int code = 0; code < ALPHABET_SIZE; code++) {
+                int slot = state * ALPHABET_SIZE + code;
+                int next = transitions[slot];
+                int fallback = transitions[failure[state] * ALPHABET_SIZE + code];
+                if (next == -1) {
+                    transitions[slot] = fallback;
+                } else {
+                    failure[next] = fallback;
+                    dictionaryLink[next] = terminalPattern[fallback] != -1 ? fallback : dictionaryLink[fallback];
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the base code for a character.
+     *
+     * @param base char with the base
+     * @return int base code, -1 if it is not A, C, G or T
+     */
+    private static int baseCode(char base) {
+        return base < 128 ? BASE_CODES[base] : -1;
+    }
+}
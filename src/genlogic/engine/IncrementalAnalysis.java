@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2021 Luis Núñez Gómez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package genlogic.engine;
+
+import genlogic.model.DNASequence;
+import genlogic.model.Endonuclease;
+import genlogic.model.RestrictionSiteStore;
+import java.util.Arrays;
+
+/**
+ * Restriction analysis of a sequence that is being edited. The sequence is
+ * scanned once and the targets of every isoschizomers group are kept sorted
+ * by position. After an edit only the targets that can read an edited base
+ * are searched again: the ones starting in the edited region or up to
+ * (longest target length - 1) bases before it. The targets after the edit
+ * are moved by the length difference without reading the sequence, and the
+ * rest of them are kept.
+ * <p>
+ * Sites are updated the same way: the cleavage position of a target far
+ * from the ends of the sequence is its position plus a constant, so the
+ * sites of the kept targets are copied in blocks and the ones after the edit
+ * are moved. Only the targets near the edit or the ends of the sequence
+ * (where sites can fall out of linear sequences or cross the origin of
+ * circular ones) are turned into sites again.
+ * <p>
+ * The sequence must be edited through this object, so the analysis knows
+ * every edit.
+ *
+ * @author Luis Núñez Gómez
+ */
+public class IncrementalAnalysis {
+
+    /**
+     * Finder with the selected endonucleases.
+     */
+    private final RestrictionSiteFinder finder;
+
+    /**
+     * Analyzed sequence.
+     */
+    private final DNASequence sequence;
+
+    /**
+     * True if the sequence is circular.
+     */
+    private final boolean isCircular;
+
+    /**
+     * Longest distance from a target position to its last bp or its
+     * cleavage positions, plus one. Sites of targets farther than this from
+     * an edit and from the ends of the sequence don't change.
+     */
+    private final int reach;
+
+    /**
+     * Encoded targets of the groups, sorted by position.
+     */
+    private long[] targets;
+
+    /**
+     * Index of the first site of every target, the last value is the number
+     * of sites.
+     */
+    private int[] firstSites;
+
+    /**
+     * Cleavage sites of the current sequence.
+     */
+    private RestrictionSiteStore sites;
+
+    // Constructor
+    /**
+     * Analyzes the whole sequence. The targets cached by the finder are not
+     * searched again.
+     *
+     * @param finder RestrictionSiteFinder with the selected endonucleases
+     * @param sequence DNASequence object that will be edited
+     * @param isCircular true if the sequence is circular
+     */
+    public IncrementalAnalysis(RestrictionSiteFinder finder, DNASequence sequence, boolean isCircular) {
+        this(finder, sequence, isCircular, null, ScanMonitor.NONE);
+    }
+
+    /**
+     * Analyzes the whole sequence notifying every cleavage site as soon as it
+     * is found, like RestrictionSiteFinder.find() does, so the first analysis
+     * can be shown while it runs and then edited without analyzing the
+     * sequence again. The targets cached by the finder are not searched
+     * again. If the monitor cancels the analysis the sites are not complete,
+     * and the object should not be used.
+     *
+     * @param finder RestrictionSiteFinder with the selected endonucleases
+     * @param sequence DNASequence object that will be edited
+     * @param isCircular true if the sequence is circular
+     * @param listener CleavageListener notified for every cleavage site, null
+     * to only keep them
+     * @param monitor ScanMonitor that follows the analysis
+     */
+    public IncrementalAnalysis(RestrictionSiteFinder finder, DNASequence sequence, boolean isCircular,
+            CleavageListener listener, ScanMonitor monitor) {
+        this.finder = finder;
+        this.sequence = sequence;
+        this.isCircular = isCircular;
+        int longest = 0;
+        for (Endonuclease e : finder.getEndonucleases()) {
+            longest = Math.max(longest, Math.max(e.getEndonucleaseTargetLength(),
+                    Math.max(Math.abs(e.getEndonucleasesSenseStrandCuttingBp()), Math.abs(e.getEndonucleasesAntiSenseStrandCuttingBp()))));
+        }
+        this.reach = longest + 1;
+        this.targets = new long[0];
+        this.firstSites = new int[1];
+        this.sites = new RestrictionSiteStore(finder.getEndonucleases());
+        TargetScanner.TargetBuffer buffer = new TargetScanner.TargetBuffer();
+        int length = sequence.getIntLength();
+        CleavageListener members = listener == null ? null : finder.members(listener);
+        finder.findTargets(sequence, isCircular, (group, position, antisense) -> {
+            buffer.add(group, position, antisense);
+            if (members != null) {
+                finder.target(group, position, antisense, isCircular, length, members);
+            }
+        }, monitor);
+        long[] found = buffer.sorted();
+        update(found, 0, found.length, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Returns the analyzed sequence. It must not be edited directly.
+     *
+     * @return DNASequence object
+     */
+    public DNASequence getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the cleavage sites of the current sequence, sorted by target
+     * position like RestrictionSiteFinder.find() does. Every edit creates a
+     * new store, this one is not modified.
+     *
+     * @return RestrictionSiteStore with the cleavage sites
+     */
+    public RestrictionSiteStore getSites() {
+        return sites;
+    }
+
+    /**
+     * Replaces a region of the sequence with other bases and updates the
+     * analysis.
+     *
+     * @param start first replaced position, from 0 (included)
+     * @param end last replaced position (excluded)
+     * @param bases new bases
+     * @throws IndexOutOfBoundsException if the region is out of the sequence
+     */
+    public void replace(int start, int end, CharSequence bases) {
+        int oldLength = sequence.getIntLength();
+        sequence.replace(start, end, bases);
+        int length = sequence.getIntLength();
+        int delta = length - oldLength;
+        // Targets starting in from-to (new positions) can read the new bases
+        int from = start - Math.max(0, finder.getScanner().getMaxTargetLength() - 1);
+        int to = start + bases.length();
+        if (isCircular && (long) to - from >= length) {
+            analyze();
+            return;
+        }
+        // Kept targets: before the window, and after the edited bases
+        int before = firstTarget(Math.max(0, from));
+        int after = firstTarget(end);
+        // In circular sequences the window continues at the end, before the
+        // origin, where the moved targets are replaced too
+        int last = from < 0 && isCircular ? firstTarget(oldLength + from) : targets.length;
+        long[] window = scan(Math.max(0, from), to);
+        long[] wrapped = from < 0 && isCircular ? scan(length + from, length) : new long[0];
+        long[] updated = new long[before + window.length + (last - after) + wrapped.length];
+        System.arraycopy(targets, 0, updated, 0, before);
+        System.arraycopy(window, 0, updated, before, window.length);
+        long shift = (long) delta << 32;
+        int next = before + window.length;
+        for (int t = after; t < last; t++) {
+            updated[next++] = targets[t] + shift;
+        }
+        System.arraycopy(wrapped, 0, updated, next, wrapped.length);
+        update(updated, before, window.length, after, last - after, delta, start - reach, to + reach);
+    }
+
+    /**
+     * Inserts bases before a position and updates the analysis.
+     *
+     * @param position position of the first inserted base, from 0
+     * @param bases new bases
+     * @throws IndexOutOfBoundsException if the position is out of the
+     * sequence
+     */
+    public void insert(int position, CharSequence bases) {
+        replace(position, position, bases);
+    }
+
+    /**
+     * Deletes a region of the sequence and updates the analysis.
+     *
+     * @param start first deleted position, from 0 (included)
+     * @param end last deleted position (excluded)
+     * @throws IndexOutOfBoundsException if the region is out of the sequence
+     */
+    public void delete(int start, int end) {
+        replace(start, end, "");
+    }
+
+    /**
+     * Scans the whole sequence and turns every target into its sites. Edited
+     * sequences are not read from the cache nor added to it.
+     */
+    private void analyze() {
+        TargetScanner.TargetBuffer buffer = new TargetScanner.TargetBuffer();
+        finder.getScanner().scan(sequence.getBases(), isCircular, buffer::add);
+        long[] found = buffer.sorted();
+        update(found, 0, found.length, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Replaces the targets and builds their sites. The new targets are the
+     * first kept ones, then the new ones, then the moved ones (and after them
+     * the new ones before the origin of circular sequences). Sites of the
+     * kept and moved targets are copied from the current store, unless the
+     * targets are near the edit or the ends of the sequence.
+     *
+     * @param updated encoded targets of the edited sequence, sorted
+     * @param kept number of targets kept at the beginning
+     * @param found number of new targets after them
+     * @param movedFrom index of the first moved target in the current targets
+     * @param moved number of moved targets
+     * @param delta bp added to the moved positions
+     * @param editFrom first position whose targets are turned into sites
+     * again, around the edit
+     * @param editTo last position (excluded) whose targets are turned into
+     * sites again
+     */
+    private void update(long[] updated, int kept, int found, int movedFrom, int moved, int delta, int editFrom, int editTo) {
+        int length = sequence.getIntLength();
+        // Edits change few sites, the store is not trimmed
+        RestrictionSiteStore store = new RestrictionSiteStore(finder.getEndonucleases(), sites.size() + sites.size() / 64 + 64);
+        CleavageListener members = finder.members(store::add);
+        int[] starts = new int[updated.length + 1];
+        for (int t = 0; t < updated.length; ) {
+            // Index of the same target in the current targets, -1 for new ones
+            int source = t < kept ? t : t < kept + found || t >= kept + found + moved ? -1 : t - kept - found + movedFrom;
+            int position = TargetScanner.targetPosition(updated[t]);
+            if (source < 0 || position < reach || position >= length - reach || (position >= editFrom && position < editTo)) {
+                starts[t] = store.size();
+                finder.target(TargetScanner.targetEndonuclease(updated[t]), position,
+                        TargetScanner.targetIsAntisense(updated[t]), isCircular, length, members);
+                t++;
+                continue;
+            }
+            // Block of targets whose sites are copied with the same shift
+            int end = t < kept ? kept : kept + found + moved;
+            int bound = position < editFrom ? Math.min(editFrom, length - reach) : length - reach;
+            int limit = firstTarget(updated, t, end, bound);
+            int offset = store.size() - firstSites[source];
+            for (int s = source; s < source + limit - t; s++) {
+                starts[t + s - source] = firstSites[s] + offset;
+            }
+            store.addAll(sites, firstSites[source], firstSites[source + limit - t], t < kept ? 0 : delta);
+            t = limit;
+        }
+        starts[updated.length] = store.size();
+        this.targets = updated;
+        this.firstSites = starts;
+        this.sites = store;
+    }
+
+    /**
+     * Finds the first stored target starting at or after a position.
+     *
+     * @param position first target bp
+     * @return int target index, the number of targets if there is none
+     */
+    private int firstTarget(int position) {
+        return firstTarget(targets, 0, targets.length, position);
+    }
+
+    /**
+     * Finds the first target of a range starting at or after a position.
+     *
+     * @param encoded encoded targets sorted by position
+     * @param from first index searched (included)
+     * @param to last index searched (excluded)
+     * @param position first target bp
+     * @return int target index, to if there is none
+     */
+    private static int firstTarget(long[] encoded, int from, int to, int position) {
+        int index = Arrays.binarySearch(encoded, from, to, TargetScanner.encodeTarget(0, position, false));
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Finds the targets starting in a region of the edited sequence.
+     *
+     * @param from first target position (included)
+     * @param to last target position (excluded)
+     * @return long[] encoded targets sorted by position
+     */
+    private long[] scan(int from, int to) {
+        TargetScanner.TargetBuffer buffer = new TargetScanner.TargetBuffer();
+        if (from < to) {
+            finder.getScanner().scan(sequence.getBases(), isCircular, from, to, buffer::add);
+        }
+        return buffer.sorted();
+    }
+}
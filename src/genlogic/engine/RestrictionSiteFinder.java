@@ -0,0 +1,565 @@
+/*
+ * Copyright (C) 2021 Luis Núñez Gómez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package genlogic.engine;
+
+import genlogic.model.DNASequence;
+import genlogic.model.Endonuclease;
+import genlogic.model.RegexEndonuclease;
+import genlogic.model.RestrictionSite;
+import genlogic.model.RestrictionSiteStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Headless restriction analysis, it finds the cleavage sites of a list of
+ * endonucleases in DNA sequences without any JavaFX dependency, so it can be
+ * used by the GUI, the command line or any other program. The endonucleases
+ * are compiled once, so the same finder can analyze any number of sequences.
+ * <p>
+ * Isoschizomers (endonucleases with the same target, cleavage positions and
+ * palindromic and regex flags) are grouped, every group is scanned once and
+ * its sites are notified for every member.
+ *
+ * @author Luis Núñez Gómez
+ */
+public class RestrictionSiteFinder {
+
+    /**
+     * Size of the first region scanned by cuts(), next regions double their
+     * size up to the maximum. The endonucleases that have cut are removed
+     * after every region, so frequent cutters are dropped early and long
+     * sequences need few scanner rebuilds.
+     */
+    private static final int FIRST_EXISTENCE_REGION = 4 * 1024, MAX_EXISTENCE_REGION = 16 * 1024 * 1024;
+
+    /**
+     * Endonucleases used in the analysis.
+     */
+    private final List<Endonuclease> endonucleases;
+
+    /**
+     * First endonuclease of every isoschizomers group, the scanner indexes
+     * refer to this list.
+     */
+    private final List<Endonuclease> groups;
+
+    /**
+     * Start of every group in groupMembers, the last value is the number of
+     * endonucleases.
+     */
+    private final int[] groupStarts;
+
+    /**
+     * Endonuclease indexes sorted by group.
+     */
+    private final int[] groupMembers;
+
+    /**
+     * Scanner with one target per isoschizomers group.
+     */
+    private final TargetScanner scanner;
+
+    /**
+     * Cache with the targets of previous analyses, null if the finder always
+     * scans.
+     */
+    private AnalysisCache cache;
+
+    // Constructor
+    /**
+     * Groups the isoschizomers and compiles the target of every group.
+     *
+     * @param endonucleases List of endonucleases
+     */
+    public RestrictionSiteFinder(List<Endonuclease> endonucleases) {
+        this.endonucleases = new ArrayList<>(endonucleases);
+        Map<String, Integer> groupIndexes = new HashMap<>();
+        int[] memberGroups = new int[this.endonucleases.size()];
+        this.groups = new ArrayList<>();
+        for (int i = 0; i < memberGroups.length; i++) {
+            Endonuclease e = this.endonucleases.get(i);
+            Integer group = groupIndexes.putIfAbsent(groupKey(e), groups.size());
+            if (group == null) {
+                group = groups.size();
+                groups.add(e);
+            }
+            memberGroups[i] = group;
+        }
+        // Members are sorted by group keeping the endonucleases order
+        this.groupStarts = new int[groups.size() + 1];
+        for (int group : memberGroups) {
+            groupStarts[group + 1]++;
+        }
+        for (int g = 0; g < groups.size(); g++) {
+            groupStarts[g + 1] += groupStarts[g];
+        }
+        this.groupMembers = new int[memberGroups.length];
+        int[] next = Arrays.copyOf(groupStarts, groups.size());
+        for (int i = 0; i < memberGroups.length; i++) {
+            groupMembers[next[memberGroups[i]]++] = i;
+        }
+        this.scanner = new TargetScanner(groups);
+    }
+
+    /**
+     * Returns the endonucleases used in the analysis.
+     *
+     * @return List of endonucleases
+     */
+    public List<Endonuclease> getEndonucleases() {
+        return endonucleases;
+    }
+
+    /**
+     * Returns the number of isoschizomers groups, the number of targets that
+     * are really scanned.
+     *
+     * @return int number of groups
+     */
+    public int getGroupCount() {
+        return groups.size();
+    }
+
+    /**
+     * Returns the scanner, so its parallel settings can be changed.
+     *
+     * @return TargetScanner object
+     */
+    public TargetScanner getScanner() {
+        return scanner;
+    }
+
+    /**
+     * Returns the cache with the targets of previous analyses.
+     *
+     * @return AnalysisCache object, null if there is none
+     */
+    public AnalysisCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Sets the cache with the targets of previous analyses. The targets of
+     * the cached groups are read from it and only the rest of them are
+     * scanned, then they are added to the cache. The same cache can be shared
+     * by several finders.
+     *
+     * @param cache AnalysisCache object, null to always scan
+     */
+    public void setCache(AnalysisCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Analyzes the sequence and returns the cleavage sites sorted by target
+     * position, stored in columns.
+     *
+     * @param sequence DNASequence object to be analyzed
+     * @param isCircular true if the sequence is circular
+     * @return RestrictionSiteStore with the found cleavage sites
+     */
+    public RestrictionSiteStore find(DNASequence sequence, boolean isCircular) {
+        RestrictionSiteStore sites = new RestrictionSiteStore(endonucleases);
+        find(sequence, isCircular, (index, position, antisense) -> sites.add(index, position, antisense), ScanMonitor.NONE);
+        sites.trimToSize();
+        return sites;
+    }
+
+    /**
+     * Analyzes the sequence and delivers every cleavage site as soon as it is
+     * found, sorted by target position.
+     *
+     * @param sequence DNASequence object to be analyzed
+     * @param isCircular true if the sequence is circular
+     * @param siteConsumer Consumer that receives every cleavage site
+     */
+    public void find(DNASequence sequence, boolean isCircular, Consumer<RestrictionSite> siteConsumer) {
+        find(sequence, isCircular, siteConsumer, ScanMonitor.NONE);
+    }
+
+    /**
+     * Analyzes the sequence delivering every cleavage site as soon as it is
+     * found, and reporting the progress to the monitor.
+     *
+     * @param sequence DNASequence object to be analyzed
+     * @param isCircular true if the sequence is circular
+     * @param siteConsumer Consumer that receives every cleavage site
+     * @param monitor ScanMonitor that follows the analysis
+     */
+    public void find(DNASequence sequence, boolean isCircular, Consumer<RestrictionSite> siteConsumer, ScanMonitor monitor) {
+        find(sequence, isCircular, (index, position, antisense)
+                -> siteConsumer.accept(new RestrictionSite(endonucleases.get(index), position, antisense)), monitor);
+    }
+
+    /**
+     * Analyzes the sequence notifying every cleavage site as soon as it is
+     * found, sorted by target position, without creating any object per site.
+     * The sites of a group are notified for all its members, in the
+     * endonucleases order.
+     * Sense and antisense targets are found in one pass over the sequence, and
+     * circular sequences are read with modular indexing, so the sites crossing
+     * the origin are found by the last windows of the same pass. If the
+     * monitor cancels the analysis it stops after the current batch of
+     * positions.
+     * <p>
+     * With a cache, the groups already cached are not scanned: their targets
+     * are merged in order with the ones of the scanned groups.
+     *
+     * @param sequence DNASequence object to be analyzed
+     * @param isCircular true if the sequence is circular
+     * @param listener CleavageListener notified for every cleavage site
+     * @param monitor ScanMonitor that follows the analysis
+     */
+    public void find(DNASequence sequence, boolean isCircular, CleavageListener listener, ScanMonitor monitor) {
+        int sequenceLength = sequence.getIntLength();
+        CleavageListener members = members(listener);
+        findTargets(sequence, isCircular, (group, position, antisense)
+                -> target(group, position, antisense, isCircular, sequenceLength, members), monitor);
+    }
+
+    /**
+     * Finds the targets of every isoschizomers group, sorted by position.
+     * With a cache, the groups already cached are read from it and only the
+     * rest of them are scanned.
+     *
+     * @param sequence DNASequence object to be analyzed
+     * @param isCircular true if the sequence is circular
+     * @param listener TargetListener notified for every target with its group
+     * index
+     * @param monitor ScanMonitor that follows the analysis
+     */
+    void findTargets(DNASequence sequence, boolean isCircular, TargetListener listener, ScanMonitor monitor) {
+        if (cache != null) {
+            findCached(sequence, isCircular, listener, monitor);
+        } else {
+            scanner.scan(sequence.getBases(), isCircular, listener, monitor);
+        }
+    }
+
+    /**
+     * Counts the cleavage sites of every endonuclease without storing them.
+     *
+     * @param sequence DNASequence object to be analyzed
+     * @param isCircular true if the sequence is circular
+     * @return int[] with the number of cleavage sites of every endonuclease,
+     * in the endonucleases list order
+     */
+    public int[] count(DNASequence sequence, boolean isCircular) {
+        int sequenceLength = sequence.getIntLength();
+        int[] groupCounts = new int[groups.size()];
+        CleavageListener counter = (index, cleavage, strand) -> groupCounts[index]++;
+        findTargets(sequence, isCircular, (group, position, antisense)
+                -> target(group, position, antisense, isCircular, sequenceLength, counter), ScanMonitor.NONE);
+        int[] counts = new int[endonucleases.size()];
+        for (int g = 0; g < groups.size(); g++) {
+            for (int m = groupStarts[g]; m < groupStarts[g + 1]; m++) {
+                counts[groupMembers[m]] = groupCounts[g];
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Analyzes the sequence and returns the cleavage positions of every
+     * endonuclease, sorted and distinct, ready to be merged in digests.
+     *
+     * @param sequence DNASequence object to be analyzed
+     * @param isCircular true if the sequence is circular
+     * @return int[][] with the cleavage positions of every endonuclease, in
+     * the endonucleases list order
+     */
+    public int[][] cutPositions(DNASequence sequence, boolean isCircular) {
+        return Digest.cutPositions(find(sequence, isCircular), sequence.getIntLength(), isCircular);
+    }
+
+    /**
+     * Digests the sequence with all the endonucleases.
+     *
+     * @param sequence DNASequence object to be digested
+     * @param isCircular true if the sequence is circular
+     * @return Digest object with the fragments
+     */
+    public Digest digest(DNASequence sequence, boolean isCircular) {
+        return new Digest(Digest.merge(cutPositions(sequence, isCircular)), sequence.getIntLength(), isCircular);
+    }
+
+    /**
+     * Checks which endonucleases cut the sequence. The sequence is scanned in
+     * growing regions and the endonucleases that have already cut are not
+     * searched in the next regions, so the scan stops as soon as all of them
+     * have cut.
+     *
+     * @param sequence DNASequence object to be analyzed
+     * @param isCircular true if the sequence is circular
+     * @return boolean[] true for the endonucleases that cut the sequence, in
+     * the endonucleases list order
+     */
+    public boolean[] cuts(DNASequence sequence, boolean isCircular) {
+        boolean[] groupCuts = new boolean[groups.size()];
+        CharSequence bases = sequence.getBases();
+        int sequenceLength = bases.length();
+        int[] pending = new int[groups.size()];
+        for (int i = 0; i < pending.length; i++) {
+            pending[i] = i;
+        }
+        TargetScanner pendingScanner = scanner;
+        int region = FIRST_EXISTENCE_REGION;
+        boolean[] found = new boolean[1];
+        for (int from = 0; from < sequenceLength && pending.length > 0; ) {
+            int to = (int) Math.min(sequenceLength, (long) from + region);
+            int[] indexes = pending;
+            found[0] = false;
+            pendingScanner.scan(bases, isCircular, from, to, (index, position, antisense)
+                    -> target(indexes[index], position, antisense, isCircular, sequenceLength, (cutter, cleavage, strand) -> {
+                        if (!groupCuts[cutter]) {
+                            groupCuts[cutter] = true;
+                            found[0] = true;
+                        }
+                    }));
+            from = to;
+            region = Math.min(MAX_EXISTENCE_REGION, region * 2);
+            if (found[0]) {
+                // Rebuilds the scanner without the endonucleases that have cut
+                pending = Arrays.stream(pending).filter(i -> !groupCuts[i]).toArray();
+                if (pending.length > 0) {
+                    pendingScanner = scanner(pending);
+                }
+            }
+        }
+        boolean[] cuts = new boolean[endonucleases.size()];
+        for (int g = 0; g < groups.size(); g++) {
+            for (int m = groupStarts[g]; m < groupStarts[g + 1]; m++) {
+                cuts[groupMembers[m]] = groupCuts[g];
+            }
+        }
+        return cuts;
+    }
+
+    /**
+     * Finds the targets reading the cached groups from the cache and
+     * scanning the rest of them. Targets are notified in the same order as
+     * a full scan, and the scanned ones are cached unless the analysis is
+     * cancelled.
+     *
+     * @param sequence DNASequence object to be analyzed
+     * @param isCircular true if the sequence is circular
+     * @param listener TargetListener that receives the targets with the group
+     * indexes
+     * @param monitor ScanMonitor that follows the scan of the uncached groups
+     */
+    private void findCached(DNASequence sequence, boolean isCircular, TargetListener listener, ScanMonitor monitor) {
+        AnalysisCache cache = this.cache;
+        int sequenceLength = sequence.getIntLength();
+        String contentHash = sequence.getContentHash();
+        String[] keys = new String[groups.size()];
+        long[][] cachedTargets = new long[groups.size()][];
+        int cachedCount = 0, pendingCount = 0;
+        for (int g = 0; g < keys.length; g++) {
+            keys[g] = groupKey(groups.get(g));
+            cachedTargets[g] = cache.get(contentHash, isCircular, keys[g]);
+            if (cachedTargets[g] != null) {
+                cachedCount += cachedTargets[g].length;
+            } else {
+                pendingCount++;
+            }
+        }
+        // Cached targets of all the groups, encoded with their group index so
+        // they sort like the scanned ones
+        long[] cached = new long[cachedCount];
+        int[] pending = new int[pendingCount];
+        for (int g = 0, c = 0, p = 0; g < keys.length; g++) {
+            if (cachedTargets[g] == null) {
+                pending[p++] = g;
+                continue;
+            }
+            for (long target : cachedTargets[g]) {
+                cached[c++] = TargetScanner.encodeTarget(g, TargetScanner.targetPosition(target), TargetScanner.targetIsAntisense(target));
+            }
+        }
+        Arrays.sort(cached);
+        int[] next = new int[1];
+        if (pending.length > 0) {
+            TargetScanner.TargetBuffer[] found = new TargetScanner.TargetBuffer[pending.length];
+            for (int p = 0; p < found.length; p++) {
+                found[p] = new TargetScanner.TargetBuffer();
+            }
+            TargetScanner pendingScanner = pending.length == groups.size() ? scanner : scanner(pending);
+            pendingScanner.scan(sequence.getBases(), isCircular, (index, position, antisense) -> {
+                int group = pending[index];
+                // Cached targets before this one go first
+                long encoded = TargetScanner.encodeTarget(group, position, antisense);
+                for (; next[0] < cached.length && cached[next[0]] < encoded; next[0]++) {
+                    target(cached[next[0]], listener);
+                }
+                found[index].add(0, position, antisense);
+                listener.targetFound(group, position, antisense);
+            }, monitor);
+            if (monitor.isCancelled()) {
+                return;
+            }
+            for (int p = 0; p < pending.length; p++) {
+                cache.put(contentHash, isCircular, keys[pending[p]], found[p].sorted());
+            }
+        }
+        for (; next[0] < cached.length; next[0]++) {
+            target(cached[next[0]], listener);
+        }
+        if (pending.length == 0) {
+            monitor.basesScanned(sequenceLength, sequenceLength);
+        }
+    }
+
+    /**
+     * Notifies an encoded target.
+     *
+     * @param encoded target encoded with its group index
+     * @param listener TargetListener that receives the target with the group
+     * index
+     */
+    private static void target(long encoded, TargetListener listener) {
+        listener.targetFound(TargetScanner.targetEndonuclease(encoded), TargetScanner.targetPosition(encoded),
+                TargetScanner.targetIsAntisense(encoded));
+    }
+
+    /**
+     * Returns a listener that notifies the sites of a group for all its
+     * members, in the endonucleases order.
+     *
+     * @param listener CleavageListener that receives the endonuclease indexes
+     * @return CleavageListener that receives the group indexes
+     */
+    CleavageListener members(CleavageListener listener) {
+        return (group, position, antisense) -> {
+            for (int m = groupStarts[group]; m < groupStarts[group + 1]; m++) {
+                listener.cleavageFound(groupMembers[m], position, antisense);
+            }
+        };
+    }
+
+    /**
+     * Returns the key that identifies the isoschizomers of an endonuclease:
+     * everything the scan and the cleavage positions depend on.
+     *
+     * @param e Endonuclease object
+     * @return String key, equal for isoschizomers
+     */
+    static String groupKey(Endonuclease e) {
+        String target = e instanceof RegexEndonuclease
+                ? "regex:" + ((RegexEndonuclease) e).getDegeneratedTarget()
+                : e.getEndonucleaseSimpleSenseTarget();
+        return target + '|' + e.getEndonucleaseTargetLength() + '|' + e.getEndonucleasesSenseStrandCuttingBp()
+                + '|' + e.getEndonucleasesAntiSenseStrandCuttingBp() + '|' + e.getIsPalindromic() + '|' + e.getIsRegex();
+    }
+
+    /**
+     * Creates a scanner for some of the groups, with the same parallel
+     * settings.
+     *
+     * @param indexes group indexes
+     * @return TargetScanner object, its indexes refer to the indexes array
+     */
+    private TargetScanner scanner(int[] indexes) {
+        List<Endonuclease> selected = new ArrayList<>(indexes.length);
+        for (int index : indexes) {
+            selected.add(groups.get(index));
+        }
+        TargetScanner selectedScanner = new TargetScanner(selected);
+        selectedScanner.setMinimumChunkSize(scanner.getMinimumChunkSize());
+        selectedScanner.setPool(scanner.getPool());
+        return selectedScanner;
+    }
+
+    /**
+     * Turns a target into its cleavage site, if the cleavage bp is inside the
+     * sequence.
+     *
+     * @param index group index
+     * @param position first target bp
+     * @param antisense true if the target is in the antisense strand
+     * @param isCircular true if the sequence is circular
+     * @param sequenceLength DNA sequence length
+     * @param listener CleavageListener that receives the cleavage site with
+     * the group index
+     */
+    void target(int index, int position, boolean antisense, boolean isCircular, int sequenceLength, CleavageListener listener) {
+        Endonuclease e = groups.get(index);
+        if (!antisense) {
+            senseStrandAnalysis(index, position, e, isCircular, sequenceLength, listener);
+        } else {
+            // Antisense fragments are numbered from the end of the sequence,
+            // crossing the origin of circular sequences they continue from the end
+            antiSenseStrandAnalysis(index, Math.floorMod((sequenceLength - position) - e.getEndonucleaseTargetLength(), sequenceLength),
+                    e, isCircular, sequenceLength, listener);
+        }
+    }
+
+    /**
+     * Notifies an antisense strand match. It also checks if the cleavage bp
+     * is out of the sequence's limits, or in the beginning of the sequence
+     * for circular sequences. The cleavage position is calculated in the
+     * sense strand.
+     *
+     * @param index endonuclease index
+     * @param j Indicates the antisense fragment position of the match
+     * @param e Endonuclease used in the current analysis
+     * @param isCircular Indicates if the DNA sequence is circular
+     * @param length DNA sequence length
+     * @param listener CleavageListener that receives the cleavage site
+     */
+    private static void antiSenseStrandAnalysis(int index, int j, Endonuclease e, boolean isCircular, int length, CleavageListener listener) {
+        // If the sequence is not circular and the cutting bp is not out of the sequence's limit
+        if (!isCircular && ((length - (j + e.getEndonucleasesAntiSenseStrandCuttingBp()) > 0))) {
+            listener.cleavageFound(index, length - (j + e.getEndonucleasesAntiSenseStrandCuttingBp()), true);
+        } else if (isCircular) {
+            if ((j + e.getEndonucleasesSenseStrandCuttingBp()) >= length) {
+                // If j is bigger or equal than sequence's lenght, the cleavage point is in the begining of the sequence
+                j -= length;
+            }
+            listener.cleavageFound(index, length - (j + e.getEndonucleasesAntiSenseStrandCuttingBp()), true);
+        }
+    }
+
+    /**
+     * Notifies a sense strand match. It also checks if the cleavage bp is out
+     * of the sequence's limits, or in the beginning of the sequence for
+     * circular sequences.
+     *
+     * @param index endonuclease index
+     * @param i Indicates the position of the match in the sequence
+     * @param e Endonuclease used in the current analysis
+     * @param isCircular Indicates if the DNA sequence is circular
+     * @param length DNA sequence length
+     * @param listener CleavageListener that receives the cleavage site
+     */
+    private static void senseStrandAnalysis(int index, int i, Endonuclease e, boolean isCircular, int length, CleavageListener listener) {
+        // If the sequence is not circular and the cutting bp is not out of the sequence's limit
+        if (!isCircular && ((i + e.getEndonucleasesSenseStrandCuttingBp()) < length)) {
+            listener.cleavageFound(index, i + e.getEndonucleasesSenseStrandCuttingBp(), false);
+            // If the sequence is circular we don't need to check if the cutting bp is out of the sequence's limits
+        } else if (isCircular) {
+            // If i+j is bigger or equal than sequence's lenght, the cleavage point is in the begining of the sequence
+            if ((i + e.getEndonucleasesSenseStrandCuttingBp()) >= length) {
+                i -= length;
+            }
+            listener.cleavageFound(index, i + e.getEndonucleasesSenseStrandCuttingBp(), false);
+        }
+    }
+}
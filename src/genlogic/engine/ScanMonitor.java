@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2021 Luis Núñez Gómez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package genlogic.engine;
+
+/**
+ * Monitor of a running scan. The scanner reports its progress through it and
+ * asks it, between batches of positions, if the scan has to be stopped.
+ *
+ * @author Luis Núñez Gómez
+ */
+public interface ScanMonitor {
+
+    /**
+     * Monitor for scans that are never cancelled and whose progress is not
+     * needed.
+     */
+    ScanMonitor NONE = new ScanMonitor() {
+        @Override
+        public void basesScanned(long scanned, long total) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    /**
+     * Called after every batch of positions, once all its targets have been
+     * notified.
+     *
+     * @param scanned number of positions already scanned (for all the
+     * endonucleases at once)
+     * @param total number of positions to scan
+     */
+    void basesScanned(long scanned, long total);
+
+    /**
+     * Checked before every batch of positions.
+     *
+     * @return boolean true to stop the scan
+     */
+    boolean isCancelled();
+}
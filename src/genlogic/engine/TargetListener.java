@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2021 Luis Núñez Gómez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package genlogic.engine;
+
+/**
+ * Listener notified every time an endonuclease target is found in a scanned
+ * sequence.
+ *
+ * @author Luis Núñez Gómez
+ */
+public interface TargetListener {
+
+    /**
+     * Called once for every target found.
+     *
+     * @param endonucleaseIndex index of the endonuclease in the list used to
+     * build the scanner
+     * @param position numeric position of the first target bp in the sequence
+     * (5'->3')
+     * @param antisense true if the target is in the antisense strand
+     */
+    void targetFound(int endonucleaseIndex, int position, boolean antisense);
+}
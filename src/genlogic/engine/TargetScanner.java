@@ -0,0 +1,624 @@
+/*
+ * Copyright (C) 2021 Luis Núñez Gómez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package genlogic.engine;
+
+import genlogic.model.Endonuclease;
+import genlogic.model.PackedNucleotides;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class finds the targets of a list of endonucleases in a DNA sequence.
+ * Non degenerated targets are compiled in a single EndonucleaseAutomaton and
+ * the rest of them get their own DegenerateTargetMatcher. Long sequences are
+ * split in chunks that are scanned in parallel in a ForkJoinPool, every chunk
+ * reads (longest target length - 1) extra bases after its end so targets
+ * crossing a boundary are found once, by the chunk where they start. Circular
+ * sequences are read with modular indexing, so targets crossing the origin are
+ * found by the last windows of the same pass. Targets are notified in
+ * batches of positions, so long scans deliver their first targets early,
+ * report their progress and can be cancelled between batches.
+ *
+ * @author Luis Núñez Gómez
+ */
+public class TargetScanner {
+
+    /**
+     * Default minimum chunk size, sequences shorter than two chunks are
+     * scanned in the calling thread.
+     */
+    public static final int DEFAULT_MINIMUM_CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * Automaton with all the non degenerated targets, null if there are none.
+     */
+    private final EndonucleaseAutomaton automaton;
+
+    /**
+     * Index in the endonucleases list for every automaton endonuclease.
+     */
+    private final int[] automatonIndexes;
+
+    /**
+     * Matchers for the endonucleases that cannot be compiled in the automaton.
+     */
+    private final DegenerateTargetMatcher[] matchers;
+
+    /**
+     * Index in the endonucleases list for every matcher.
+     */
+    private final int[] matcherIndexes;
+
+    /**
+     * Target length of every endonuclease.
+     */
+    private final int[] targetLengths;
+
+    /**
+     * Longest target length.
+     */
+    private final int maxTargetLength;
+
+    /**
+     * Minimum number of target positions scanned by every parallel task.
+     */
+    private int minimumChunkSize = DEFAULT_MINIMUM_CHUNK_SIZE;
+
+    /**
+     * Pool used for parallel scans.
+     */
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    // Constructor
+    /**
+     * Compiles the targets of all the provided endonucleases.
+     *
+     * @param endonucleases List of endonucleases
+     */
+    public TargetScanner(List<Endonuclease> endonucleases) {
+        List<Endonuclease> compilable = new ArrayList<>();
+        List<Integer> compilableIndexes = new ArrayList<>();
+        List<DegenerateTargetMatcher> degenerated = new ArrayList<>();
+        List<Integer> degeneratedIndexes = new ArrayList<>();
+        this.targetLengths = new int[endonucleases.size()];
+        int max = 0;
+        for (int i = 0; i < endonucleases.size(); i++) {
+            Endonuclease e = endonucleases.get(i);
+            if (EndonucleaseAutomaton.isCompilable(e)) {
+                compilable.add(e);
+                compilableIndexes.add(i);
+            } else {
+                degenerated.add(new DegenerateTargetMatcher(e));
+                degeneratedIndexes.add(i);
+            }
+            targetLengths[i] = e.getEndonucleaseTargetLength();
+            max = Math.max(max, targetLengths[i]);
+        }
+        this.automaton = compilable.isEmpty() ? null : new EndonucleaseAutomaton(compilable);
+        this.automatonIndexes = toArray(compilableIndexes);
+        this.matchers = degenerated.toArray(new DegenerateTargetMatcher[0]);
+        this.matcherIndexes = toArray(degeneratedIndexes);
+        this.maxTargetLength = max;
+    }
+
+    /**
+     * Returns the longest target length.
+     *
+     * @return int longest target length
+     */
+    public int getMaxTargetLength() {
+        return maxTargetLength;
+    }
+
+    /**
+     * Returns the minimum chunk size for parallel scans.
+     *
+     * @return int minimum number of target positions per chunk
+     */
+    public int getMinimumChunkSize() {
+        return minimumChunkSize;
+    }
+
+    /**
+     * Sets the minimum chunk size for parallel scans. Sequences shorter than
+     * two chunks (like most plasmids) are scanned in the calling thread.
+     *
+     * @param minimumChunkSize minimum number of target positions per chunk
+     */
+    public void setMinimumChunkSize(int minimumChunkSize) {
+        if (minimumChunkSize < 1) {
+            throw new IllegalArgumentException("Minimum chunk size must be positive: " + minimumChunkSize);
+        }
+        this.minimumChunkSize = minimumChunkSize;
+    }
+
+    /**
+     * Returns the pool used for parallel scans.
+     *
+     * @return ForkJoinPool object
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Sets the pool used for parallel scans.
+     *
+     * @param pool ForkJoinPool object
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Finds all the targets in the sequence and notifies them in the calling
+     * thread, sorted by position. Targets in the same position are notified
+     * following the endonucleases list order, sense strand first.
+     *
+     * @param sequence DNA sequence to be analyzed
+     * @param listener TargetListener notified for every match
+     */
+    public void scan(CharSequence sequence, TargetListener listener) {
+        scan(sequence, false, listener);
+    }
+
+    /**
+     * Finds all the targets in a linear or circular sequence and notifies them
+     * in the calling thread, sorted by position. In circular sequences there
+     * is a window starting at every position, the last (target length - 1)
+     * ones continue at the beginning of the sequence, and targets longer than
+     * the sequence are never reported.
+     *
+     * @param sequence DNA sequence to be analyzed
+     * @param isCircular true if the sequence is circular
+     * @param listener TargetListener notified for every match
+     */
+    public void scan(CharSequence sequence, boolean isCircular, TargetListener listener) {
+        scan(sequence, isCircular, listener, ScanMonitor.NONE);
+    }
+
+    /**
+     * Finds all the targets in a linear or circular sequence like
+     * scan(CharSequence, boolean, TargetListener) does, reporting the progress
+     * to the monitor after every batch of positions. If the monitor cancels
+     * the scan, it returns before the next batch.
+     *
+     * @param sequence DNA sequence to be analyzed
+     * @param isCircular true if the sequence is circular
+     * @param listener TargetListener notified for every match
+     * @param monitor ScanMonitor notified after every batch
+     */
+    public void scan(CharSequence sequence, boolean isCircular, TargetListener listener, ScanMonitor monitor) {
+        int length = sequence.length();
+        int junction = junction(length, isCircular);
+        long batch = 2L * minimumChunkSize * Math.max(1, pool.getParallelism());
+        for (int start = 0; start < length; ) {
+            if (monitor.isCancelled()) {
+                return;
+            }
+            int end = start < junction ? (int) Math.min(junction, start + batch) : length;
+            scan(sequence, isCircular, start, end, listener);
+            monitor.basesScanned(end, length);
+            start = end;
+        }
+    }
+
+    /**
+     * Finds the targets starting in a region of a linear or circular sequence
+     * and notifies them in the calling thread, sorted by position. Scanning
+     * consecutive regions notifies the same targets as scanning the whole
+     * sequence.
+     *
+     * @param sequence DNA sequence to be analyzed
+     * @param isCircular true if the sequence is circular
+     * @param from first target position (included)
+     * @param to last target position (excluded)
+     * @param listener TargetListener notified for every match
+     */
+    public void scan(CharSequence sequence, boolean isCircular, int from, int to, TargetListener listener) {
+        int length = sequence.length();
+        int junction = junction(length, isCircular);
+        if (from < junction) {
+            int end = Math.min(junction, to);
+            notifyTargets(scan(sequence, from, end), length, listener);
+            from = end;
+        }
+        if (from < to) {
+            notifyTargets(scan(new CircularSequence(sequence, maxTargetLength), from, to), length, listener);
+        }
+    }
+
+    /**
+     * Returns the first position whose windows reach the end of a circular
+     * sequence, windows before it are read without modular indexing.
+     *
+     * @param length sequence length
+     * @param isCircular true if the sequence is circular
+     * @return int junction position (the length for linear sequences)
+     */
+    private int junction(int length, boolean isCircular) {
+        return isCircular ? Math.max(0, length - maxTargetLength + 1) : length;
+    }
+
+    /**
+     * Notifies sorted targets, skipping the targets longer than the sequence.
+     *
+     * @param targets encoded targets sorted by position
+     * @param length sequence length
+     * @param listener TargetListener notified for every match
+     */
+    private void notifyTargets(long[] targets, int length, TargetListener listener) {
+        for (long target : targets) {
+            int endonucleaseIndex = targetEndonuclease(target);
+            if (targetLengths[endonucleaseIndex] <= length) {
+                listener.targetFound(endonucleaseIndex, targetPosition(target), targetIsAntisense(target));
+            }
+        }
+    }
+
+    /**
+     * Finds the targets starting in a region of the sequence. The region is
+     * split in parallel tasks if it is at least twice the minimum chunk size.
+     *
+     * @param sequence DNA sequence to be analyzed
+     * @param from first target position (included)
+     * @param to last target position (excluded)
+     * @return long[] encoded targets sorted by position
+     */
+    private long[] scan(CharSequence sequence, int from, int to) {
+        ChunkScan task = new ChunkScan(sequence, from, to);
+        if ((long) to - from < 2L * minimumChunkSize) {
+            return task.compute();
+        }
+        return pool.invoke(task);
+    }
+
+    /**
+     * Scans a single chunk with the automaton and every matcher.
+     *
+     * @param sequence DNA sequence to be analyzed
+     * @param from first target position (included)
+     * @param to last target position (excluded)
+     * @return long[] encoded targets sorted by position
+     */
+    private long[] scanChunk(CharSequence sequence, int from, int to) {
+        // Bases read by the chunk are decoded once, the automaton and every
+        // matcher read the same region again
+        int end = (int) Math.min(sequence.length(), (long) to + maxTargetLength - 1);
+        sequence = new DecodedRegion(sequence, from, Math.max(from, end));
+        TargetBuffer buffer = new TargetBuffer();
+        if (automaton != null) {
+            automaton.scan(sequence, from, to, (index, position, antisense)
+                    -> buffer.add(automatonIndexes[index], position, antisense));
+        }
+        for (int m = 0; m < matchers.length; m++) {
+            int endonucleaseIndex = matcherIndexes[m];
+            matchers[m].scan(sequence, from, to, (index, position, antisense)
+                    -> buffer.add(endonucleaseIndex, position, antisense));
+        }
+        return buffer.sorted();
+    }
+
+    /**
+     * Copies a region of a sequence into a char array, decoding packed
+     * sequences in blocks instead of base by base.
+     *
+     * @param sequence DNA sequence
+     * @param start first position (included)
+     * @param end last position (excluded)
+     * @param dst destination array
+     * @param dstBegin first position written in the destination array
+     */
+    static void getChars(CharSequence sequence, int start, int end, char[] dst, int dstBegin) {
+        if (sequence instanceof PackedNucleotides) {
+            ((PackedNucleotides) sequence).getChars(start, end, dst, dstBegin);
+        } else if (sequence instanceof String) {
+            ((String) sequence).getChars(start, end, dst, dstBegin);
+        } else if (sequence instanceof CircularSequence) {
+            ((CircularSequence) sequence).getChars(start, end, dst, dstBegin);
+        } else {
+            for (int i = start; i < end; i++) {
+                dst[dstBegin + i - start] = sequence.charAt(i);
+            }
+        }
+    }
+
+    /**
+     * Encodes a target in a long value that sorts by position, then by
+     * endonuclease index and then by strand.
+     *
+     * @param endonucleaseIndex index in the endonucleases list
+     * @param position first target bp
+     * @param antisense true for antisense targets
+     * @return long encoded target
+     */
+    static long encodeTarget(int endonucleaseIndex, int position, boolean antisense) {
+        return ((long) position << 32) | ((long) endonucleaseIndex << 1) | (antisense ? 1L : 0L);
+    }
+
+    /**
+     * Returns the position of an encoded target.
+     *
+     * @param target encoded target
+     * @return int first target bp
+     */
+    static int targetPosition(long target) {
+        return (int) (target >>> 32);
+    }
+
+    /**
+     * Returns the endonuclease index of an encoded target.
+     *
+     * @param target encoded target
+     * @return int index in the endonucleases list
+     */
+    static int targetEndonuclease(long target) {
+        return (int) (target & 0xFFFFFFFFL) >>> 1;
+    }
+
+    /**
+     * Returns the strand of an encoded target.
+     *
+     * @param target encoded target
+     * @return boolean true for antisense targets
+     */
+    static boolean targetIsAntisense(long target) {
+        return (target & 1L) != 0;
+    }
+
+    /**
+     * Copies a list of indexes to an array.
+     *
+     * @param indexes List of integers
+     * @return int[] with the same values
+     */
+    private static int[] toArray(List<Integer> indexes) {
+        int[] array = new int[indexes.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = indexes.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * Fork/join task that splits a region in halves until they reach the
+     * minimum chunk size, and then joins their targets keeping the order.
+     */
+    private class ChunkScan extends RecursiveTask<long[]> {
+
+        /**
+         * Serialization attribute.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * DNA sequence to be analyzed.
+         */
+        private final CharSequence sequence;
+
+        /**
+         * Region limits (first position included, last one excluded).
+         */
+        private final int from, to;
+
+        /**
+         * Task constructor.
+         *
+         * @param sequence DNA sequence to be analyzed
+         * @param from first target position (included)
+         * @param to last target position (excluded)
+         */
+        ChunkScan(CharSequence sequence, int from, int to) {
+            this.sequence = sequence;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[] compute() {
+            if ((long) to - from < 2L * minimumChunkSize) {
+                return scanChunk(sequence, from, to);
+            }
+            int middle = (int) (((long) from + to) >>> 1);
+            ChunkScan left = new ChunkScan(sequence, from, middle);
+            ChunkScan right = new ChunkScan(sequence, middle, to);
+            left.fork();
+            long[] rightTargets = right.compute();
+            long[] leftTargets = left.join();
+            // Every left target starts before every right target
+            long[] targets = Arrays.copyOf(leftTargets, leftTargets.length + rightTargets.length);
+            System.arraycopy(rightTargets, 0, targets, leftTargets.length, rightTargets.length);
+            return targets;
+        }
+    }
+
+    /**
+     * Circular view of a sequence, positions after its end continue at the
+     * beginning. It is (longest target length - 1) bases longer than the
+     * sequence, so every window starting inside the sequence can be read.
+     */
+    private static class CircularSequence implements CharSequence {
+
+        /**
+         * Circular DNA sequence.
+         */
+        private final CharSequence sequence;
+
+        /**
+         * Circular sequence length.
+         */
+        private final int sequenceLength;
+
+        /**
+         * View length.
+         */
+        private final int length;
+
+        /**
+         * View constructor.
+         *
+         * @param sequence circular DNA sequence (not empty)
+         * @param maxTargetLength longest target length
+         */
+        CircularSequence(CharSequence sequence, int maxTargetLength) {
+            this.sequence = sequence;
+            this.sequenceLength = sequence.length();
+            this.length = (int) Math.min(Integer.MAX_VALUE, (long) sequenceLength + Math.max(0, maxTargetLength - 1));
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return sequence.charAt(index < sequenceLength ? index : index % sequenceLength);
+        }
+
+        /**
+         * Copies a region of the view into a char array, splitting it where
+         * it continues at the beginning of the sequence.
+         *
+         * @param start first position (included)
+         * @param end last position (excluded)
+         * @param dst destination array
+         * @param dstBegin first position written in the destination array
+         */
+        void getChars(int start, int end, char[] dst, int dstBegin) {
+            while (start < end) {
+                int offset = start % sequenceLength;
+                int count = Math.min(end - start, sequenceLength - offset);
+                TargetScanner.getChars(sequence, offset, offset + count, dst, dstBegin);
+                start += count;
+                dstBegin += count;
+            }
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            char[] region = new char[end - start];
+            getChars(start, end, region, 0);
+            return new String(region);
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length).toString();
+        }
+    }
+
+    /**
+     * Decoded copy of the region read by a chunk. It keeps the positions and
+     * the length of the whole sequence, only the region can be read.
+     */
+    private static class DecodedRegion implements CharSequence {
+
+        /**
+         * Decoded region bases.
+         */
+        private final char[] bases;
+
+        /**
+         * First position of the region.
+         */
+        private final int start;
+
+        /**
+         * Whole sequence length.
+         */
+        private final int length;
+
+        /**
+         * Decodes a region of the sequence.
+         *
+         * @param sequence DNA sequence
+         * @param start first position (included)
+         * @param end last position (excluded)
+         */
+        DecodedRegion(CharSequence sequence, int start, int end) {
+            this.bases = new char[end - start];
+            this.start = start;
+            this.length = sequence.length();
+            getChars(sequence, start, end, bases, 0);
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return bases[index - start];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(bases, start - this.start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(start, start + bases.length).toString();
+        }
+    }
+
+    /**
+     * Growable buffer of encoded targets.
+     */
+    static class TargetBuffer {
+
+        /**
+         * Encoded targets.
+         */
+        private long[] targets = new long[64];
+
+        /**
+         * Number of targets stored.
+         */
+        private int size;
+
+        /**
+         * Stores a target.
+         *
+         * @param endonucleaseIndex index in the endonucleases list
+         * @param position first target bp
+         * @param antisense true for antisense targets
+         */
+        void add(int endonucleaseIndex, int position, boolean antisense) {
+            if (size == targets.length) {
+                targets = Arrays.copyOf(targets, size * 2);
+            }
+            targets[size++] = encodeTarget(endonucleaseIndex, position, antisense);
+        }
+
+        /**
+         * Returns the stored targets sorted.
+         *
+         * @return long[] encoded targets sorted by position
+         */
+        long[] sorted() {
+            long[] result = Arrays.copyOf(targets, size);
+            Arrays.sort(result);
+            return result;
+        }
+    }
+}
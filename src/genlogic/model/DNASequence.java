@@ -17,6 +17,8 @@
 package genlogic.model;
 
 import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -43,17 +45,25 @@ public class DNASequence implements Serializable {
      */
     private String information;
     /**
-     * Atribute with the nucleotid sequence as String.
+     * Atribute with the nucleotid sequence, packed using 2 bits per base or
+     * read from a memory mapped FASTA file. Once the sequence is edited it is
+     * kept as a piece table over those bases.
      */
-    private String sequence;
+    private CharSequence sequence;
     /**
      * Atribute with the total sequence length.
      */
     private float length;
     /**
-     * Atribute with nucleotids percentages in the sequence.
+     * Atribute with nucleotids percentages in the sequence, calculated the
+     * first time they are requested.
      */
-    private Map<String, Float> percentages = new HashMap<>();
+    private Map<String, Float> percentages;
+    /**
+     * Atribute with the SHA-256 hash of the bases, calculated the first time
+     * it is requested.
+     */
+    private transient String contentHash;
     /**
      * Serialization atribute.
      */
@@ -61,15 +71,20 @@ public class DNASequence implements Serializable {
 
     // Constructors
     /**
-     * Only sequence given constructor.
+     * Only sequence given constructor. The sequence is packed unless it has
+     * been already packed, it is a memory mapped sequence or an edited one.
      *
      * @param sequence DNA sequence
      */
-    public DNASequence(String sequence) {
-        this.sequence = sequence;
+    public DNASequence(CharSequence sequence) {
+        if (sequence instanceof PackedNucleotides || sequence instanceof MappedNucleotides
+                || sequence instanceof EditableNucleotides) {
+            this.sequence = sequence;
+        } else {
+            this.sequence = new PackedNucleotides(sequence);
+        }
         this.length = sequence.length();
         this.information = "No information provided";
-        this.percentages = nucleotidePercentageAnalyzer(sequence);
         this.internalID = idCounter();
     }
 
@@ -81,7 +96,7 @@ public class DNASequence implements Serializable {
      * header
      * @param sequence DNA sequence
      */
-    public DNASequence(String information, String sequence) {
+    public DNASequence(String information, CharSequence sequence) {
         this(sequence);
         this.information = information;
     }
@@ -105,11 +120,23 @@ public class DNASequence implements Serializable {
     }
 
     /**
-     * Method to access the DNA sequence object sequence.
+     * Method to access the DNA sequence object sequence. The String is built
+     * from the packed bases on every call, analysis code should read them
+     * through getBases() instead.
      * 
      * @return String with the DNA sequence
      */
     public String getSequence() {
+        return sequence.toString();
+    }
+
+    /**
+     * Method to read the DNA sequence bases directly from the packed or mapped
+     * form, without building a String.
+     * 
+     * @return CharSequence with the DNA sequence
+     */
+    public CharSequence getBases() {
         return sequence;
     }
     
@@ -123,14 +150,60 @@ public class DNASequence implements Serializable {
     }
     
     /**
-     * Method to get the DNA sequence length parsed as int for visual purposes.
+     * Method to get the exact DNA sequence length, read from the bases. The
+     * float length is not exact over 16,777,216 bp, so analysis code must use
+     * this one.
      * 
      * @return DNA sequence length integer
      */
     public int getIntLength(){
-        return (int)length;
+        return sequence.length();
     }
     
+    /**
+     * Replaces a region of the sequence with other bases. Only the pieces
+     * around the edit change, the rest of the bases are not copied.
+     * Restriction sites of an edited sequence can be updated with an
+     * IncrementalAnalysis instead of analyzing it again.
+     *
+     * @param start first replaced position, from 0 (included)
+     * @param end last replaced position (excluded)
+     * @param bases new bases
+     * @throws IndexOutOfBoundsException if the region is out of the sequence
+     */
+    public void replace(int start, int end, CharSequence bases) {
+        if (!(sequence instanceof EditableNucleotides)) {
+            sequence = new EditableNucleotides(sequence);
+        }
+        ((EditableNucleotides) sequence).replace(start, end, bases);
+        length = sequence.length();
+        percentages = null;
+        contentHash = null;
+    }
+
+    /**
+     * Inserts bases before a position.
+     *
+     * @param position position of the first inserted base, from 0
+     * @param bases new bases
+     * @throws IndexOutOfBoundsException if the position is out of the
+     * sequence
+     */
+    public void insert(int position, CharSequence bases) {
+        replace(position, position, bases);
+    }
+
+    /**
+     * Deletes a region of the sequence.
+     *
+     * @param start first deleted position, from 0 (included)
+     * @param end last deleted position (excluded)
+     * @throws IndexOutOfBoundsException if the region is out of the sequence
+     */
+    public void delete(int start, int end) {
+        replace(start, end, "");
+    }
+
     /**
      * Method to get the total amount of DNA sequences loaded.
      * 
@@ -141,14 +214,53 @@ public class DNASequence implements Serializable {
     }
     
     /**
-     * Returns percentages for each nucleotide type.
+     * Returns percentages for each nucleotide type. They are calculated on the
+     * first call, so loading huge sequences does not need to read them.
      * 
      * @return Map<String nucleotide name, Float percentage>
      */
     public Map<String, Float> getPercentage(){
+        if (percentages == null) {
+            percentages = nucleotidePercentageAnalyzer(sequence);
+        }
         return percentages;
     }
     
+    /**
+     * Returns the SHA-256 hash of the bases, in hexadecimal. Sequences with
+     * the same bases have the same hash whatever their information or the
+     * way they are stored, so it identifies the analysis results of the
+     * sequence. It is calculated on the first call and after every edit.
+     *
+     * @return String with the content hash
+     */
+    public String getContentHash() {
+        if (contentHash == null) {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException ex) {
+                // Every Java platform has SHA-256
+                throw new IllegalStateException(ex);
+            }
+            byte[] buffer = new byte[8192];
+            int sequenceLength = sequence.length();
+            for (int i = 0; i < sequenceLength; i += buffer.length) {
+                int count = Math.min(buffer.length, sequenceLength - i);
+                for (int j = 0; j < count; j++) {
+                    buffer[j] = (byte) sequence.charAt(i + j);
+                }
+                digest.update(buffer, 0, count);
+            }
+            StringBuilder hash = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hash.append(String.format("%02x", b));
+            }
+            contentHash = hash.toString();
+        }
+        return contentHash;
+    }
+
     /**
      * This method increases the total amount counter of DNA sequece objects.
      * 
@@ -162,14 +274,15 @@ public class DNASequence implements Serializable {
     /**
      * Analyzes the DNA sequence nucleotides percentages.
      * 
-     * @param sequence String DNA sequence
+     * @param sequence CharSequence DNA sequence
      * @return Map with sequence nucleotides percentages
      */
-    private Map<String, Float> nucleotidePercentageAnalyzer(String sequence) {
+    private Map<String, Float> nucleotidePercentageAnalyzer(CharSequence sequence) {
+        Map<String, Float> percentages = new HashMap<>();
         int totalA = 0, totalC = 0, totalG = 0, totalT = 0, totalOthers = 0;
         
-        for (char c : sequence.toCharArray()) {
-            switch (c) {
+        for (int i = 0; i < sequence.length(); i++) {
+            switch (sequence.charAt(i)) {
                 case 'A':
                     ++totalA;
                     break;
@@ -199,7 +312,7 @@ public class DNASequence implements Serializable {
     public String toString() {
         String toStringSequenceFormatter;
         if(sequence.length()>90){
-            toStringSequenceFormatter = (String.format("5' %.90s... 3'", this.sequence));
+            toStringSequenceFormatter = (String.format("5' %.90s... 3'", this.sequence.subSequence(0, 90)));
         }else{
             toStringSequenceFormatter = (String.format("5' %s 3'", this.sequence));
         }
@@ -208,7 +321,7 @@ public class DNASequence implements Serializable {
                 +"--------------\n"
                 +"Internal program id: %s \n"
                 + "Information: %s \n"
-                + "Sequence length: %.0f bp\n"
+                + "Sequence length: %d bp\n"
                 + "DNA sequence (showing 90 bp max): \n"
                 + toStringSequenceFormatter+"\n"
                 + "Adenine: %.2f%% \n"
@@ -218,9 +331,9 @@ public class DNASequence implements Serializable {
                 + "Others*: %.2f%% "
                 + "*(several FASTA formats could include variable nucleotid "
                 + "combinations as characters) \n",
-                 this.internalID, this.information,this.length ,
-                 percentages.get("Adenine"), percentages.get("Cytosine"), 
-                 percentages.get("Guanine"), percentages.get("Thymine"), 
-                 percentages.get("Others"));
+                 this.internalID, this.information, getIntLength(),
+                 getPercentage().get("Adenine"), getPercentage().get("Cytosine"), 
+                 getPercentage().get("Guanine"), getPercentage().get("Thymine"), 
+                 getPercentage().get("Others"));
     }
 }
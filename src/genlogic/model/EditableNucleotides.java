@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2021 Luis Núñez Gómez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package genlogic.model;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Editable nucleotide sequence stored as a piece table: the original bases
+ * (packed or memory mapped) are never modified, inserted bases are appended
+ * to an add buffer and the sequence is the list of pieces of both that are
+ * read in order. Replacing, inserting or deleting bases only splits the
+ * pieces around the edit, so edits don't copy the bases of long sequences.
+ * <p>
+ * Pieces are found with a binary search over their start positions, and the
+ * last piece read is remembered, so sequential reads (like scans) don't
+ * search at all. Once there are too many pieces the sequence is packed again
+ * into a single piece.
+ *
+ * @author Luis Núñez Gómez
+ */
+public final class EditableNucleotides implements CharSequence, Serializable {
+
+    /**
+     * Maximum number of pieces before the sequence is packed again.
+     */
+    private static final int MAX_PIECES = 4096;
+
+    /**
+     * Original bases.
+     */
+    private CharSequence original;
+
+    /**
+     * Inserted bases, only appended.
+     */
+    private final StringBuilder added = new StringBuilder();
+
+    /**
+     * Start position of every piece in the sequence, the last value is the
+     * sequence length.
+     */
+    private int[] starts;
+
+    /**
+     * Position of every piece in its source (the original bases or the add
+     * buffer).
+     */
+    private int[] offsets;
+
+    /**
+     * True for the pieces read from the add buffer.
+     */
+    private boolean[] isAdded;
+
+    /**
+     * Number of pieces.
+     */
+    private int pieces;
+
+    /**
+     * Last piece read, only a hint for the next read (it can be read by
+     * several scanning threads at the same time).
+     */
+    private int lastPiece;
+
+    /**
+     * Serialization attribute.
+     */
+    private static final long serialVersionUID = 5830294717L;
+
+    // Constructor
+    /**
+     * Creates an editable sequence with the original bases in a single piece.
+     *
+     * @param original original bases, they are never modified
+     */
+    public EditableNucleotides(CharSequence original) {
+        reset(original);
+    }
+
+    @Override
+    public int length() {
+        return starts[pieces];
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= starts[pieces]) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + starts[pieces]);
+        }
+        int piece = lastPiece;
+        if (piece >= pieces || index < starts[piece] || index >= starts[piece + 1]) {
+            piece = piece(index);
+            lastPiece = piece;
+        }
+        int position = offsets[piece] + index - starts[piece];
+        return isAdded[piece] ? added.charAt(position) : original.charAt(position);
+    }
+
+    /**
+     * Returns the requested region as a String.
+     *
+     * @param start first position (included)
+     * @param end last position (excluded)
+     * @return String with the region bases
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length());
+        }
+        char[] region = new char[end - start];
+        for (int i = start; i < end; i++) {
+            region[i - start] = charAt(i);
+        }
+        return new String(region);
+    }
+
+    /**
+     * Builds the whole sequence as a String.
+     *
+     * @return String with the sequence
+     */
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+
+    /**
+     * Returns the number of pieces the sequence is made of.
+     *
+     * @return int number of pieces
+     */
+    public int getPieces() {
+        return pieces;
+    }
+
+    /**
+     * Replaces a region with other bases, in upper case. Inserting is
+     * replacing an empty region, and deleting is replacing a region with no
+     * bases.
+     *
+     * @param start first replaced position (included)
+     * @param end last replaced position (excluded)
+     * @param bases new bases
+     * @throws IndexOutOfBoundsException if the region is out of the sequence
+     */
+    public void replace(int start, int end, CharSequence bases) {
+        int length = length();
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+        }
+        if ((long) length - (end - start) + bases.length() > Integer.MAX_VALUE - 8) {
+            throw new IndexOutOfBoundsException("sequence too long");
+        }
+        // Up to 2 new pieces: the inserted bases and the rest of a split piece
+        int[] newStarts = new int[pieces + 3];
+        int[] newOffsets = new int[pieces + 2];
+        boolean[] newIsAdded = new boolean[pieces + 2];
+        // Pieces before the edit, the one containing the start is cut
+        int first = start == length ? pieces : piece(start);
+        System.arraycopy(starts, 0, newStarts, 0, first);
+        System.arraycopy(offsets, 0, newOffsets, 0, first);
+        System.arraycopy(isAdded, 0, newIsAdded, 0, first);
+        int count = first;
+        if (first < pieces && starts[first] < start) {
+            newStarts[count] = starts[first];
+            newOffsets[count] = offsets[first];
+            newIsAdded[count++] = isAdded[first];
+        }
+        if (bases.length() > 0) {
+            int offset = added.length();
+            for (int i = 0; i < bases.length(); i++) {
+                added.append(Character.toUpperCase(bases.charAt(i)));
+            }
+            // Bases typed one after another extend the same piece
+            if (count > 0 && newIsAdded[count - 1] && newOffsets[count - 1] + (start - newStarts[count - 1]) == offset) {
+                count--;
+            } else {
+                newStarts[count] = start;
+                newOffsets[count] = offset;
+                newIsAdded[count] = true;
+            }
+            count++;
+        }
+        // Pieces after the edit, the one containing the end is cut
+        int delta = bases.length() - (end - start);
+        int last = end == length ? pieces : piece(end);
+        if (last < pieces && starts[last] < end) {
+            newStarts[count] = end + delta;
+            newOffsets[count] = offsets[last] + end - starts[last];
+            newIsAdded[count++] = isAdded[last];
+            last++;
+        }
+        for (int p = last; p < pieces; p++) {
+            newStarts[count] = starts[p] + delta;
+            newOffsets[count] = offsets[p];
+            newIsAdded[count++] = isAdded[p];
+        }
+        newStarts[count] = length + delta;
+        this.starts = newStarts;
+        this.offsets = newOffsets;
+        this.isAdded = newIsAdded;
+        this.pieces = count;
+        this.lastPiece = 0;
+        if (pieces > MAX_PIECES) {
+            reset(new PackedNucleotides(this));
+        }
+    }
+
+    /**
+     * Starts again with a single piece.
+     *
+     * @param bases original bases
+     */
+    private void reset(CharSequence bases) {
+        this.original = bases;
+        this.added.setLength(0);
+        this.pieces = bases.length() > 0 ? 1 : 0;
+        this.starts = new int[]{0, bases.length()};
+        this.offsets = new int[1];
+        this.isAdded = new boolean[1];
+        this.lastPiece = 0;
+    }
+
+    /**
+     * Finds the piece containing a position.
+     *
+     * @param index position in the sequence
+     * @return int piece index
+     */
+    private int piece(int index) {
+        int piece = Arrays.binarySearch(starts, 0, pieces, index);
+        // Not found: the piece is the one before the insertion point
+        return piece >= 0 ? piece : -piece - 2;
+    }
+
+    /**
+     * Edited sequences are serialized packed, as a single piece.
+     *
+     * @return PackedNucleotides object with the same bases
+     * @throws ObjectStreamException never
+     */
+    private Object writeReplace() throws ObjectStreamException {
+        return new PackedNucleotides(this);
+    }
+}
@@ -54,9 +54,9 @@ public class Endonuclease implements Serializable {
 
     /**
      * Attribute that contains the endonuclease simplified anti sense
-     * strandtarget (no cutting point).
+     * strandtarget (no cutting point). It is built on first use.
      */
-    protected String endonucleaseSimpleAntiSenseTarget;
+    protected transient String endonucleaseSimpleAntiSenseTarget;
 
     /**
      * Attribute that contains the endonuclease target sequence and the cutting
@@ -104,29 +104,31 @@ public class Endonuclease implements Serializable {
     protected boolean isRegex;
 
     /**
-     * Visual simplified representation for the sense strand target.
+     * Visual simplified representation for the sense strand target. Visual
+     * representations are only used by the views, so they are built on first
+     * use and they are not saved in dat files.
      */
-    protected String visualEndonucleaseTarget;
+    protected transient String visualEndonucleaseTarget;
 
     /**
      * Visual simplified representation for the antisense strand target.
      */
-    protected String visualEndonucleaseAntiTarget;
+    protected transient String visualEndonucleaseAntiTarget;
 
     /**
      * Visual representation for the sense strand target with the cutting bp.
      */
-    protected String endonucleaseCleavageRepresentation;
+    protected transient String endonucleaseCleavageRepresentation;
 
     /**
      * Visual representation for the antisense strand target with the cutting bp.
      */
-    protected String endonucleaseAntiCleavageRepresentation;
+    protected transient String endonucleaseAntiCleavageRepresentation;
     
     /**
      * Visual representation for the resulting overhang for the endonuclase.
      */
-    protected String endonucleaseOverhang;
+    protected transient String endonucleaseOverhang;
 
     /**
      * Attribute for serialization.
@@ -149,7 +151,6 @@ public class Endonuclease implements Serializable {
         this.endonucleaseName = name;
         this.endonucleaseOrigin = "No origin info provided";
         this.endonucleaseSimpleSenseTarget = endonucleaseSimpleSenseTarget;
-        this.endonucleaseSimpleAntiSenseTarget = antiTargetSequence(endonucleaseSimpleSenseTarget);
         this.senseStrandStringTarget = senseStrandStringTarget;
         this.antiSenseStrandStringTarget = antiSenseStrandStringTarget;
         this.endonucleasesSenseStrandCuttingBp = cuttingPositionFinder(senseStrandStringTarget);
@@ -158,11 +159,6 @@ public class Endonuclease implements Serializable {
         this.endonucleaseTargetLength = endonucleaseSimpleSenseTarget.length();
         this.isPalindromic = palindromic;
         this.isRegex = regex;
-        this.visualEndonucleaseTarget = visual53Generator(endonucleaseSimpleSenseTarget, false);
-        this.visualEndonucleaseAntiTarget = visual53Generator(antiTargetSequence(endonucleaseSimpleSenseTarget), true);
-        this.endonucleaseCleavageRepresentation = visual53Generator(senseStrandStringTarget, false);
-        this.endonucleaseAntiCleavageRepresentation = visual53Generator(antiSenseStrandStringTarget, true);
-        this.endonucleaseOverhang = overhangGenerator(senseStrandStringTarget, antiSenseStrandStringTarget, this.endonucleasesSenseStrandCuttingBp, this.endonucleasesAntiSenseStrandCuttingBp);
     }
 
     /**
@@ -218,6 +214,24 @@ public class Endonuclease implements Serializable {
         return endonucleaseSimpleSenseTarget;
     }
 
+    /**
+     * Returns the target sequence with the cleavage point (^).
+     * 
+     * @return String sense strand target with cleavage bp
+     */
+    public String getSenseStrandStringTarget() {
+        return senseStrandStringTarget;
+    }
+
+    /**
+     * Returns the anti sense target sequence with the cleavage point (^).
+     * 
+     * @return String anti sense strand target with cleavage bp
+     */
+    public String getAntiSenseStrandStringTarget() {
+        return antiSenseStrandStringTarget;
+    }
+
     /**
      * Returns the target's sequence length.
      * 
@@ -269,6 +283,9 @@ public class Endonuclease implements Serializable {
      * @return String visual target representation
      */
     public String getVisualEndonucleaseTarget() {
+        if (visualEndonucleaseTarget == null) {
+            visualEndonucleaseTarget = visual53Generator(endonucleaseSimpleSenseTarget, false);
+        }
         return visualEndonucleaseTarget;
     }
 
@@ -278,6 +295,9 @@ public class Endonuclease implements Serializable {
      * @return String visual antitarget representation
      */
     public String getVisualEndonucleaseAntiTarget() {
+        if (visualEndonucleaseAntiTarget == null) {
+            visualEndonucleaseAntiTarget = visual53Generator(simpleAntiSenseTarget(), true);
+        }
         return visualEndonucleaseAntiTarget;
     }
 
@@ -288,6 +308,9 @@ public class Endonuclease implements Serializable {
      * @return String visual cleavage site representation
      */
     public String getEndonucleaseCleavageRepresentation() {
+        if (endonucleaseCleavageRepresentation == null) {
+            endonucleaseCleavageRepresentation = visual53Generator(senseStrandStringTarget, false);
+        }
         return endonucleaseCleavageRepresentation;
     }
 
@@ -298,6 +321,9 @@ public class Endonuclease implements Serializable {
      * @return String visual anti cleavage site representation
      */
     public String getEndonucleaseAntiCleavageRepresentation() {
+        if (endonucleaseAntiCleavageRepresentation == null) {
+            endonucleaseAntiCleavageRepresentation = visual53Generator(antiSenseStrandStringTarget, true);
+        }
         return endonucleaseAntiCleavageRepresentation;
     }
     
@@ -307,7 +333,24 @@ public class Endonuclease implements Serializable {
      * @return String visual overhang representation
      */
     public String getEndonucleaseOverhang(){
-     return endonucleaseOverhang; 
+        if (endonucleaseOverhang == null) {
+            endonucleaseOverhang = overhangGenerator(senseStrandStringTarget, antiSenseStrandStringTarget,
+                    endonucleasesSenseStrandCuttingBp, endonucleasesAntiSenseStrandCuttingBp);
+        }
+        return endonucleaseOverhang;
+    }
+
+    /**
+     * Returns the antisense strand target without cleavage point, it is built
+     * on first use.
+     * 
+     * @return String with the antisense strand sequence
+     */
+    private String simpleAntiSenseTarget() {
+        if (endonucleaseSimpleAntiSenseTarget == null) {
+            endonucleaseSimpleAntiSenseTarget = antiTargetSequence(endonucleaseSimpleSenseTarget);
+        }
+        return endonucleaseSimpleAntiSenseTarget;
     }
     
     /**
@@ -404,9 +447,10 @@ public class Endonuclease implements Serializable {
         if(senseStrandCutPosition == antiSenseStrandCutPostion){
             overhang = new StringBuilder("Blunt");
         }else if(senseStrandCutPosition > antiSenseStrandCutPostion){
-           overhang = new StringBuilder(senseStrandStringTarget.replaceAll("^", "").substring(antiSenseStrandCutPostion ,senseStrandCutPosition)+"-3'");
+           // The cleavage point (^) is always after the substring
+           overhang = new StringBuilder(senseStrandStringTarget.substring(antiSenseStrandCutPostion ,senseStrandCutPosition)+"-3'");
         }else{
-            overhang = new StringBuilder((antiSenseStrandStringTarget.replaceAll("^", "").substring(senseStrandCutPosition, antiSenseStrandCutPostion))).reverse();
+            overhang = new StringBuilder((antiSenseStrandStringTarget.substring(senseStrandCutPosition, antiSenseStrandCutPostion))).reverse();
             overhang.insert(0, "5'-");
         }
         return overhang.toString();
@@ -425,8 +469,8 @@ public class Endonuclease implements Serializable {
                 +"Overhang: %s",
                  this.endonucleaseName, this.endonucleaseOrigin,
                 this.endonucleaseSimpleSenseTarget, this.endonucleaseTargetLength, 
-                this.endonucleaseSimpleAntiSenseTarget, this.endonucleaseCleavageRepresentation, 
-                this.endonucleasesSenseStrandCuttingBp, this.endonucleaseOverhang);
+                simpleAntiSenseTarget(), getEndonucleaseCleavageRepresentation(), 
+                this.endonucleasesSenseStrandCuttingBp, getEndonucleaseOverhang());
     }
     
     /**
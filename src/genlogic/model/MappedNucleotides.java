@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2021 Luis Núñez Gómez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package genlogic.model;
+
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class reads the bases of a FASTA record directly from a memory mapped
+ * file, so the sequence is never loaded in the heap. Record lines must have
+ * the same length (except the last one), like FASTA index files require, so
+ * the position of every base is calculated skipping the line breaks. Bases
+ * are returned in upper case.
+ *
+ * @author Luis Núñez Gómez
+ */
+public final class MappedNucleotides implements CharSequence, Serializable {
+
+    /**
+     * Bits used to address a byte inside a mapped segment (1 GB segments).
+     */
+    private static final int SEGMENT_BITS = 30;
+
+    /**
+     * Mask to get the position of a byte inside its segment.
+     */
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+    /**
+     * Mapped file segments, shared by all the records of the file.
+     */
+    private final transient ByteBuffer[] file;
+
+    /**
+     * Position of the first record base in the file.
+     */
+    private final long offset;
+
+    /**
+     * Index of the first base of this view in the record (0 unless it is a
+     * region of the record).
+     */
+    private final int first;
+
+    /**
+     * Total number of bases.
+     */
+    private final int length;
+
+    /**
+     * Number of bases in every full line.
+     */
+    private final int lineBases;
+
+    /**
+     * Number of bytes in every full line, line break included.
+     */
+    private final int lineBytes;
+
+    /**
+     * Serialization attribute.
+     */
+    private static final long serialVersionUID = 2957310846L;
+
+    // Constructor
+    /**
+     * Creates a view of a FASTA record.
+     *
+     * @param file mapped file segments
+     * @param offset position of the first base in the file
+     * @param length total number of bases
+     * @param lineBases number of bases in every full line
+     * @param lineBytes number of bytes in every full line, line break
+     * included
+     * @see #map(FileChannel)
+     */
+    public MappedNucleotides(ByteBuffer[] file, long offset, int length, int lineBases, int lineBytes) {
+        this(file, offset, 0, length, lineBases, lineBytes);
+        if (length > 0 && (lineBases < 1 || lineBytes < lineBases)) {
+            throw new IllegalArgumentException("Wrong line layout: " + lineBases + " bases, " + lineBytes + " bytes");
+        }
+    }
+
+    /**
+     * Creates a view of a record region.
+     *
+     * @param file mapped file segments
+     * @param offset position of the first record base in the file
+     * @param first index of the first base of the view in the record
+     * @param length number of bases of the view
+     * @param lineBases number of bases in every full line
+     * @param lineBytes number of bytes in every full line, line break
+     * included
+     */
+    private MappedNucleotides(ByteBuffer[] file, long offset, int first, int length, int lineBases, int lineBytes) {
+        this.file = file;
+        this.offset = offset;
+        this.first = first;
+        this.length = length;
+        this.lineBases = Math.max(1, lineBases);
+        this.lineBytes = Math.max(1, lineBytes);
+    }
+
+    /**
+     * Maps a whole file in read only segments. The mapping stays valid after
+     * the channel has been closed.
+     *
+     * @param channel FileChannel of the file
+     * @return ByteBuffer[] mapped segments
+     * @throws IOException if the file cannot be mapped
+     */
+    public static ByteBuffer[] map(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int segments = (int) ((size + SEGMENT_MASK) >>> SEGMENT_BITS);
+        ByteBuffer[] file = new ByteBuffer[segments];
+        for (int s = 0; s < segments; s++) {
+            long start = (long) s << SEGMENT_BITS;
+            file[s] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_MASK + 1, size - start));
+        }
+        return file;
+    }
+
+    /**
+     * Reads a byte of a mapped file.
+     *
+     * @param file mapped file segments
+     * @param position position in the file
+     * @return int byte value (0 to 255)
+     */
+    public static int byteAt(ByteBuffer[] file, long position) {
+        return file[(int) (position >>> SEGMENT_BITS)].get((int) (position & SEGMENT_MASK)) & 0xFF;
+    }
+
+    /**
+     * Returns a view of a region, without reading its bases.
+     *
+     * @param start first position (included)
+     * @param end last position (excluded)
+     * @return MappedNucleotides view of the region
+     */
+    public MappedNucleotides region(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+        }
+        return new MappedNucleotides(file, offset, first + start, end - start, lineBases, lineBytes);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        }
+        int base = first + index;
+        int b = byteAt(file, offset + (long) (base / lineBases) * lineBytes + base % lineBases);
+        return (char) (b >= 'a' && b <= 'z' ? b - ('a' - 'A') : b);
+    }
+
+    /**
+     * Returns the requested region as a String.
+     *
+     * @param start first position (included)
+     * @param end last position (excluded)
+     * @return String with the region bases
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+        }
+        char[] region = new char[end - start];
+        for (int i = start; i < end; i++) {
+            region[i - start] = charAt(i);
+        }
+        return new String(region);
+    }
+
+    /**
+     * Builds the whole sequence as a String.
+     *
+     * @return String with the sequence
+     */
+    @Override
+    public String toString() {
+        return subSequence(0, length).toString();
+    }
+
+    /**
+     * Mapped files cannot be serialized, the bases are packed instead.
+     *
+     * @return PackedNucleotides object with the same bases
+     * @throws ObjectStreamException never
+     */
+    private Object writeReplace() throws ObjectStreamException {
+        return new PackedNucleotides(this);
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright (C) 2021 Luis Núñez Gómez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package genlogic.model;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * This class stores a nucleotide sequence using 2 bits per A, C, G or T base.
+ * Any other symbol (N and the rest of IUPAC codes) is kept in a sparse side
+ * table as runs of the same symbol, so long N gaps cost a single entry. It can
+ * be read as a CharSequence without building a String.
+ *
+ * @author Luis Núñez Gómez
+ */
+public final class PackedNucleotides implements CharSequence, Serializable {
+
+    /**
+     * Bases represented by every 2 bits code.
+     */
+    private static final char[] BASES = {'A', 'C', 'G', 'T'};
+
+    /**
+     * Number of bases stored in every long word.
+     */
+    private static final int BASES_PER_WORD = 32;
+
+    /**
+     * Packed bases, 32 bases per word starting by the lowest bits.
+     */
+    private final long[] packedBases;
+
+    /**
+     * Total number of bases.
+     */
+    private final int length;
+
+    /**
+     * First position of every run of non A, C, G or T symbols, sorted.
+     */
+    private final int[] exceptionStarts;
+
+    /**
+     * Length of every run of non A, C, G or T symbols.
+     */
+    private final int[] exceptionLengths;
+
+    /**
+     * Symbol repeated in every run.
+     */
+    private final char[] exceptionSymbols;
+
+    /**
+     * Serialization attribute.
+     */
+    private static final long serialVersionUID = 7360219458L;
+
+    // Constructors
+    /**
+     * Packs the provided sequence.
+     *
+     * @param sequence DNA sequence
+     */
+    public PackedNucleotides(CharSequence sequence) {
+        this(new Builder(sequence.length()).append(sequence));
+    }
+
+    /**
+     * Builder constructor, it trims the builder arrays to their final size.
+     *
+     * @param builder Builder with the appended bases
+     */
+    private PackedNucleotides(Builder builder) {
+        this.length = builder.length;
+        this.packedBases = Arrays.copyOf(builder.packedBases, (builder.length + BASES_PER_WORD - 1) / BASES_PER_WORD);
+        this.exceptionStarts = Arrays.copyOf(builder.exceptionStarts, builder.exceptionRuns);
+        this.exceptionLengths = Arrays.copyOf(builder.exceptionLengths, builder.exceptionRuns);
+        this.exceptionSymbols = Arrays.copyOf(builder.exceptionSymbols, builder.exceptionRuns);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        }
+        if (exceptionStarts.length > 0) {
+            int run = exceptionRun(index);
+            if (run >= 0) {
+                return exceptionSymbols[run];
+            }
+        }
+        return BASES[(int) (packedBases[index / BASES_PER_WORD] >>> ((index % BASES_PER_WORD) * 2)) & 3];
+    }
+
+    /**
+     * Returns the requested region as a String.
+     *
+     * @param start first position (included)
+     * @param end last position (excluded)
+     * @return String with the region bases
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+        }
+        char[] region = new char[end - start];
+        getChars(start, end, region, 0);
+        return new String(region);
+    }
+
+    /**
+     * Copies a region of bases into a char array, like String.getChars does.
+     * Bases are decoded word by word and the runs of non A, C, G or T symbols
+     * are looked up once and then walked in order, so reading a long region
+     * is much cheaper than calling charAt for every position.
+     *
+     * @param start first position (included)
+     * @param end last position (excluded)
+     * @param dst destination array
+     * @param dstBegin first position written in the destination array
+     */
+    public void getChars(int start, int end, char[] dst, int dstBegin) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+        }
+        int i = start;
+        while (i < end) {
+            long word = packedBases[i / BASES_PER_WORD] >>> ((i % BASES_PER_WORD) * 2);
+            int wordEnd = Math.min(end, (i / BASES_PER_WORD + 1) * BASES_PER_WORD);
+            for (; i < wordEnd; i++, word >>>= 2) {
+                dst[dstBegin + i - start] = BASES[(int) word & 3];
+            }
+        }
+        if (exceptionStarts.length == 0) {
+            return;
+        }
+        // The last run starting before the region may still overlap it
+        for (int run = Math.max(0, lastRunStart(start)); run < exceptionStarts.length && exceptionStarts[run] < end; run++) {
+            int runStart = Math.max(start, exceptionStarts[run]);
+            int runEnd = Math.min(end, exceptionStarts[run] + exceptionLengths[run]);
+            if (runStart < runEnd) {
+                Arrays.fill(dst, dstBegin + runStart - start, dstBegin + runEnd - start, exceptionSymbols[run]);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of runs of non A, C, G or T symbols.
+     *
+     * @return int number of runs
+     */
+    public int getExceptionRuns() {
+        return exceptionStarts.length;
+    }
+
+    /**
+     * Builds the whole sequence as a String.
+     *
+     * @return String with the sequence
+     */
+    @Override
+    public String toString() {
+        return subSequence(0, length).toString();
+    }
+
+    /**
+     * Finds the run of non A, C, G or T symbols containing the position.
+     *
+     * @param index position in the sequence
+     * @return int run index, -1 if the position holds a packed base
+     */
+    private int exceptionRun(int index) {
+        int run = lastRunStart(index);
+        if (run >= 0 && index < exceptionStarts[run] + exceptionLengths[run]) {
+            return run;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the last run of non A, C, G or T symbols starting before or at
+     * the position.
+     *
+     * @param index position in the sequence
+     * @return int run index, -1 if every run starts after the position
+     */
+    private int lastRunStart(int index) {
+        int low = 0, high = exceptionStarts.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (exceptionStarts[middle] <= index) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Incremental builder, it allows packing a sequence while it is being read
+     * without keeping it as a String.
+     */
+    public static final class Builder {
+
+        /**
+         * Packed bases appended so far.
+         */
+        private long[] packedBases;
+
+        /**
+         * Number of bases appended so far.
+         */
+        private int length;
+
+        /**
+         * Side table arrays, see the PackedNucleotides attributes.
+         */
+        private int[] exceptionStarts = new int[4];
+        private int[] exceptionLengths = new int[4];
+        private char[] exceptionSymbols = new char[4];
+
+        /**
+         * Number of runs of non A, C, G or T symbols.
+         */
+        private int exceptionRuns;
+
+        /**
+         * Empty builder constructor.
+         */
+        public Builder() {
+            this(1024);
+        }
+
+        /**
+         * Builder constructor with the expected sequence length.
+         *
+         * @param expectedLength expected number of bases
+         */
+        public Builder(int expectedLength) {
+            packedBases = new long[Math.max(1, (expectedLength + BASES_PER_WORD - 1) / BASES_PER_WORD)];
+        }
+
+        /**
+         * Appends one base.
+         *
+         * @param base char with the base
+         * @return this builder
+         */
+        public Builder append(char base) {
+            int word = length / BASES_PER_WORD;
+            if (word == packedBases.length) {
+                packedBases = Arrays.copyOf(packedBases, packedBases.length * 2);
+            }
+            int code;
+            switch (base) {
+                case 'A':
+                    code = 0;
+                    break;
+                case 'C':
+                    code = 1;
+                    break;
+                case 'G':
+                    code = 2;
+                    break;
+                case 'T':
+                    code = 3;
+                    break;
+                default:
+                    code = 0;
+                    appendException(base);
+            }
+            packedBases[word] |= ((long) code) << ((length % BASES_PER_WORD) * 2);
+            length++;
+            return this;
+        }
+
+        /**
+         * Appends all the bases of a sequence.
+         *
+         * @param sequence DNA sequence
+         * @return this builder
+         */
+        public Builder append(CharSequence sequence) {
+            for (int i = 0; i < sequence.length(); i++) {
+                append(sequence.charAt(i));
+            }
+            return this;
+        }
+
+        /**
+         * Returns the number of bases appended so far.
+         *
+         * @return int number of bases
+         */
+        public int length() {
+            return length;
+        }
+
+        /**
+         * Creates the packed sequence.
+         *
+         * @return PackedNucleotides object
+         */
+        public PackedNucleotides build() {
+            return new PackedNucleotides(this);
+        }
+
+        /**
+         * Stores a non A, C, G or T symbol in the side table, extending the
+         * last run if it is the same symbol in the previous position.
+         *
+         * @param symbol char with the symbol
+         */
+        private void appendException(char symbol) {
+            int last = exceptionRuns - 1;
+            if (last >= 0 && exceptionSymbols[last] == symbol
+                    && exceptionStarts[last] + exceptionLengths[last] == length) {
+                exceptionLengths[last]++;
+                return;
+            }
+            if (exceptionRuns == exceptionStarts.length) {
+                exceptionStarts = Arrays.copyOf(exceptionStarts, exceptionRuns * 2);
+                exceptionLengths = Arrays.copyOf(exceptionLengths, exceptionRuns * 2);
+                exceptionSymbols = Arrays.copyOf(exceptionSymbols, exceptionRuns * 2);
+            }
+            exceptionStarts[exceptionRuns] = length;
+            exceptionLengths[exceptionRuns] = 1;
+            exceptionSymbols[exceptionRuns] = symbol;
+            exceptionRuns++;
+        }
+    }
+}
@@ -31,6 +31,12 @@ public class RegexEndonuclease extends Endonuclease {
      */
     public String regex;
     
+    /**
+     * Attribute for serialization. It keeps the value generated for the
+     * class before it was declared, so existing dat files can still be read.
+     */
+    private static final long serialVersionUID = -9035468012539408921L;
+    
     // Constructor
     
     /**
@@ -126,6 +132,16 @@ public class RegexEndonuclease extends Endonuclease {
         return regex.toString();
     }
     
+    /**
+     * Returns the target sequence with its degenerated bases, as it was
+     * provided.
+     * 
+     * @return String target sequence
+     */
+    public String getDegeneratedTarget(){
+        return endonucleaseSimpleSenseTarget;
+    }
+    
     /**
      * Returns the regex string build based on the target sequence.
      * @return String regex
@@ -26,6 +26,11 @@ import java.io.Serializable;
  */
 public class RestrictionSite implements Serializable {
 
+    /**
+     * Strand labels.
+     */
+    public static final String SENSE = "sense", ANTISENSE = "antisense";
+
     /**
      * Stores the total number of restriction sites.
      */
@@ -82,12 +87,28 @@ public class RestrictionSite implements Serializable {
         this.matchID = idCounter();
         this.endonuclease = endonuclease;
         this.upstreamLength = (counter)+endonuclease.getEndonucleasesSenseStrandCuttingBp();
-        this.downstreamLength = (int)(sequence.getLength()-this.upstreamLength);
+        this.downstreamLength = sequence.getIntLength()-this.upstreamLength;
         this.restrictionSitePosition = restrictionSitePositionCalculator(endonuclease, counter, strand, sequence);
         this.strand = strand;
         this.endonucleaseName = endonuclease.getEndonucleaseName();
     }
 
+    /**
+     * Creates a lightweight view of a site found by the analysis, the
+     * cleavage position is already calculated. It doesn't increase the
+     * restriction sites counter.
+     *
+     * @param endonuclease endonuclease used in the analysis
+     * @param restrictionSitePosition numeric position of the cleavage bp
+     * @param antisense true if the target is in the antisense strand
+     */
+    public RestrictionSite(Endonuclease endonuclease, int restrictionSitePosition, boolean antisense) {
+        this.endonuclease = endonuclease;
+        this.restrictionSitePosition = restrictionSitePosition;
+        this.strand = antisense ? ANTISENSE : SENSE;
+        this.endonucleaseName = endonuclease.getEndonucleaseName();
+    }
+
 
     /**
      * Returns the total amount of restriction sites found.
@@ -166,8 +187,8 @@ public class RestrictionSite implements Serializable {
      * @return int extact cleavage bp in the anti sense strand, if not it just returns back the cleavage position
      */
     private int restrictionSitePositionCalculator(Endonuclease endonuclease, int counter,String strand, DNASequence sequence){
-        if(strand.equals("antisense")){
-            int upstreamNoPalindromic =(int) sequence.getLength()-(((counter)+endonuclease.getEndonucleasesAntiSenseStrandCuttingBp()));
+        if(strand.equals(ANTISENSE)){
+            int upstreamNoPalindromic =sequence.getIntLength()-(((counter)+endonuclease.getEndonucleasesAntiSenseStrandCuttingBp()));
             return upstreamNoPalindromic;
         }else{
             return this.upstreamLength;
@@ -176,10 +197,9 @@ public class RestrictionSite implements Serializable {
     
     @Override
     public String toString(){
-        return String.format("Restriction enzyme: %s; \n"
-                +"Exact cleavage position in the sequence 5'->3': %d; \n"
-                +"Sense or antisense strand: %s"
-                ,this.endonuclease.getEndonucleaseName(), this.restrictionSitePosition, this.strand);
+        return "Restriction enzyme: " + this.endonucleaseName + "; \n"
+                + "Exact cleavage position in the sequence 5'->3': " + this.restrictionSitePosition + "; \n"
+                + "Sense or antisense strand: " + this.strand;
     }
 
 }
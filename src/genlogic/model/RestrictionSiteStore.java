@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2021 Luis Núñez Gómez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package genlogic.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Compact container for the results of an analysis. Sites are stored in
+ * columns: an int array with the cleavage positions, another one with the
+ * endonuclease indexes and a bitset with the antisense sites, so every site
+ * takes 8 bytes and a bit instead of a RestrictionSite object (with its
+ * references, Strings and ints).
+ * <p>
+ * The store is also a read only List of RestrictionSite, get() creates a
+ * lightweight view of the site when it is needed, so it can be used by the
+ * results table and the serializers.
+ *
+ * @author Luis Núñez Gómez
+ */
+public class RestrictionSiteStore extends AbstractList<RestrictionSite> implements RandomAccess {
+
+    /**
+     * Endonucleases referenced by the stored sites.
+     */
+    private final List<Endonuclease> endonucleases;
+
+    /**
+     * Cleavage position of every site.
+     */
+    private int[] positions;
+
+    /**
+     * Endonuclease index of every site.
+     */
+    private int[] endonucleaseIndexes;
+
+    /**
+     * Antisense sites.
+     */
+    private final BitSet antisense = new BitSet();
+
+    /**
+     * Number of sites stored.
+     */
+    private int size;
+
+    // Constructor
+    /**
+     * Creates an empty store.
+     *
+     * @param endonucleases List of endonucleases, site indexes refer to it
+     */
+    public RestrictionSiteStore(List<Endonuclease> endonucleases) {
+        this(endonucleases, 64);
+    }
+
+    /**
+     * Creates an empty store with room for the expected number of sites.
+     *
+     * @param endonucleases List of endonucleases, site indexes refer to it
+     * @param expectedSites expected number of sites
+     */
+    public RestrictionSiteStore(List<Endonuclease> endonucleases, int expectedSites) {
+        this.endonucleases = endonucleases;
+        this.positions = new int[Math.max(1, expectedSites)];
+        this.endonucleaseIndexes = new int[Math.max(1, expectedSites)];
+    }
+
+    /**
+     * Stores a site.
+     *
+     * @param endonucleaseIndex index in the endonucleases list
+     * @param position numeric position of the cleavage bp
+     * @param isAntisense true if the target is in the antisense strand
+     */
+    public void add(int endonucleaseIndex, int position, boolean isAntisense) {
+        if (size == positions.length) {
+            grow(size + 1);
+        }
+        positions[size] = position;
+        endonucleaseIndexes[size] = endonucleaseIndex;
+        if (isAntisense) {
+            antisense.set(size);
+        }
+        size++;
+        modCount++;
+    }
+
+    /**
+     * Stores all the sites of another store with the same endonucleases.
+     *
+     * @param sites RestrictionSiteStore object
+     */
+    public void addAll(RestrictionSiteStore sites) {
+        addAll(sites, 0, sites.size, 0);
+    }
+
+    /**
+     * Stores a range of the sites of another store with the same
+     * endonucleases, moving their positions. Columns are copied at once, so
+     * unchanged sites of an edited sequence are not found again.
+     *
+     * @param sites RestrictionSiteStore object
+     * @param from first site index (included)
+     * @param to last site index (excluded)
+     * @param shift bp added to every position
+     * @throws IndexOutOfBoundsException if the range is out of the store
+     */
+    public void addAll(RestrictionSiteStore sites, int from, int to, int shift) {
+        if (from < 0 || to > sites.size || from > to) {
+            throw new IndexOutOfBoundsException("From: " + from + ", To: " + to + ", Size: " + sites.size);
+        }
+        int count = to - from;
+        if ((long) size + count > positions.length) {
+            grow((long) size + count);
+        }
+        System.arraycopy(sites.endonucleaseIndexes, from, endonucleaseIndexes, size, count);
+        for (int i = 0; i < count; i++) {
+            positions[size + i] = sites.positions[from + i] + shift;
+        }
+        for (int i = sites.antisense.nextSetBit(from); i >= 0 && i < to; i = sites.antisense.nextSetBit(i + 1)) {
+            antisense.set(size + i - from);
+        }
+        size += count;
+        modCount++;
+    }
+
+    /**
+     * Frees the unused capacity, useful once the analysis has finished.
+     */
+    public void trimToSize() {
+        positions = Arrays.copyOf(positions, size);
+        endonucleaseIndexes = Arrays.copyOf(endonucleaseIndexes, size);
+    }
+
+    /**
+     * Returns the endonucleases referenced by the stored sites.
+     *
+     * @return List of endonucleases
+     */
+    public List<Endonuclease> getEndonucleases() {
+        return endonucleases;
+    }
+
+    /**
+     * Returns the cleavage position of a site.
+     *
+     * @param index site index
+     * @return int cleavage numeric position
+     */
+    public int getPosition(int index) {
+        checkIndex(index);
+        return positions[index];
+    }
+
+    /**
+     * Returns the endonuclease index of a site.
+     *
+     * @param index site index
+     * @return int index in the endonucleases list
+     */
+    public int getEndonucleaseIndex(int index) {
+        checkIndex(index);
+        return endonucleaseIndexes[index];
+    }
+
+    /**
+     * Returns the endonuclease of a site.
+     *
+     * @param index site index
+     * @return Endonuclease object
+     */
+    public Endonuclease getEndonuclease(int index) {
+        return endonucleases.get(getEndonucleaseIndex(index));
+    }
+
+    /**
+     * Returns true if the target of a site is in the antisense strand.
+     *
+     * @param index site index
+     * @return boolean true for antisense sites
+     */
+    public boolean isAntisense(int index) {
+        checkIndex(index);
+        return antisense.get(index);
+    }
+
+    /**
+     * Returns the strand of a site.
+     *
+     * @param index site index
+     * @return String "sense" or "antisense"
+     */
+    public String getStrand(int index) {
+        return isAntisense(index) ? RestrictionSite.ANTISENSE : RestrictionSite.SENSE;
+    }
+
+    /**
+     * Returns a view of a site, the object is created every time.
+     *
+     * @param index site index
+     * @return RestrictionSite object
+     */
+    @Override
+    public RestrictionSite get(int index) {
+        return new RestrictionSite(getEndonuclease(index), getPosition(index), isAntisense(index));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Grows the columns, at least doubling their capacity.
+     *
+     * @param minimumCapacity number of sites needed
+     * @throws IllegalStateException if the store cannot grow more
+     */
+    private void grow(long minimumCapacity) {
+        if (minimumCapacity > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Too many restriction sites");
+        }
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(minimumCapacity, size * 2L));
+        positions = Arrays.copyOf(positions, capacity);
+        endonucleaseIndexes = Arrays.copyOf(endonucleaseIndexes, capacity);
+    }
+
+    /**
+     * Checks a site index.
+     *
+     * @param index site index
+     * @throws IndexOutOfBoundsException if there is no site with that index
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
@@ -17,9 +17,11 @@
  */
 package genlogic.view;
 
-import genlogic.EndonucleaseSerializator;
+import genlogic.EndonucleaseCatalog;
+import genlogic.RebaseImporter;
 import genlogic.FASTASequenceReader;
 import genlogic.Genlogic;
+import genlogic.engine.AnalysisCache;
 import genlogic.model.DNASequence;
 import genlogic.model.Endonuclease;
 import java.io.File;
@@ -218,6 +220,26 @@ public class GenlogicMainViewController implements Initializable {
      */
     private ObservableList<DNASequence> sequences_table = FXCollections.observableArrayList();
 
+    /**
+     * System properties with the analysis cache folder (relative to the
+     * catalog folder, "none" keeps the cache only in memory) and its size
+     * limit in MB.
+     */
+    private static final String CACHE_FOLDER_PROPERTY = "genlogic.cache", CACHE_LIMIT_PROPERTY = "genlogic.cache.limit";
+
+    /**
+     * Default analysis cache folder, next to the catalog and shared with the
+     * command line.
+     */
+    private static final String DEFAULT_CACHE_FOLDER = "cache";
+
+    /**
+     * Targets found by previous analyses (of this or other sessions), so
+     * analyzing a sequence again with some of the same endonucleases only
+     * scans the new ones. It is kept in memory until the catalog is opened.
+     */
+    private AnalysisCache analysisCache = new AnalysisCache();
+
     /**
      * ObservableList that contains endonuclease objects
      */
@@ -269,8 +291,14 @@ public class GenlogicMainViewController implements Initializable {
         //EndonucleaseSerializator.memoryToDat(txtmemory, datEndonucleaseFilePath);
         /////////////////////////////////////////////////////////////////////////////
         
-        //This line reads the dat file and loads endonuclease objects in memory
-        serializedEndonucleases = EndonucleaseSerializator.datToMemory(datEndonucleaseFilePath);
+        //This line opens the endonucleases catalog (the dat file is migrated the first time)
+        try {
+            EndonucleaseCatalog catalog = EndonucleaseCatalog.open(datEndonucleaseFilePath);
+            serializedEndonucleases = catalog;
+            analysisCache = analysisCache(catalog.getFile());
+        } catch (IOException ex) {
+            Logger.getLogger(GenlogicMainViewController.class.getName()).log(Level.SEVERE, null, ex);
+        }
 
         // Set columns for the endonucleases table
         nameColumn.setCellValueFactory(new PropertyValueFactory("endonucleaseName"));
@@ -401,10 +429,6 @@ public class GenlogicMainViewController implements Initializable {
                 GenlogicResultsViewController resultsViewController = loader.getController();
                 // Check the selected radio button for the DNA conformation
                 sequenceConformationChecker();
-                // Show information in the results view
-                resultsViewController.showResults(selectedDNASequence,selectedEndonucleases, isCircular);
-                if(!resultsViewController.getMatchingRestrictionSites().isEmpty()){
-                    
                 Stage stage = new Stage();
                 stage.setScene(new Scene(root));
                 stage.setTitle("Analysis results for sequence - "+selectedDNASequence.getInformation());
@@ -416,8 +440,9 @@ public class GenlogicMainViewController implements Initializable {
                 stage.setResizable(false);
                 // Sets the new stage object as the one for the results view
                 resultsViewController.setStage(stage);
+                // Starts the background analysis, results are shown while they are found
+                resultsViewController.showResults(selectedDNASequence,selectedEndonucleases, isCircular, analysisCache);
                 stage.showAndWait();
-                }
             } catch (IOException ex) {
                 Logger.getLogger(GenlogicMainViewController.class.getName()).log(Level.SEVERE, null, ex);
             }
@@ -432,6 +457,36 @@ public class GenlogicMainViewController implements Initializable {
         primaryStage.close();
     }
     
+    /**
+     * Creates the analysis cache in the folder set by the genlogic.cache
+     * system property (default "cache"), relative to the catalog folder,
+     * with the size limit of the genlogic.cache.limit property in MB. With
+     * "none" as folder, or a wrong limit, the cache is only kept in memory.
+     *
+     * @param catalog endonucleases catalog file
+     * @return AnalysisCache object
+     */
+    private static AnalysisCache analysisCache(File catalog) {
+        String folder = System.getProperty(CACHE_FOLDER_PROPERTY, DEFAULT_CACHE_FOLDER).trim();
+        if (folder.isEmpty() || folder.equalsIgnoreCase("none")) {
+            return new AnalysisCache();
+        }
+        File cacheFolder = new File(folder);
+        if (!cacheFolder.isAbsolute()) {
+            cacheFolder = new File(catalog.getAbsoluteFile().getParentFile(), folder);
+        }
+        try {
+            long limit = Long.parseLong(System.getProperty(CACHE_LIMIT_PROPERTY,
+                    String.valueOf(AnalysisCache.DEFAULT_MAX_DISK_BYTES / (1024 * 1024))).trim());
+            return new AnalysisCache(AnalysisCache.DEFAULT_MAX_BYTES, cacheFolder, limit * 1024 * 1024);
+        } catch (IllegalArgumentException ex) {
+            // Wrong numbers too, NumberFormatException is an IllegalArgumentException
+            Logger.getLogger(GenlogicMainViewController.class.getName()).log(Level.WARNING,
+                    "Wrong analysis cache limit, the cache is kept in memory", ex);
+            return new AnalysisCache();
+        }
+    }
+
     /**
      * Opens the add restriction endonucleases window.
      */
@@ -455,10 +510,8 @@ public class GenlogicMainViewController implements Initializable {
                 addRestrictionEnzymesViewController.setStage(stage);
                 stage.showAndWait();
                 if(!addRestrictionEnzymesViewController.isCancelled()){
-                    // Adds the new endonuclease to the dat file
+                    // Adds the new endonuclease to the catalog, only its record is written
                     serializedEndonucleases.add(addRestrictionEnzymesViewController.getEndonuclease());
-                    // Updates the dat file
-                    EndonucleaseSerializator.memoryToDat(serializedEndonucleases, datEndonucleaseFilePath);
                     if(selectedDNASequence != null){
                         endonucleaseTable.getItems().clear();
                         showEndonucleases(serializedEndonucleases);
@@ -492,9 +545,8 @@ public class GenlogicMainViewController implements Initializable {
                 // Sets the new stage object as the one for the results view
                 deleteRestrictionEnzymesViewController.setStage(stage);
                 stage.showAndWait();
+                // The catalog has already been updated by the delete window
                 if(!deleteRestrictionEnzymesViewController.getIsCancelled()){
-                    // Updates the dat file
-                    EndonucleaseSerializator.memoryToDat(serializedEndonucleases, datEndonucleaseFilePath);
                 if(selectedDNASequence != null){
                     endonucleaseTable.getItems().clear();
                     showEndonucleases(serializedEndonucleases);
@@ -506,6 +558,38 @@ public class GenlogicMainViewController implements Initializable {
         }
     }
     
+    /**
+     * Imports the enzymes of a REBASE file (withrefm or bairoch format) into
+     * the endonucleases catalog, all of them are saved at once.
+     */
+    @FXML
+    private void handleImportRebase(){
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Select REBASE file");
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("REBASE files", "*.txt", "*.gz", "*.*"));
+        File selectedFile = fileChooser.showOpenDialog(primaryStage);
+        if (selectedFile == null) {
+            return;
+        }
+        if (!(serializedEndonucleases instanceof EndonucleaseCatalog)) {
+            alert("Error", "The endonucleases catalog could not be opened");
+            return;
+        }
+        RebaseImporter importer = new RebaseImporter(false);
+        try {
+            importer.importTo((EndonucleaseCatalog) serializedEndonucleases, selectedFile.getPath());
+            alert("REBASE import", importer.getImported() + " endonucleases imported, "
+                    + importer.getDuplicated() + " already in the catalog, " + importer.getSkipped() + " skipped");
+        } catch (IOException ex) {
+            alert("Error", "Unable to import the REBASE file: " + ex.getMessage());
+        }
+        if(selectedDNASequence != null){
+            endonucleaseTable.getItems().clear();
+            showEndonucleases(serializedEndonucleases);
+        }
+    }
+
     /**
      * Opens the About Genlogic window.
      */
@@ -17,23 +17,36 @@
  */
 package genlogic.view;
 
+import genlogic.RestrictionSiteArchive;
 import genlogic.RestrictionSiteSerializator;
+import genlogic.RestrictionSiteWriter;
+import genlogic.engine.AnalysisCache;
+import genlogic.engine.IncrementalAnalysis;
+import genlogic.engine.RestrictionSiteFinder;
 import genlogic.model.DNASequence;
 import genlogic.model.Endonuclease;
 import genlogic.model.RestrictionSite;
+import genlogic.model.RestrictionSiteStore;
+import genlogic.engine.ScanMonitor;
 import java.io.File;
-import java.util.HashMap;
+import java.io.IOException;
 import java.util.List;
-import java.util.Map;
-import javafx.collections.FXCollections;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
+import javafx.application.Platform;
 import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuItem;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
+import javafx.scene.control.TextInputDialog;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
@@ -106,224 +119,268 @@ public class GenlogicResultsViewController {
     private Label totalCleavageSites;
 
     /**
-     * ObservableList that contains restriction sites.
+     * Progress of the running analysis (bases scanned).
      */
-    private ObservableList<RestrictionSite> matchingRestrictionSites = FXCollections.observableArrayList();
+    @FXML
+    private ProgressBar analysisProgress;
+
+    /**
+     * Menu item to edit the sequence bases, enabled once the analysis has
+     * finished.
+     */
+    @FXML
+    private MenuItem editBtn;
+
+    /**
+     * Button to cancel the running analysis.
+     */
+    @FXML
+    private Button cancelButton;
+
+    /**
+     * Background task running the analysis.
+     */
+    private AnalysisTask analysisTask;
+
+    /**
+     * Finder with the selected endonucleases.
+     */
+    private RestrictionSiteFinder finder;
+
+    /**
+     * Analysis updated after every edit, created on the first one.
+     */
+    private IncrementalAnalysis incrementalAnalysis;
 
     /**
-     * It triggers the analysis and populates the results table. If it analysis
-     * result equals 0, it shows an alert with the text "No matches found for 
-     * selected endonuclease(s)".
+     * Results of the analysis, stored in columns.
+     */
+    private RestrictionSiteStore restrictionSites;
+
+    /**
+     * Analyzed sequence.
+     */
+    private DNASequence sequence;
+
+    /**
+     * True if the sequence is analyzed as circular.
+     */
+    private boolean isCircular;
+
+    /**
+     * ObservableList that shows the restriction sites of the results store,
+     * rows are created only when the table needs them.
+     */
+    private RestrictionSiteTableItems matchingRestrictionSites;
+
+    /**
+     * It triggers the analysis in a background task and populates the results
+     * table while sites are found. If the analysis result equals 0, it shows
+     * an alert with the text "No matches found for selected endonuclease(s)".
      * 
      * @param sequence DNASequence object to be analyzed
      * @param endonucleasesList List with selected endonucleases
      * @param isCircular boolean that enables the circular analysis if necessary
+     * @param cache AnalysisCache with the targets of previous analyses, null
+     * to scan every endonuclease
      */
-    public void showResults(DNASequence sequence, List<Endonuclease> endonucleasesList, boolean isCircular) {
-        analysis(sequence, endonucleasesList, isCircular);
+    public void showResults(DNASequence sequence, List<Endonuclease> endonucleasesList, boolean isCircular, AnalysisCache cache) {
+        RestrictionSite.setTotalRestrictionSites(0); // Resets the matches counter
+        // Sets columns for restrictionSitesTable
+        nameColumn.setCellValueFactory(new PropertyValueFactory("endonucleaseName"));
+        cleavageSiteColumn.setCellValueFactory(new PropertyValueFactory("restrictionSitePosition"));
+        strandColumn.setCellValueFactory(new PropertyValueFactory("strand"));
+        totalCleavageSites.setText("0");
+
+        this.sequence = sequence;
+        this.isCircular = isCircular;
+        finder = new RestrictionSiteFinder(endonucleasesList);
+        finder.setCache(cache);
+        restrictionSites = new RestrictionSiteStore(finder.getEndonucleases());
+        // Populates the table from the results store, keeping it sorted while
+        // batches arrive
+        matchingRestrictionSites = new RestrictionSiteTableItems(restrictionSites);
+        restrictionSitesTable.setSortPolicy(table -> {
+            sortTable();
+            return true;
+        });
+        restrictionSitesTable.setItems(matchingRestrictionSites);
+        // Sorts the table based on the cleavage site position
+        restrictionSitesTable.getSortOrder().add(cleavageSiteColumn);
+        analysisTask = new AnalysisTask(finder, sequence, isCircular);
+        analysisProgress.progressProperty().bind(analysisTask.progressProperty());
+        analysisTask.setOnSucceeded(event -> {
+            // The analysis keeps the same sites as the table, it is shown
+            // instead so they are stored once
+            incrementalAnalysis = analysisTask.getValue();
+            restrictionSites = incrementalAnalysis.getSites();
+            matchingRestrictionSites.setSites(restrictionSites);
+            analysisFinished();
+        });
+        analysisTask.setOnCancelled(event -> analysisFinished());
+        analysisTask.setOnFailed(event -> analysisFailed(analysisTask.getException()));
+        Thread analysisThread = new Thread(analysisTask, "Genlogic analysis");
+        analysisThread.setDaemon(true);
+        analysisThread.start();
+    }
+
+    /**
+     * Cancels the running analysis, the sites found so far are kept.
+     */
+    @FXML
+    private void handleCancelAnalysis() {
+        if (analysisTask != null) {
+            analysisTask.cancel();
+        }
+    }
+
+    /**
+     * Updates the view once the analysis has finished or it has been
+     * cancelled. If there are no results the alert is shown and the window is
+     * closed.
+     */
+    private void analysisFinished() {
+        analysisProgress.progressProperty().unbind();
+        analysisProgress.setProgress(1);
+        cancelButton.setDisable(true);
+        editBtn.setDisable(false);
+        totalCleavageSites.setText(String.valueOf(matchingRestrictionSites.size()));
         // If there are no results
-        if (matchingRestrictionSites.isEmpty()) {
+        if (matchingRestrictionSites.isEmpty() && !analysisTask.isCancelled()) {
             alert("No Results", "No matches found for selected endonuclease(s)");
             try {
                 handleCloseApplication();
             } catch (NullPointerException e) {
                 System.out.println("No matches found for selected endonuclease(s)");
             }
-        } else {
-            //If there are results
-            // Sets columns for restrictionSitesTable
-            nameColumn.setCellValueFactory(new PropertyValueFactory("endonucleaseName"));
-            cleavageSiteColumn.setCellValueFactory(new PropertyValueFactory("restrictionSitePosition"));
-            strandColumn.setCellValueFactory(new PropertyValueFactory("strand"));
-            // Populates the table
-            restrictionSitesTable.setItems(matchingRestrictionSites);
-            // Sorts the table based on the cleavage site position
-            restrictionSitesTable.getSortOrder().add(cleavageSiteColumn);
-            totalCleavageSites.setText(String.valueOf(RestrictionSite.getTotalRestrictionSites()));
         }
     }
 
     /**
-     * Analyzes the provided sequence and returns a list of cleavage sites. It
-     * repeates an analysis for each selected endonuclease, first checks if it needs
-     * a regex analysis, then if the sequence conformation is linear or circular
-     * and finally it checks if the endonuclease is palindromic or not.
-     * 
-     * @param sequence DNASequence object to be analyzed
-     * @param endonucleasesList List of selected endonucleases
-     * @param isCircular boolean to check if a special extra circular analysis 
-     * needs to be done
-     * @return List of found cleavage sites
+     * Updates the view if the analysis has failed. The sites found so far are
+     * kept in the table, but they are not complete, so they cannot be edited.
+     *
+     * @param error Throwable that stopped the analysis
      */
-    private ObservableList<RestrictionSite> analysis(DNASequence sequence, List<Endonuclease> endonucleasesList, boolean isCircular) {
-        //matchingRestrictionSites.clear();
-        RestrictionSite.setTotalRestrictionSites(0); // Resets the matches counter
-        //GenlogicMainViewController genlogicMainViewController = getMainController();
-        for (Endonuclease e : endonucleasesList) {
-            if (!e.getIsRegex()) { // Checks if the endonuclease needs a REGEX analysis
-                // Creates a map of digested DNA sequence build of fragments and positions
-                Map<Integer, String> sequenceFragments = sequenceFragmentsConstructor(sequence, e);
-                for (int i = 0; i < sequenceFragments.size(); i++) {
-                    /* Performs an analisys of the sequence when the endonuclease is no regex, and no palindromic. 
-                    It also checks if the analysis for circular sequences need to be done.*/
-                    noRegexPalindromicAnalysis(sequenceFragments, i, e, isCircular, sequence);
-                }
-                if (!e.getIsPalindromic()) { // if it is a non palindromic endonuclease it performs an antisense analysis
-                    Map<Integer, String> antiSequenceFragments = antiSequenceFragmentsConstructor(sequence, e);
-                    for (int j = 0; j < antiSequenceFragments.size(); j++) {
-                        // Performs an analysis of the antisequence when the endonuclease is no regex,
-                        noRegexNoPalindromicAnalysis(antiSequenceFragments, j, e, isCircular, sequence);
-                    }
-                }
-            } else {
-                String regex = e.getEndonucleaseSimpleSenseTarget();
-                Map<Integer, String> sequenceFragments = sequenceFragmentsConstructor(sequence, e);
-                for (int k = 0; k < sequenceFragments.size(); k++) {
-                    /* Performs an analisys of the sequence when the endonuclease is regex, and palindromic. 
-                    It also checks if the analysis for circular sequences need to be done.*/
-                    regexPalindromicAnalysis(sequenceFragments, k, regex, isCircular, e, sequence);
-                }
-                if (!e.getIsPalindromic()) {
-                    String antiRegex = e.getEndonucleaseSimpleSenseTarget();
-                    Map<Integer, String> antiSequenceFragments = antiSequenceFragmentsConstructor(sequence, e);
-                    for (int m = 0; m < antiSequenceFragments.size(); m++) {
-                        // Performs an analysis of the antisequence when the endonuclease is regex, and it is palindromic.
-                        regexNoPalindromicAnalysis(antiSequenceFragments, m, antiRegex, isCircular, sequence, e);
-                    }
-                }
-            }
-        }
-        return matchingRestrictionSites;
+    private void analysisFailed(Throwable error) {
+        Logger.getLogger(GenlogicResultsViewController.class.getName()).log(Level.SEVERE, "Error during the analysis", error);
+        analysisProgress.progressProperty().unbind();
+        cancelButton.setDisable(true);
+        editBtn.setDisable(true);
+        totalCleavageSites.setText(String.valueOf(matchingRestrictionSites.size()));
+        alert(Alert.AlertType.ERROR, "Analysis error", "The analysis has failed, the results are not complete: " + error);
     }
 
     /**
-     * Performs an analysis of the antisequence when the endonuclease is regex,
-     * and it is palindromic.
+     * Adds a batch of sites to the results and the table. It is called in the
+     * JavaFX application thread.
      * 
-     * @param antiSequenceFragments Digested DNA sequence in fragments
-     * @param m Indicates the current fagment position in the sequence
-     * @param antiRegex Target site sequence
-     * @param isCircular Indicates if the DNA sequence is circular
-     * @param sequence DNA sequence
-     * @param e Endonuclease
-     */
-    private void regexNoPalindromicAnalysis(Map<Integer, String> antiSequenceFragments, int m, String antiRegex, boolean isCircular, DNASequence sequence, Endonuclease e) {
-        String antiFragment = antiSequenceFragments.get(m);
-        if (antiFragment.matches(antiRegex)) {
-            if (!isCircular && ((sequence.getLength() - (m + e.getEndonucleasesAntiSenseStrandCuttingBp()) > 0))) {
-                RestrictionSite targetMatch = new RestrictionSite(e, m, "antisense", sequence);
-                matchingRestrictionSites.add(targetMatch);
-            } else if (isCircular) {
-                if ((m + e.getEndonucleasesSenseStrandCuttingBp()) < sequence.getLength()) {
-                    RestrictionSite match = new RestrictionSite(e, m, "antisense", sequence);
-                    matchingRestrictionSites.add(match);
-                } else { // If m is bigger or equal than sequence's lenght, the cleavage point is in the begining of the sequence
-                    RestrictionSite match = new RestrictionSite(e, m - (int) (sequence.getLength()), "antisense", sequence);
-                    matchingRestrictionSites.add(match);
-                }
-            }
-        }
+     * @param sites RestrictionSiteStore with the new restriction sites
+     */
+    private void addSites(RestrictionSiteStore sites) {
+        restrictionSites.addAll(sites);
+        matchingRestrictionSites.sitesAdded();
+        totalCleavageSites.setText(String.valueOf(matchingRestrictionSites.size()));
     }
 
     /**
-     * Performs an analisys of the sequence when the endonuclease is regex, and 
-     * palindromic. It also checks if the analysis for circular sequences need
-     * to be done.
-     * 
-     * @param sequenceFragments Digested DNA sequence in fragments
-     * @param k Indicates the current fagment position in the sequence
-     * @param regex Target site sequence
-     * @param isCircular Indicates if the DNA sequence is circular
-     * @param e Endonuclase
-     * @param sequence DNA sequence
-     */
-    private void regexPalindromicAnalysis(Map<Integer, String> sequenceFragments, int k, String regex, boolean isCircular, Endonuclease e, DNASequence sequence) {
-        String fragment = sequenceFragments.get(k);
-        if (fragment.matches(regex)) {
-            if (!isCircular && ((k + e.getEndonucleasesSenseStrandCuttingBp()) < sequence.getLength())) {
-                RestrictionSite targetMatch = new RestrictionSite(e, k, "sense", sequence);
-                matchingRestrictionSites.add(targetMatch);
-            } else if (isCircular) {
-                if ((k + e.getEndonucleasesSenseStrandCuttingBp()) < sequence.getLength()) {
-                    RestrictionSite match = new RestrictionSite(e, k, "sense", sequence);
-                    matchingRestrictionSites.add(match);
-                } else { // If k is bigger or equal than sequence's lenght, the cleavage point is in the begining of the sequence
-                    RestrictionSite match = new RestrictionSite(e, k - (int) (sequence.getLength()), "sense", sequence);
-                    matchingRestrictionSites.add(match);
-                }
+     * Sorts the table rows following the table sort order. Sites are sorted
+     * by their store columns, so no row is created for sorting.
+     */
+    private void sortTable() {
+        List<TableColumn<RestrictionSite, ?>> sortOrder = restrictionSitesTable.getSortOrder();
+        int[] columns = new int[sortOrder.size()];
+        boolean[] descending = new boolean[sortOrder.size()];
+        for (int i = 0; i < columns.length; i++) {
+            TableColumn<RestrictionSite, ?> column = sortOrder.get(i);
+            if (column == nameColumn) {
+                columns[i] = RestrictionSiteTableItems.NAME;
+            } else if (column == strandColumn) {
+                columns[i] = RestrictionSiteTableItems.STRAND;
+            } else {
+                // Match numbers follow the positions too
+                columns[i] = RestrictionSiteTableItems.POSITION;
             }
+            descending[i] = column.getSortType() == TableColumn.SortType.DESCENDING;
         }
-        if (isCircular && k == sequenceFragments.size() - 1) {
-            circularAnalysis(sequenceFragments, e, k, sequence, regex);
-        }
+        matchingRestrictionSites.sortBy(columns, descending);
     }
 
     /**
-     * Performs an analysis of the antisequence when the endonuclease is no regex,
-     * but it is palindromic.
-     * 
-     * @param antiSequenceFragments Digested DNA sequence in fragments
-     * @param j Indicates the current fagment position in the sequence
-     * @param e Endonuclease used in the current analysis
-     * @param isCircular Indicates if the DNA sequence is circular
-     * @param sequence DNA sequence
-     */
-    private void noRegexNoPalindromicAnalysis(Map<Integer, String> antiSequenceFragments, int j, Endonuclease e, boolean isCircular, DNASequence sequence) {
-        String antiFragment = antiSequenceFragments.get(j);
-        if (antiFragment.equalsIgnoreCase(e.getEndonucleaseSimpleSenseTarget())) {
-            // If the sequence is not circular and the cutting bp is not out of the sequence's limit
-            if (!isCircular && ((sequence.getLength() - (j + e.getEndonucleasesAntiSenseStrandCuttingBp()) > 0))) {
-                RestrictionSite targetMatch = new RestrictionSite(e, j, "antisense", sequence);
-                matchingRestrictionSites.add(targetMatch);
-            } else if (isCircular) {
-                if ((j + e.getEndonucleasesSenseStrandCuttingBp()) < sequence.getLength()) {
-                    RestrictionSite match = new RestrictionSite(e, j, "antisense", sequence);
-                    matchingRestrictionSites.add(match);
-                    System.out.println(j + e.getEndonucleasesSenseStrandCuttingBp());
-                } else { // If i+j is bigger or equal than sequence's lenght, the cleavage point is in the begining of the sequence
-                    RestrictionSite match = new RestrictionSite(e, j - (int) (sequence.getLength()), "antisense", sequence);
-                    matchingRestrictionSites.add(match);
-                }
+     * Edits the sequence bases and updates the results. Only the region
+     * around the edit is analyzed again, the rest of the sites are moved.
+     * Edits are written as start-end (from 1, both included) followed by the
+     * new bases: without bases the region is deleted, and an empty region
+     * like 120-119 inserts the bases before 120.
+     */
+    @FXML
+    private void handleEditSequence() {
+        TextInputDialog dialog = new TextInputDialog();
+        dialog.setTitle("Edit sequence");
+        dialog.setHeaderText("Replace the bases start-end with new ones, e.g. 120-125 GGATCC\n"
+                + "Without bases the region is deleted, 120-119 GGATCC inserts before 120");
+        dialog.setContentText("Edit:");
+        Optional<String> edit = dialog.showAndWait();
+        if (!edit.isPresent() || edit.get().trim().isEmpty()) {
+            return;
+        }
+        String[] fields = edit.get().trim().split("\\s+", 2);
+        String[] limits = fields[0].split("-", 2);
+        String bases = fields.length > 1 ? fields[1].replaceAll("\\s", "") : "";
+        int start, end;
+        try {
+            start = Integer.parseInt(limits[0]);
+            end = limits.length > 1 ? Integer.parseInt(limits[1]) : start;
+            if (!bases.matches("[A-Za-z]*")) {
+                throw new IllegalArgumentException(bases);
             }
+        } catch (IllegalArgumentException ex) {
+            alert("Wrong edit", "Edits are start-end (inside the sequence) followed by the new bases");
+            return;
+        }
+        if (incrementalAnalysis != null) {
+            editSequence(start, end, bases);
+            return;
         }
+        // The analysis was cancelled, the whole sequence is analyzed in the
+        // background before the first edit
+        editBtn.setDisable(true);
+        analysisProgress.setProgress(ProgressBar.INDETERMINATE_PROGRESS);
+        Task<IncrementalAnalysis> task = new Task<IncrementalAnalysis>() {
+            @Override
+            protected IncrementalAnalysis call() {
+                return new IncrementalAnalysis(finder, sequence, isCircular);
+            }
+        };
+        task.setOnSucceeded(event -> {
+            incrementalAnalysis = task.getValue();
+            analysisProgress.setProgress(1);
+            editBtn.setDisable(false);
+            editSequence(start, end, bases);
+        });
+        task.setOnFailed(event -> analysisFailed(task.getException()));
+        Thread analysisThread = new Thread(task, "Genlogic analysis");
+        analysisThread.setDaemon(true);
+        analysisThread.start();
     }
 
     /**
-     * Performs an analisys of the sequence when the endonuclease is no regex, and 
-     * no palindromic. It also checks if the analysis for circular sequences need
-     * to be done.
-     * 
-     * @param sequenceFragments Digested DNA sequence in fragments
-     * @param i Indicates the current fagment position in the sequence
-     * @param e Endonuclease used in the current analysis
-     * @param isCircular Indicates if the DNA sequence is circular
-     * @param sequence DNA sequence
-     */
-    private void noRegexPalindromicAnalysis(Map<Integer, String> sequenceFragments, int i, Endonuclease e, boolean isCircular, DNASequence sequence) {
-        String fragment = sequenceFragments.get(i); // Extracts the DNA fragment of the current position
-        if (fragment.equalsIgnoreCase(e.getEndonucleaseSimpleSenseTarget())) {
-            // If the sequence is not circular and the cutting bp is not out of the sequence's limit
-            if (!isCircular && ((i + e.getEndonucleasesSenseStrandCuttingBp()) < sequence.getLength())) {
-                RestrictionSite targetMatch = new RestrictionSite(e, i, "sense", sequence);
-                matchingRestrictionSites.add(targetMatch);
-                // If the sequence is circular we don't need to check if the cutting bp is out of the sequence's limits
-            } else if (isCircular) {
-                // If i+j is smaller than sequence's length, the cutting bp is in the end of the sequence
-                if ((i + e.getEndonucleasesSenseStrandCuttingBp()) < sequence.getLength()) {
-                    RestrictionSite match = new RestrictionSite(e, i, "sense", sequence);
-                    matchingRestrictionSites.add(match);
-                    System.out.println(i + e.getEndonucleasesSenseStrandCuttingBp());
-                    // If i+j is bigger or equal than sequence's lenght, the cleavage point is in the begining of the sequence
-                } else {
-                    RestrictionSite match = new RestrictionSite(e, (i - (int) sequence.getLength()), "sense", sequence);
-                    matchingRestrictionSites.add(match);
-                }
-            }
-        }
-        // If the analysis reach the last fragment and the sequence is circular a last special analysis need to be done
-        if (isCircular && i == sequenceFragments.size() - 1) {
-            circularAnalysis(sequenceFragments, e, i, sequence);
+     * Applies an edit to the analyzed sequence and shows the updated sites.
+     *
+     * @param start first replaced position, from 1 (included)
+     * @param end last replaced position (included)
+     * @param bases new bases
+     */
+    private void editSequence(int start, int end, String bases) {
+        try {
+            incrementalAnalysis.replace(start - 1, end, bases);
+        } catch (IndexOutOfBoundsException ex) {
+            alert("Wrong edit", "Edits are start-end (inside the sequence) followed by the new bases");
+            return;
         }
+        restrictionSites = incrementalAnalysis.getSites();
+        matchingRestrictionSites.setSites(restrictionSites);
+        totalCleavageSites.setText(String.valueOf(matchingRestrictionSites.size()));
     }
 
     /**
@@ -331,149 +388,56 @@ public class GenlogicResultsViewController {
      */
     @FXML
     private void handleFileSaver() {
-        String path = null;
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("Save results");
         fileChooser.getExtensionFilters().addAll(
                 // Set extension filters
                 new FileChooser.ExtensionFilter("Text files", "*.txt"),
-                new FileChooser.ExtensionFilter("CSV (Comma-separated values)", "*.csv"));
-        try {
-            File file = fileChooser.showSaveDialog(viewStage);
-            path = file.getPath();
-            if (path != null) {
-                if (fileChooser.getSelectedExtensionFilter().getExtensions().toString().contains("txt")) {
-                    // Calls the serialization method to generate the txt file
-                    RestrictionSiteSerializator.saveFile(path, matchingRestrictionSites);
-                } else {
-                    // Calls the serialization method to generate the csv file
-                    RestrictionSiteSerializator.writeToCSV(path, matchingRestrictionSites);
-                }
-            }
-        } catch (Exception ex) {
-            System.err.println("Error saving the results file: " + ex);
-        }
-    }
-
-    /**
-     * Creates an special DNA fragment only for circular analysis joining the
-     * end and the begining of the DNA fragment.
-     * 
-     * @param sequenceFragments Already digested DNA sequence fragments
-     * @param e Endonuclease used on the analysis
-     * @param i position in the DNA sequence
-     * @param sequence DNA sequence
-     */
-    private void circularAnalysis(Map<Integer, String> sequenceFragments, Endonuclease e, int i, DNASequence sequence) {
-        // Build the special fragment merging the last and the first sequence fragments
-        StringBuilder temporalFragment = new StringBuilder(sequenceFragments.get(i) + sequenceFragments.get(0));
-        // Delete first and last useless characters
-        temporalFragment.deleteCharAt(0).deleteCharAt(temporalFragment.length() - 1);
-        // Build a small DNA sequence based on last and first bps
-        DNASequence jointFragment = new DNASequence(temporalFragment.toString());
-        // Digest the sequence in fragments to search a match on it
-        Map<Integer, String> sequenceJointFragments = sequenceFragmentsConstructor(jointFragment, e);
-        // Process every fragment
-        for (int j = 0; j < sequenceJointFragments.size(); j++) {
-            String fragment = sequenceJointFragments.get(j);
-            // If a match happens
-            if (fragment.equalsIgnoreCase(e.getEndonucleaseSimpleSenseTarget())) {
-                // If i+j is smaller than sequence's length, the cutting bp is in the end of the sequence
-                if ((i + 1 + j + e.getEndonucleasesSenseStrandCuttingBp()) < sequence.getLength()) {
-                    RestrictionSite match = new RestrictionSite(e, ((i + 1) + j), "sense", sequence);
-                    matchingRestrictionSites.add(match);
-                    System.out.println(i + j + e.getEndonucleasesSenseStrandCuttingBp());
-                    // If i+j is bigger or equal than sequence's lenght, the cleavage point is in the begining of the sequence
-                } else {
-                    RestrictionSite match = new RestrictionSite(e, (((i + 1) + j) - ((int) (sequence.getLength()))), "sense", sequence);
-                    matchingRestrictionSites.add(match);
-                }
-            }
-        }
-        // If the endonuclease is no palindromic, a new analysis in the antisense strand needs to be done
-        if (!e.getIsPalindromic()) {
-            // Creates the antistrand map
-            Map<Integer, String> antiSequenceJointFragments = antiSequenceFragmentsConstructor(jointFragment, e);
-            // Process every fragment
-            for (int j = 0; j < antiSequenceJointFragments.size(); j++) {
-                String antiFragment = antiSequenceJointFragments.get(j);
-                // If a match happens
-                if (antiFragment.equalsIgnoreCase(e.getEndonucleaseSimpleSenseTarget())) {
-                    if ((i + 1 + j + e.getEndonucleasesSenseStrandCuttingBp()) < sequence.getLength()) {
-                        RestrictionSite match = new RestrictionSite(e, ((i + 1) + j), "antisense", sequence);
-                        matchingRestrictionSites.add(match);
-                        System.out.println(i + j + e.getEndonucleasesSenseStrandCuttingBp());
-                    } else { // If i+j is bigger or equal than sequence's lenght, the cleavage point is in the begining of the sequence
-                        RestrictionSite match = new RestrictionSite(e, (((i + 1) + j) - ((int) (sequence.getLength()))), "antisense", sequence);
-                        matchingRestrictionSites.add(match);
-                    }
-                }
-            }
+                new FileChooser.ExtensionFilter("CSV (Comma-separated values)", "*.csv"),
+                new FileChooser.ExtensionFilter("Gzip compressed text files", "*.txt.gz"),
+                new FileChooser.ExtensionFilter("Gzip compressed CSV", "*.csv.gz"),
+                new FileChooser.ExtensionFilter("Genlogic results (indexed binary)", "*" + RestrictionSiteArchive.EXTENSION));
+        File file = fileChooser.showSaveDialog(viewStage);
+        if (file == null) {
+            return;
         }
-    }
-
-    /**
-     * Overloaded version, creates an special DNA fragment only for circular
-     * analysis joining the end and the beggining of the DNA fragment. This
-     * version is for endonucleases that need a regex analysis.
-     *
-     * @param sequenceFragments Already digested DNA sequence fragments
-     * @param e Endonuclease used on the analysis
-     * @param k position in the DNA sequence
-     * @param sequence DNA sequence
-     */
-    private void circularAnalysis(Map<Integer, String> sequenceFragments, Endonuclease e, int k, DNASequence sequence, String regex) {
-        // Build the special fragment merging the last and the first sequence fragments
-        StringBuilder temporalFragment = new StringBuilder(sequenceFragments.get(k) + sequenceFragments.get(0));
-        // Delete first and last useless characters
-        temporalFragment.deleteCharAt(0).deleteCharAt(temporalFragment.length() - 1);
-        // Build a small DNA sequence based on last and first bps
-        DNASequence jointFragment = new DNASequence(temporalFragment.toString());
-        // Digest the sequence in fragments to search a match on it
-        Map<Integer, String> sequenceJointFragments = sequenceFragmentsConstructor(jointFragment, e);
-        // Process every fragment
-        for (int j = 0; j < sequenceJointFragments.size(); j++) {
-            String fragment = sequenceJointFragments.get(j);
-            // If a match happens
-            if (fragment.matches(regex)) {
-                // If k+j is smaller than sequence's length, the cutting bp is in the end of the sequence
-                if ((k + 1 + j + e.getEndonucleasesSenseStrandCuttingBp()) < sequence.getLength()) {
-                    RestrictionSite match = new RestrictionSite(e, ((k + 1) + j), "sense", sequence);
-                    matchingRestrictionSites.add(match);
-                } else { // If k+j is bigger or equal than sequence's lenght, the cleavage point is in the begining of the sequence
-                    RestrictionSite match = new RestrictionSite(e, (((k + 1) + j) - ((int) (sequence.getLength()))), "sense", sequence);
-                    matchingRestrictionSites.add(match);
-                }
+        String path = file.getPath();
+        try {
+            String extensions = fileChooser.getSelectedExtensionFilter().getExtensions().toString();
+            // Some choosers don't add the extension of the selected filter, and
+            // the files are compressed depending on it
+            String extension = fileChooser.getSelectedExtensionFilter().getExtensions().get(0).substring(1);
+            if (!path.toLowerCase().endsWith(extension)) {
+                // A name typed with .txt or .csv only needs .gz
+                boolean onlyGzip = extension.endsWith(RestrictionSiteWriter.GZIP_EXTENSION) && path.toLowerCase().endsWith(
+                        extension.substring(0, extension.length() - RestrictionSiteWriter.GZIP_EXTENSION.length()));
+                path += onlyGzip ? RestrictionSiteWriter.GZIP_EXTENSION : extension;
             }
-        }
-        // If the endonuclease is no palindromic, a new analysis in the antisense strand needs to be done
-        if (!e.getIsPalindromic()) {
-            // Creates the antistrand map
-            Map<Integer, String> antiSequenceJointFragments = antiSequenceFragmentsConstructor(jointFragment, e);
-            // Process every fragment
-            for (int j = 0; j < antiSequenceJointFragments.size(); j++) {
-                String antiFragment = antiSequenceJointFragments.get(j);
-                // If a match happens
-                if (antiFragment.matches(regex)) {
-                    if ((k + 1 + j + e.getEndonucleasesSenseStrandCuttingBp()) < sequence.getLength()) {
-                        RestrictionSite match = new RestrictionSite(e, ((k + 1) + j), "antisense", sequence);
-                        matchingRestrictionSites.add(match);
-                    } else { // If k+j is bigger or equal than sequence's lenght, the cleavage point is in the begining of the sequence
-                        RestrictionSite match = new RestrictionSite(e, (((k + 1) + j) - ((int) (sequence.getLength()))), "antisense", sequence);
-                        matchingRestrictionSites.add(match);
-                    }
-                }
+            if (extensions.contains(RestrictionSiteArchive.EXTENSION)) {
+                // Saves the binary results file, it can be reloaded and queried by region
+                RestrictionSiteArchive.write(path, sequence, isCircular, restrictionSites);
+            } else if (extensions.contains("txt")) {
+                // Calls the serialization method to generate the txt file
+                RestrictionSiteSerializator.saveFile(path, restrictionSites);
+            } else {
+                // Calls the serialization method to generate the csv file
+                RestrictionSiteSerializator.writeToCSV(path, restrictionSites);
             }
+        } catch (IOException ex) {
+            System.err.println("Error saving the results file: " + ex);
+            alert("Error", "The results file could not be saved: " + ex.getMessage());
         }
     }
 
     /**
-     * Sets stage to this controller
+     * Sets stage to this controller. Closing the stage cancels the running
+     * analysis.
      *
      * @param stage main stage
      */
     public void setStage(Stage stage) {
         this.viewStage = stage;
+        stage.setOnHidden(event -> handleCancelAnalysis());
     }
 
     /**
@@ -485,76 +449,24 @@ public class GenlogicResultsViewController {
     }
 
     /**
-     * It fragments the DNA sequence into fragments depending on inidicated
-     * endonuclase size.
-     *
-     * @param sequence DNA sequence to be fragmented
-     * @param endonuclease endonuclase to get size
-     * @return Map <Integer, String> DNA sequence fragmented in fragments of the
-     * endonuclease size
-     */
-    public Map<Integer, String> sequenceFragmentsConstructor(DNASequence sequence, Endonuclease endonuclease) {
-        String DNAsequence = sequence.getSequence();
-        int cleavageSize = endonuclease.getEndonucleaseTargetLength();
-        Map<Integer, String> fragmentedSequence = new HashMap();
-        for (int i = 0; i <= (DNAsequence.length() - cleavageSize); i++) {
-            int DNAfragmentNumber = i;
-            String DNAfragment = DNAsequence.substring(i, (cleavageSize + i));
-            fragmentedSequence.put(DNAfragmentNumber, DNAfragment);
-        }
-        return fragmentedSequence;
-    }
-
-    /**
-     * It fragments the DNA sequence into fragements depending on inidicated
-     * endonuclase size but generating the antisense strand fragments.
+     * Generates alert messages.
      *
-     * @param sequence
-     * @param endonuclease
-     * @return <Integer, String> DNA anti sequence fragmented in fragments of the
-     * endonuclease size
-     */
-    public Map<Integer, String> antiSequenceFragmentsConstructor(DNASequence sequence, Endonuclease endonuclease) {
-        String DNAsequence = sequence.getSequence();
-        int cleavageSize = endonuclease.getEndonucleaseTargetLength();
-        Map<Integer, String> fragmentedAntiSequence = new HashMap();
-        for (int i = 0; i <= (DNAsequence.length() - cleavageSize); i++) {
-            int antiDNAfragmentNumber = (DNAsequence.length() - i) - cleavageSize;
-            String DNAfragment = DNAsequence.substring(i, (cleavageSize + i));
-            StringBuilder antiDNAfragment = new StringBuilder();
-            for (int j = 0; j < DNAfragment.length(); j++) {
-                char base = DNAfragment.charAt(j);
-                switch (base) {
-                    case ('A'):
-                        antiDNAfragment.append('T');
-                        break;
-                    case ('T'):
-                        antiDNAfragment.append('A');
-                        break;
-                    case ('C'):
-                        antiDNAfragment.append('G');
-                        break;
-                    case ('G'):
-                        antiDNAfragment.append('C');
-                        break;
-                    default:
-                        antiDNAfragment.append(base);
-                }
-            }
-            antiDNAfragment.reverse();
-            fragmentedAntiSequence.put(antiDNAfragmentNumber, antiDNAfragment.toString());
-        }
-        return fragmentedAntiSequence;
+     * @param title Alert window title
+     * @param message Alert window content text
+     */
+    private static void alert(String title, String message) {
+        alert(Alert.AlertType.INFORMATION, title, message);
     }
 
     /**
-     * Generates alert messages.
+     * Generates alert messages of a given type.
      *
+     * @param type Alert type
      * @param title Alert window title
      * @param message Alert window content text
      */
-    private static void alert(String title, String message) {
-        Alert alert = new Alert(Alert.AlertType.INFORMATION, "");
+    private static void alert(Alert.AlertType type, String title, String message) {
+        Alert alert = new Alert(type, "");
         alert.setTitle(title);
         alert.setHeaderText(null);
         alert.setContentText(message);
@@ -569,4 +481,90 @@ public class GenlogicResultsViewController {
     public ObservableList getMatchingRestrictionSites() {
         return this.matchingRestrictionSites;
     }
+
+    /**
+     * Background task that runs the analysis. Sites are sent to the table in
+     * batches, at most every BATCH_MILLIS milliseconds, so the first sites
+     * appear at once without flooding the JavaFX application thread. The
+     * result is the analysis itself, so the first edit doesn't analyze the
+     * sequence again.
+     */
+    private class AnalysisTask extends Task<IncrementalAnalysis> implements ScanMonitor {
+
+        /**
+         * Minimum time between two batches of sites.
+         */
+        private static final long BATCH_MILLIS = 100;
+
+        /**
+         * Finder with the selected endonucleases.
+         */
+        private final RestrictionSiteFinder finder;
+
+        /**
+         * DNA sequence to be analyzed.
+         */
+        private final DNASequence sequence;
+
+        /**
+         * True for circular sequences.
+         */
+        private final boolean isCircular;
+
+        /**
+         * Sites found since the last batch was sent.
+         */
+        private RestrictionSiteStore batch;
+
+        /**
+         * Time when the last batch was sent.
+         */
+        private long lastBatch;
+
+        /**
+         * Task constructor.
+         *
+         * @param finder RestrictionSiteFinder with the selected endonucleases
+         * @param sequence DNASequence object to be analyzed
+         * @param isCircular true for circular sequences
+         */
+        AnalysisTask(RestrictionSiteFinder finder, DNASequence sequence, boolean isCircular) {
+            this.finder = finder;
+            this.sequence = sequence;
+            this.isCircular = isCircular;
+            this.batch = new RestrictionSiteStore(finder.getEndonucleases());
+        }
+
+        @Override
+        protected IncrementalAnalysis call() {
+            IncrementalAnalysis analysis = new IncrementalAnalysis(finder, sequence, isCircular, (index, position, antisense) -> {
+                batch.add(index, position, antisense);
+                if (lastBatch == 0 || System.currentTimeMillis() - lastBatch >= BATCH_MILLIS) {
+                    sendBatch();
+                }
+            }, this);
+            sendBatch();
+            return analysis;
+        }
+
+        @Override
+        public void basesScanned(long scanned, long total) {
+            updateProgress(scanned, total);
+            if (System.currentTimeMillis() - lastBatch >= BATCH_MILLIS) {
+                sendBatch();
+            }
+        }
+
+        /**
+         * Sends the sites found since the last batch to the table.
+         */
+        private void sendBatch() {
+            lastBatch = System.currentTimeMillis();
+            if (!batch.isEmpty()) {
+                RestrictionSiteStore sent = batch;
+                batch = new RestrictionSiteStore(finder.getEndonucleases());
+                Platform.runLater(() -> addSites(sent));
+            }
+        }
+    }
 }
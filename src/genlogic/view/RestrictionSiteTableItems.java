@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2021 Luis Núñez Gómez
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package genlogic.view;
+
+import genlogic.model.Endonuclease;
+import genlogic.model.RestrictionSite;
+import genlogic.model.RestrictionSiteStore;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import javafx.collections.ObservableListBase;
+
+/**
+ * Read only ObservableList of the results table backed by a
+ * RestrictionSiteStore. Rows are created when the table asks for them (only
+ * the visible ones), so the sites are never copied into RestrictionSite
+ * objects. The table order is kept as an array of site indexes, sorted with
+ * primitive keys built from the store columns.
+ *
+ * @author Luis Núñez Gómez
+ */
+class RestrictionSiteTableItems extends ObservableListBase<RestrictionSite> {
+
+    /**
+     * Columns the table can be sorted by.
+     */
+    static final int NAME = 0, POSITION = 1, STRAND = 2;
+
+    /**
+     * Sites shown by the table.
+     */
+    private Rows rows;
+
+    /**
+     * Columns of the current sort order, the first one is the primary one.
+     */
+    private int[] sortColumns = {POSITION};
+
+    /**
+     * Descending columns of the current sort order.
+     */
+    private boolean[] sortDescending = {false};
+
+    // Constructor
+    /**
+     * Creates the list with the sites of a store.
+     *
+     * @param sites RestrictionSiteStore object
+     */
+    RestrictionSiteTableItems(RestrictionSiteStore sites) {
+        this.rows = new Rows(sites, new SortKeys(sites).sort(0, sites.size()), sites.size());
+    }
+
+    /**
+     * Returns the store with the sites shown by the table.
+     *
+     * @return RestrictionSiteStore object
+     */
+    RestrictionSiteStore getSites() {
+        return rows.sites;
+    }
+
+    @Override
+    public RestrictionSite get(int index) {
+        return rows.get(index);
+    }
+
+    @Override
+    public int size() {
+        return rows.size;
+    }
+
+    /**
+     * Shows the sites appended to the store since the last change. The new
+     * sites are sorted and merged with the current rows, so every batch costs
+     * a linear pass instead of sorting the whole table again.
+     */
+    void sitesAdded() {
+        Rows old = rows;
+        RestrictionSiteStore sites = old.sites;
+        int size = sites.size();
+        if (size == old.size) {
+            return;
+        }
+        SortKeys keys = new SortKeys(sites);
+        int[] added = keys.sort(old.size, size);
+        int[] order = new int[size];
+        int o = 0, a = 0;
+        beginChange();
+        for (int row = 0; row < size; row++) {
+            if (a < added.length && (o == old.size || keys.compare(added[a], old.order[o]) < 0)) {
+                order[row] = added[a++];
+                nextAdd(row, row + 1);
+            } else {
+                order[row] = old.order[o++];
+            }
+        }
+        rows = new Rows(sites, order, size);
+        endChange();
+    }
+
+    /**
+     * Replaces the sites shown by the table, e.g. after an edit.
+     *
+     * @param sites RestrictionSiteStore object
+     */
+    void setSites(RestrictionSiteStore sites) {
+        Rows old = rows;
+        rows = new Rows(sites, new SortKeys(sites).sort(0, sites.size()), sites.size());
+        beginChange();
+        nextReplace(0, rows.size, old);
+        endChange();
+    }
+
+    /**
+     * Sorts the table by some columns, it is used as the table sort policy.
+     * Sites with the same values are sorted by position.
+     *
+     * @param columns NAME, POSITION or STRAND columns, the primary one first
+     * @param descending true for every descending column
+     */
+    void sortBy(int[] columns, boolean[] descending) {
+        if (Arrays.equals(columns, sortColumns) && Arrays.equals(descending, sortDescending)) {
+            return;
+        }
+        sortColumns = columns.clone();
+        sortDescending = descending.clone();
+        Rows old = rows;
+        rows = new Rows(old.sites, new SortKeys(old.sites).sort(0, old.size), old.size);
+        // Permutation from the old row of every site to the new one
+        int[] newRows = new int[rows.size];
+        for (int row = 0; row < rows.size; row++) {
+            newRows[rows.order[row]] = row;
+        }
+        int[] permutation = new int[old.size];
+        for (int row = 0; row < old.size; row++) {
+            permutation[row] = newRows[old.order[row]];
+        }
+        beginChange();
+        nextPermutation(0, old.size, permutation);
+        endChange();
+    }
+
+    /**
+     * Ranks the endonucleases by name, endonucleases with the same name get
+     * the same rank.
+     *
+     * @param endonucleases List of endonucleases
+     * @return int[] rank of every endonuclease
+     */
+    private static int[] nameRanks(List<Endonuclease> endonucleases) {
+        Integer[] byName = new Integer[endonucleases.size()];
+        for (int i = 0; i < byName.length; i++) {
+            byName[i] = i;
+        }
+        Comparator<Integer> names = Comparator.comparing(i -> endonucleases.get(i).getEndonucleaseName());
+        Arrays.sort(byName, names);
+        int[] ranks = new int[byName.length];
+        for (int i = 1; i < byName.length; i++) {
+            ranks[byName[i]] = ranks[byName[i - 1]] + (names.compare(byName[i - 1], byName[i]) == 0 ? 0 : 1);
+        }
+        return ranks;
+    }
+
+    /**
+     * Sort keys of the sites of a store for the current sort order. Every
+     * site gets a column key with the name and strand columns sorted before
+     * the position column, and a position key with the cleavage position (in
+     * the position column direction) and the site index as the tie-break.
+     * Both keys together are unique, and the columns after the position one
+     * are never needed.
+     */
+    private class SortKeys {
+
+        /**
+         * Store with the sites.
+         */
+        private final RestrictionSiteStore sites;
+
+        /**
+         * Rank of every endonuclease name.
+         */
+        private final int[] nameRanks;
+
+        /**
+         * Bits taken by a name rank in the column key.
+         */
+        private final int nameBits;
+
+        /**
+         * True if the position column is descending.
+         */
+        private final boolean positionDescending;
+
+        /**
+         * Sort keys constructor.
+         *
+         * @param sites RestrictionSiteStore object
+         */
+        SortKeys(RestrictionSiteStore sites) {
+            this.sites = sites;
+            this.nameRanks = nameRanks(sites.getEndonucleases());
+            this.nameBits = 32 - Integer.numberOfLeadingZeros(nameRanks.length);
+            boolean descending = false;
+            for (int c = 0; c < sortColumns.length; c++) {
+                if (sortColumns[c] == POSITION) {
+                    descending = sortDescending[c];
+                    break;
+                }
+            }
+            this.positionDescending = descending;
+        }
+
+        /**
+         * Returns the column key of a site, it takes at most 32 bits.
+         *
+         * @param index site index
+         * @return long key of the columns before the position one
+         */
+        long columnKey(int index) {
+            long key = 0;
+            for (int c = 0; c < sortColumns.length && sortColumns[c] != POSITION; c++) {
+                boolean descending = sortDescending[c];
+                if (sortColumns[c] == NAME) {
+                    int rank = nameRanks[sites.getEndonucleaseIndex(index)];
+                    key = key << nameBits | (descending ? nameRanks.length - 1 - rank : rank);
+                } else {
+                    // Strands are sorted by their labels, antisense first
+                    key = key << 1 | (sites.isAntisense(index) == descending ? 1 : 0);
+                }
+            }
+            return key;
+        }
+
+        /**
+         * Returns the position key of a site, the cleavage position (moved to
+         * be positive and reversed if descending) followed by the site index.
+         *
+         * @param index site index
+         * @return long key of the position column
+         */
+        long positionKey(int index) {
+            long position = (long) sites.getPosition(index) - Integer.MIN_VALUE;
+            return (positionDescending ? 0xFFFFFFFFL - position : position) << 31 | index;
+        }
+
+        /**
+         * Compares two sites following the sort order.
+         *
+         * @param first first site index
+         * @param second second site index
+         * @return int negative, zero or positive like a Comparator
+         */
+        int compare(int first, int second) {
+            int columns = Long.compare(columnKey(first), columnKey(second));
+            return columns != 0 ? columns : Long.compare(positionKey(first), positionKey(second));
+        }
+
+        /**
+         * Sorts a range of site indexes. The sites are ranked by their
+         * position keys first, then the column key and the rank fit in a
+         * single long, so two primitive sorts are enough.
+         *
+         * @param from first site index (included)
+         * @param to last site index (excluded)
+         * @return int[] sorted site indexes
+         */
+        int[] sort(int from, int to) {
+            int size = to - from;
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = positionKey(from + i);
+            }
+            Arrays.sort(keys);
+            int[] byRank = new int[size];
+            for (int rank = 0; rank < size; rank++) {
+                byRank[rank] = (int) (keys[rank] & Integer.MAX_VALUE);
+                keys[rank] = columnKey(byRank[rank]) << 31 | rank;
+            }
+            Arrays.sort(keys);
+            int[] order = new int[size];
+            for (int row = 0; row < size; row++) {
+                order[row] = byRank[(int) (keys[row] & Integer.MAX_VALUE)];
+            }
+            return order;
+        }
+    }
+
+    /**
+     * Rows of the table at some moment, the old rows are kept as the removed
+     * rows of a change.
+     */
+    private static class Rows extends AbstractList<RestrictionSite> {
+
+        /**
+         * Store with the sites.
+         */
+        private final RestrictionSiteStore sites;
+
+        /**
+         * Site index of every row.
+         */
+        private final int[] order;
+
+        /**
+         * Number of rows.
+         */
+        private final int size;
+
+        /**
+         * Rows constructor.
+         *
+         * @param sites RestrictionSiteStore with the sites
+         * @param order site index of every row
+         * @param size number of rows
+         */
+        Rows(RestrictionSiteStore sites, int[] order, int size) {
+            this.sites = sites;
+            this.order = order;
+            this.size = size;
+        }
+
+        @Override
+        public RestrictionSite get(int row) {
+            if (row < 0 || row >= size) {
+                throw new IndexOutOfBoundsException("Index: " + row + ", Size: " + size);
+            }
+            return sites.get(order[row]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}